@@ -0,0 +1,70 @@
+package c45;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The training data shared by the benchmarks.
+ * The source parameter is either "synthetic", for data written by
+ * SyntheticData with the shape given by the other parameters, or the
+ * filename of a csv file, such as the bundled math.csv, in which case
+ * the shape parameters are ignored. The last column is the target.
+ * @author Matthew Tetford
+ */
+@State(Scope.Benchmark)
+public class BenchmarkData {
+	@Param({"synthetic", "../math.csv"})
+	public String source;
+
+	@Param({"100000"})
+	public int rows;
+
+	@Param({"20"})
+	public int columns;
+
+	@Param({"16"})
+	public int cardinality;
+
+	@Param({"0.5"})
+	public double numeric_share;
+
+	@Param({"2"})
+	public int classes;
+
+	String filename;
+	Dataset dataset;
+	Value target_class;
+	Value numeric_attribute;
+	Value nominal_attribute;
+
+	@Setup
+	public void load(){
+		if(source.equals("synthetic")){
+			filename = SyntheticData.write(rows, columns, cardinality, numeric_share, classes, 42L);
+		}else{
+			filename = source;
+		}
+		dataset = new Dataset(filename);
+		target_class = dataset.getAttribute(dataset.width-1);
+
+		for(int x = 0; x < dataset.width-1; x++){
+			Value attribute = dataset.getAttribute(x);
+			if(attribute.attribute_is_numeric && numeric_attribute == null){
+				numeric_attribute = attribute;
+			}
+			if(!attribute.attribute_is_numeric && nominal_attribute == null){
+				nominal_attribute = attribute;
+			}
+		}
+	}
+
+	/**
+	 * Loads a fresh copy of the training data, for benchmarks that change it.
+	 * @return (Dataset): The training data.
+	 */
+	Dataset reload(){
+		return new Dataset(filename);
+	}
+}
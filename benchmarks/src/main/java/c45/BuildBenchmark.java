@@ -0,0 +1,56 @@
+package c45;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times building a whole tree with DecisionTree.buildTree followed by
+ * DecisionTree.postPruneTree, with exact or histogram split finding on
+ * one or more threads.
+ * @author Matthew Tetford
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BuildBenchmark {
+	@Param({"1"})
+	public int threads;
+
+	@Param({"0", "256"})
+	public int histogram_bins;
+
+	@Param({"0"})
+	public int min_node_size;
+
+	@Param({"0"})
+	public int max_depth;
+
+	@Setup
+	public void configure(BenchmarkData data){
+		DecisionTree.setTreeOptions(data.target_class, min_node_size, max_depth, 0);
+		DecisionTree.setBuildThreads(threads);
+		DecisionTree.setHistogramBins(histogram_bins);
+	}
+
+	@Benchmark
+	public C45Node buildAndPrune(BenchmarkData data){
+		C45Node root = new C45Node(data.dataset, null, data.target_class);
+		DecisionTree.buildTree(root);
+		DecisionTree.postPruneTree(root);
+		return root;
+	}
+}
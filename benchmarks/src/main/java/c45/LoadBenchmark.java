@@ -0,0 +1,53 @@
+package c45;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times loading the training data: parsing the csv file on one or more
+ * threads, and loading a snapshot of it.
+ * @author Matthew Tetford
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoadBenchmark {
+	@Param({"1", "4"})
+	public int threads;
+
+	private String snapshot;
+
+	@Setup
+	public void writeSnapshot(BenchmarkData data) throws IOException{
+		File file = File.createTempFile("c45-benchmark-", ".snapshot");
+		file.deleteOnExit();
+		snapshot = file.getPath();
+		data.dataset.writeSnapshot(snapshot);
+	}
+
+	@Benchmark
+	public Dataset loadCsv(BenchmarkData data){
+		return new Dataset(data.filename, threads);
+	}
+
+	@Benchmark
+	public Dataset loadSnapshot(){
+		return Dataset.readSnapshot(snapshot);
+	}
+}
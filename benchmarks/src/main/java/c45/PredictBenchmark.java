@@ -0,0 +1,80 @@
+package c45;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Times predicting every training record with a CompiledTree, from rows
+ * encoded ahead of time as ints or doubles, and from records of Values,
+ * which are encoded as they are predicted.
+ * Scores are per batch of every training record.
+ * @author Matthew Tetford
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PredictBenchmark {
+	private CompiledTree tree;
+	private int[][] int_rows;
+	private double[][] double_rows;
+	private ArrayList<ArrayList<Value>> records;
+
+	@Setup
+	public void compile(BenchmarkData data){
+		DecisionTree.setTreeOptions(data.target_class, 0, 0, 0);
+		DecisionTree.setBuildThreads(1);
+		DecisionTree.setHistogramBins(0);
+		C45Node root = new C45Node(data.dataset, null, data.target_class);
+		DecisionTree.buildTree(root);
+		tree = CompiledTree.compile(root, data.target_class);
+
+		Dataset dataset = data.dataset;
+		int_rows = new int[dataset.height-1][dataset.width];
+		double_rows = new double[dataset.height-1][dataset.width];
+		records = new ArrayList<ArrayList<Value>>();
+		for(int y = 1; y < dataset.height; y++){
+			ArrayList<Value> record = dataset.getRowArrayList(y);
+			for(int x = 0; x < dataset.width; x++){
+				int_rows[y-1][x] = tree.encode(x, record.get(x));
+				double_rows[y-1][x] = int_rows[y-1][x];
+			}
+			records.add(record);
+		}
+	}
+
+	@Benchmark
+	public void predictInts(Blackhole hole){
+		for(int[] row : int_rows){
+			hole.consume(tree.predict(row));
+		}
+	}
+
+	@Benchmark
+	public void predictDoubles(Blackhole hole){
+		for(double[] row : double_rows){
+			hole.consume(tree.predict(row));
+		}
+	}
+
+	@Benchmark
+	public void predictRecords(Blackhole hole){
+		for(ArrayList<Value> record : records){
+			hole.consume(tree.predict(record));
+		}
+	}
+}
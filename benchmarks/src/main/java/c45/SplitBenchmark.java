@@ -0,0 +1,95 @@
+package c45;
+
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times the measures a split search is made of, over every row of the
+ * training data: entropy, the gain of a nominal attribute, the gain of a
+ * numeric attribute at its median, the gain of two class distributions,
+ * and a whole search for the best split of the root.
+ * Benchmarks for an attribute the data doesn't have return 0.
+ * @author Matthew Tetford
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SplitBenchmark {
+	private int median;
+	private int[] lower_counts;
+	private int[] upper_counts;
+	private int lower_total;
+	private int upper_total;
+	private SplitFinder split_finder;
+	private HashSet<Value> attributes;
+
+	@Setup
+	public void countClasses(BenchmarkData data){
+		Dataset dataset = data.dataset;
+		int target = dataset.getHeaderIndex(data.target_class);
+		lower_counts = new int[dataset.getClassCount(target)];
+		upper_counts = new int[lower_counts.length];
+		if(data.numeric_attribute != null){
+			median = dataset.getMedian(data.numeric_attribute);
+			int x = dataset.getHeaderIndex(data.numeric_attribute);
+			Column classes = dataset.getClassColumn(target);
+			for(int y = 1; y < dataset.height; y++){
+				if(dataset.getNumber(x, y) >= median){
+					upper_counts[classes.get(dataset.row(y))]++;
+					upper_total++;
+				}else{
+					lower_counts[classes.get(dataset.row(y))]++;
+					lower_total++;
+				}
+			}
+		}
+		split_finder = new SplitFinder(null);
+		attributes = dataset.getAttributeSet();
+		attributes.remove(data.target_class);
+	}
+
+	@Benchmark
+	public double entropy(BenchmarkData data){
+		return DecisionTree.entropy(data.dataset, data.target_class);
+	}
+
+	@Benchmark
+	public double gain(BenchmarkData data){
+		if(data.nominal_attribute == null){
+			return 0;
+		}
+		return DecisionTree.gain(data.dataset, data.target_class, data.nominal_attribute);
+	}
+
+	@Benchmark
+	public double continuousGain(BenchmarkData data){
+		if(data.numeric_attribute == null){
+			return 0;
+		}
+		return DecisionTree.continuousGain(data.dataset, data.target_class, data.numeric_attribute, median);
+	}
+
+	@Benchmark
+	public double continuousGainCounts(){
+		return SplitFinder.continuousGain(lower_counts, lower_total, upper_counts, upper_total);
+	}
+
+	@Benchmark
+	public Split findBestSplit(BenchmarkData data){
+		return split_finder.findBestSplit(data.dataset, data.target_class, attributes);
+	}
+}
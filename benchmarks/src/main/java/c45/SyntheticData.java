@@ -0,0 +1,100 @@
+package c45;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Writes synthetic training data for the benchmarks.
+ * The file has the given number of attribute columns followed by a
+ * label column. The first columns are numeric, holding whole numbers
+ * below 10000, and the rest are nominal, holding one of a set number of
+ * values. The label depends on a few of the attributes plus some noise,
+ * so the trees built from the data have real splits to find.
+ * The same arguments always write the same file.
+ * @author Matthew Tetford
+ */
+final class SyntheticData {
+	static final int NUMBER_RANGE = 10000;
+	static final String LABEL = "label";
+
+	private SyntheticData(){
+	}
+
+	/**
+	 * Writes a synthetic csv file to the temporary directory.
+	 * @param rows (int): The number of records.
+	 * @param columns (int): The number of attribute columns, not counting the label.
+	 * @param cardinality (int): The number of distinct values in each nominal column.
+	 * @param numeric_share (double): The fraction of attribute columns that are numeric.
+	 * @param classes (int): The number of distinct labels.
+	 * @param seed (long): The seed of the random values.
+	 * @return (String): The filename of the csv file. Deleted when the JVM exits.
+	 */
+	static String write(int rows, int columns, int cardinality, double numeric_share, int classes, long seed){
+		int numeric = (int)Math.round(columns * numeric_share);
+		Random random = new Random(seed);
+		int[] numbers = new int[columns];
+		try {
+			File file = File.createTempFile("c45-synthetic-", ".csv");
+			file.deleteOnExit();
+			BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+			try {
+				for(int x = 0; x < columns; x++){
+					out.write((x < numeric ? "n" : "c") + x + ",");
+				}
+				out.write(LABEL);
+				out.newLine();
+
+				StringBuilder line = new StringBuilder();
+				for(int y = 0; y < rows; y++){
+					line.setLength(0);
+					for(int x = 0; x < columns; x++){
+						numbers[x] = (x < numeric) ? random.nextInt(NUMBER_RANGE) : random.nextInt(cardinality);
+						if(x < numeric){
+							line.append(numbers[x]);
+						}else{
+							line.append('v').append(numbers[x]);
+						}
+						line.append(',');
+					}
+					line.append('l').append(label(numbers, numeric, cardinality, classes, random));
+					out.write(line.toString());
+					out.newLine();
+				}
+			} finally {
+				out.close();
+			}
+			return file.getPath();
+		} catch (IOException e) {
+			System.err.println("Could not write synthetic data");
+			System.exit(1);
+			return null;
+		}
+	}
+
+	/**
+	 * Works out the label of a record from its first two columns and its
+	 * first nominal column, then swaps it for a random label one time in ten.
+	 */
+	private static int label(int[] numbers, int numeric, int cardinality, int classes, Random random){
+		int[] used = {0, 1, numeric};
+		int score = 0;
+		int parts = 0;
+		for(int i = 0; i < used.length; i++){
+			int x = used[i];
+			if(x >= numbers.length || (i == 2 && x < 2)){
+				continue;
+			}
+			int range = (x < numeric) ? NUMBER_RANGE : cardinality;
+			score += (int)(((long)numbers[x] * classes) / range);
+			parts++;
+		}
+		int label = (parts > 0) ? score / parts : 0;
+		return (random.nextInt(10) == 0) ? random.nextInt(classes) : label;
+	}
+}
@@ -0,0 +1,62 @@
+package c45;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for one span of a training run phase, committed
+ * by BuildMetrics when JFR events are turned on.
+ * It lives in the jfr source folder, apart from the library in src, since
+ * compiling it needs jdk.jfr in the platform API, which Java 11 has and
+ * --release 8 doesn't. The library compiles for Java 8 without it and
+ * finds it by name when events are turned on, so to use JFR events compile
+ * this folder with JDK 11 or later and put it on the class path.
+ * @author Matthew Tetford
+ */
+@Name("c45.BuildPhase")
+@Label("Build Phase")
+@Category("C45")
+@Description("One span of a phase of building a C4.5 decision tree")
+final class PhaseEvent extends Event {
+	@Label("Phase")
+	String phase;
+
+	@Label("Rows")
+	int rows;
+
+	@Label("Bytes Allocated")
+	@DataAmount
+	long bytes;
+
+	/**
+	 * Starts timing an event.
+	 * @return (Object): The event.
+	 */
+	static Object start(){
+		PhaseEvent event = new PhaseEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends an event and commits it, if the recording wants it.
+	 * @param started (Object): The event from start.
+	 * @param phase (String): The name of the phase.
+	 * @param rows (int): The rows the span worked on.
+	 * @param bytes (long): The bytes allocated during the span.
+	 */
+	static void finish(Object started, String phase, int rows, long bytes){
+		PhaseEvent event = (PhaseEvent)started;
+		event.end();
+		if(event.shouldCommit()){
+			event.phase = phase;
+			event.rows = rows;
+			event.bytes = bytes;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package c45;
+
+/**
+ * A Column held on the heap as an int array.
+ * Used internally by Dataset for columnar storage.
+ * @author Matthew Tetford
+ */
+final class ArrayColumn extends Column {
+	final int[] data;
+
+	ArrayColumn(int[] _data){
+		data = _data;
+	}
+
+	int get(int row){
+		return data[row];
+	}
+
+	int size(){
+		return data.length;
+	}
+
+	/**
+	 * Simply sets the cell at the given row.
+	 * @param row (int): The row index.
+	 * @param cell (int): The number or dictionary code to store.
+	 */
+	void set(int row, int cell){
+		data[row] = cell;
+	}
+}
@@ -0,0 +1,304 @@
+package c45;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Scores a testing csv file with a Predictor, such as a CompiledTree or a RandomForest.
+ * The file is streamed through a CsvParser on the calling thread and its
+ * cells are encoded straight into blocks of int rows using the training
+ * data's dictionaries, so no Values are created. Full blocks are scored
+ * on the pool while the next block is read, with a few blocks in flight
+ * at a time. Predictions are written in file order, one per line, and
+ * each block counts its own confusion matrix, which are added up at the end.
+ * The testing file must have the same columns, in the same order, as the
+ * training data, including the target column.
+ * Run on its own, it scores a testing file with a saved model:
+ * Usage: java c45.BatchScorer model_file testing.csv [predictions.txt] [threads]
+ * @author Matthew Tetford
+ */
+public final class BatchScorer {
+	static final int DEFAULT_BLOCK_ROWS = 1 << 13;
+
+	private final Predictor tree;
+	private final ForkJoinPool pool;
+	private final int block_rows;
+
+	/**
+	 * Creates a scorer.
+	 * @param _tree (Predictor): The tree or forest to score with.
+	 * @param _pool (ForkJoinPool): The pool to score blocks in, or null to score on the calling thread.
+	 * @param _block_rows (int): The number of rows in a block.
+	 */
+	public BatchScorer(Predictor _tree, ForkJoinPool _pool, int _block_rows){
+		tree = _tree;
+		pool = _pool;
+		block_rows = _block_rows;
+	}
+
+	/**
+	 * Creates a scorer with the default block size.
+	 * @param _tree (Predictor): The tree or forest to score with.
+	 * @param _pool (ForkJoinPool): The pool to score blocks in, or null to score on the calling thread.
+	 */
+	public BatchScorer(Predictor _tree, ForkJoinPool _pool){
+		this(_tree, _pool, DEFAULT_BLOCK_ROWS);
+	}
+
+	/**
+	 * Scores every record of a testing file. Stops with an error if the
+	 * file can't be read or doesn't match the training data's columns.
+	 * @param testing_filename (String): The csv file to score.
+	 * @param predictions_filename (String): The file to write one prediction per line to, or null to not write them.
+	 * @return (ScoreReport): The accuracy, confusion matrix and throughput.
+	 */
+	public ScoreReport score(String testing_filename, String predictions_filename){
+		try {
+			return scoreFile(testing_filename, predictions_filename);
+		}
+		catch (FileNotFoundException e) {
+			//The message names the file that couldn't be opened
+			System.err.println("File not found: " + e.getMessage());
+			System.exit(1);
+		}
+		catch (IOException e) {
+			System.err.println("Couldn't score " + testing_filename + ": " + e.getMessage());
+			System.exit(1);
+		}
+		return null;
+	}
+
+	/**
+	 * Scores every record of a testing file, leaving errors to the caller,
+	 * as JobRunner does so that one bad job doesn't stop the others.
+	 * @param testing_filename (String): The csv file to score.
+	 * @param predictions_filename (String): The file to write one prediction per line to, or null to not write them.
+	 * @return (ScoreReport): The accuracy, confusion matrix and throughput.
+	 * @throws IOException If a file can't be read or written, or the testing file doesn't match the training data.
+	 */
+	ScoreReport scoreFile(String testing_filename, String predictions_filename) throws IOException{
+		long begin = System.nanoTime();
+		int classes = tree.getClassCount();
+		long[][] confusion = new long[classes + 1][classes];
+
+		OutputStream out = null;
+		boolean scored = false;
+		//Open the testing file first, so a bad path doesn't leave an empty predictions file
+		FileInputStream in = new FileInputStream(testing_filename);
+		try {
+			if(predictions_filename != null){
+				out = new BufferedOutputStream(new FileOutputStream(predictions_filename), CsvParser.BUFFER_SIZE);
+			}
+			BlockSink sink = new BlockSink(out, confusion);
+			new CsvParser(sink, true).parse(in);
+			sink.finish();
+			scored = true;
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			in.close();
+			if(out != null){
+				out.close();
+				//A file that fails part way through gets no predictions file rather than a partial one
+				if(!scored){
+					new File(predictions_filename).delete();
+				}
+			}
+		}
+
+		Value[] values = new Value[classes];
+		for(int c = 0; c < classes; c++){
+			values[c] = tree.getClassValue(c);
+		}
+		return new ScoreReport(values, confusion, System.nanoTime() - begin);
+	}
+
+	/**
+	 * A block of encoded rows along with their actual classes and predictions.
+	 */
+	private final class Block extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final int[][] rows;
+		final int[] actual;
+		final int[] predicted;
+		final long[][] confusion;
+		int size;
+
+		Block(int width){
+			rows = new int[block_rows][width];
+			actual = new int[block_rows];
+			predicted = new int[block_rows];
+			confusion = new long[tree.getClassCount() + 1][tree.getClassCount()];
+		}
+
+		protected void compute(){
+			int unseen = tree.getClassCount();
+			for(long[] counts : confusion){
+				Arrays.fill(counts, 0);
+			}
+			for(int r = 0; r < size; r++){
+				int prediction = tree.predict(rows[r]);
+				predicted[r] = prediction;
+				confusion[(actual[r] >= 0) ? actual[r] : unseen][prediction]++;
+			}
+		}
+	}
+
+	/**
+	 * Encodes the cells of the testing file into blocks and hands full blocks to the pool.
+	 */
+	private final class BlockSink implements CsvParser.Sink {
+		private final OutputStream out;
+		private final long[][] confusion;
+		private final byte[][] labels;
+		private final int target;
+		private final ArrayDeque<Block> in_flight;
+		private final ArrayDeque<Block> free;
+		private final int max_in_flight;
+		private int width;
+		private Block block;
+		private long rows;
+
+		BlockSink(OutputStream _out, long[][] _confusion){
+			out = _out;
+			confusion = _confusion;
+			target = tree.getTargetIndex();
+			in_flight = new ArrayDeque<Block>();
+			free = new ArrayDeque<Block>();
+			max_in_flight = (pool == null) ? 1 : 2 * pool.getParallelism();
+			labels = new byte[tree.getClassCount()][];
+			for(int c = 0; c < labels.length; c++){
+				labels[c] = (tree.getClassValue(c).toString() + "\n").getBytes(StandardCharsets.UTF_8);
+			}
+			rows = 0;
+		}
+
+		public void header(Value[] headers){
+			width = tree.getHeaders().length;
+			if(headers.length != width){
+				throw new UncheckedIOException(new IOException("Testing file has " + headers.length + " columns, expected " + width));
+			}
+			block = new Block(width);
+		}
+
+		public void number(int x, int number){
+			checkWidth(x+1);
+			ValueDictionary dictionary = tree.getDictionary(x);
+			block.rows[block.size][x] = (dictionary == null) ? number : dictionary.lookupNumber(number);
+			if(x == target){
+				block.actual[block.size] = tree.getClassDictionary().lookupNumber(number);
+			}
+		}
+
+		public void bytes(int x, byte[] buffer, int offset, int length){
+			checkWidth(x+1);
+			ValueDictionary dictionary = tree.getDictionary(x);
+			block.rows[block.size][x] = (dictionary == null) ? Integer.MIN_VALUE : dictionary.lookupBytes(buffer, offset, length);
+			if(x == target){
+				block.actual[block.size] = tree.getClassDictionary().lookupBytes(buffer, offset, length);
+			}
+		}
+
+		public void endRow(int cells){
+			if(cells != width){
+				rowError(cells);
+			}
+			rows++;
+			if(++block.size == block_rows){
+				submit();
+			}
+		}
+
+		/**
+		 * Scores the last partial block and waits for every block to finish.
+		 */
+		void finish() throws IOException{
+			if(block != null && block.size > 0){
+				submit();
+			}
+			while(!in_flight.isEmpty()){
+				complete(in_flight.poll());
+			}
+		}
+
+		private void submit(){
+			if(pool == null){
+				block.compute();
+			}else{
+				pool.execute((ForkJoinTask<?>)block);
+			}
+			in_flight.add(block);
+
+			try {
+				while(in_flight.size() >= max_in_flight){
+					complete(in_flight.poll());
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+
+			block = free.isEmpty() ? new Block(width) : free.poll();
+			block.reinitialize();
+			block.size = 0;
+		}
+
+		private void complete(Block done) throws IOException{
+			if(pool != null){
+				done.join();
+			}
+			if(out != null){
+				for(int r = 0; r < done.size; r++){
+					out.write(labels[done.predicted[r]]);
+				}
+			}
+			for(int actual = 0; actual < confusion.length; actual++){
+				for(int predicted = 0; predicted < confusion[actual].length; predicted++){
+					confusion[actual][predicted] += done.confusion[actual][predicted];
+				}
+			}
+			free.add(done);
+		}
+
+		private void checkWidth(int cells){
+			if(cells > width){
+				rowError(cells);
+			}
+		}
+
+		private void rowError(int cells){
+			throw new UncheckedIOException(new IOException("Testing row " + (rows+2) + " has " + cells + " values, expected " + width));
+		}
+	}
+
+	public static void main(String[] args){
+		if(args.length < 2){
+			System.err.println("Usage: java c45.BatchScorer model_file testing.csv [predictions.txt] [threads]");
+			System.exit(1);
+		}
+		long begin = System.nanoTime();
+		CompiledTree tree = CompiledTree.read(args[0]);
+		System.out.format("Loaded %d nodes from %s in %.1f milliseconds.%n",
+				tree.getNodeCount(), args[0], (System.nanoTime() - begin) / 1e6);
+
+		int threads = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		ForkJoinPool pool = (threads > 1) ? new ForkJoinPool(threads) : null;
+		String predictions_filename = (args.length > 2) ? args[2] : null;
+		ScoreReport report = new BatchScorer(tree, pool).score(args[1], predictions_filename);
+		report.print(System.out);
+		if(pool != null){
+			pool.shutdown();
+		}
+	}
+}
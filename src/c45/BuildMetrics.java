@@ -0,0 +1,349 @@
+package c45;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records where the time and memory of a training run went.
+ * Each phase of the run, from loading the training data to writing the
+ * output, adds up its wall time and the bytes allocated while it ran,
+ * and keeps a histogram of how long each of its spans took. Split search
+ * and partitioning have one span per node, so their histograms show how
+ * the time is spread over the nodes. The nodes built, the rows they held
+ * and the candidate splits tried for each attribute are counted too.
+ * Every count can be added to from many threads at once.
+ * Bytes are counted on the thread that runs a span, so with more than one
+ * build thread the memory allocated by helper tasks of a parallel split
+ * search isn't included. Counting bytes needs a JVM that reports thread
+ * allocation, such as HotSpot, and is 0 otherwise.
+ * With JFR events turned on, every span is also committed as a
+ * c45.BuildPhase event, which needs a JVM with Flight Recorder and
+ * PhaseEvent, compiled from the jfr source folder, on the class path.
+ * PhaseEvent is found by name, so the library builds without jdk.jfr.
+ * @author Matthew Tetford
+ */
+public final class BuildMetrics {
+	/**
+	 * The phases of a training run.
+	 */
+	public enum Phase {
+		LOAD("Load"),
+		TYPE_DETECTION("Type detection"),
+		SPLIT_SEARCH("Split search"),
+		PARTITIONING("Partitioning"),
+		PRUNING("Pruning"),
+		OUTPUT("Output");
+
+		private final String label;
+
+		Phase(String _label){
+			label = _label;
+		}
+
+		/**
+		 * Gets the name of the phase as printed.
+		 * @return (String): The name.
+		 */
+		public String toString(){
+			return label;
+		}
+	}
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private final LongAdder[] phase_nanos;
+	private final LongAdder[] phase_bytes;
+	private final MetricHistogram[] phase_spans;
+	private final LongAdder nodes_built;
+	private final MetricHistogram node_rows;
+	private final ConcurrentHashMap<String, LongAdder> candidate_splits;
+	private final boolean jfr_events;
+	//PhaseEvent.start and PhaseEvent.finish, looked up when JFR events are turned on
+	private final Method event_start;
+	private final Method event_finish;
+
+	/**
+	 * Creates empty metrics without JFR events.
+	 */
+	public BuildMetrics(){
+		this(false);
+	}
+
+	/**
+	 * Creates empty metrics.
+	 * @param _jfr_events (boolean): True to commit a JFR event for every span.
+	 */
+	public BuildMetrics(boolean _jfr_events){
+		int phases = Phase.values().length;
+		phase_nanos = new LongAdder[phases];
+		phase_bytes = new LongAdder[phases];
+		phase_spans = new MetricHistogram[phases];
+		for(int p = 0; p < phases; p++){
+			phase_nanos[p] = new LongAdder();
+			phase_bytes[p] = new LongAdder();
+			phase_spans[p] = new MetricHistogram();
+		}
+		nodes_built = new LongAdder();
+		node_rows = new MetricHistogram();
+		candidate_splits = new ConcurrentHashMap<String, LongAdder>();
+
+		Method start = null;
+		Method finish = null;
+		if(_jfr_events){
+			try {
+				Class<?> events = Class.forName("c45.PhaseEvent");
+				start = events.getDeclaredMethod("start");
+				finish = events.getDeclaredMethod("finish", Object.class, String.class, int.class, long.class);
+			} catch (ClassNotFoundException | NoSuchMethodException | LinkageError e) {
+				System.err.println("JFR events need a JVM with Flight Recorder and PhaseEvent from the jfr source folder");
+				System.exit(1);
+			}
+		}
+		event_start = start;
+		event_finish = finish;
+		jfr_events = _jfr_events;
+	}
+
+	/**
+	 * Starts timing a span of a phase on the current thread.
+	 * @param phase (Phase): The phase.
+	 * @return (Span): The span, to be ended on the same thread.
+	 */
+	Span begin(Phase phase){
+		return new Span(phase);
+	}
+
+	/**
+	 * Adds time and bytes to a phase that was timed elsewhere, as one span.
+	 * @param phase (Phase): The phase.
+	 * @param nanos (long): The wall time in nanoseconds.
+	 * @param bytes (long): The bytes allocated.
+	 */
+	void add(Phase phase, long nanos, long bytes){
+		phase_nanos[phase.ordinal()].add(nanos);
+		phase_bytes[phase.ordinal()].add(bytes);
+		phase_spans[phase.ordinal()].record(nanos);
+	}
+
+	/**
+	 * Counts a node whose split has been searched for, or that was left a leaf.
+	 * @param rows (int): The number of rows in the node.
+	 */
+	void nodeBuilt(int rows){
+		nodes_built.increment();
+		node_rows.record(rows);
+	}
+
+	/**
+	 * Counts the candidate splits tried for an attribute at one node.
+	 * @param attribute (Value): The attribute.
+	 * @param candidates (int): The number of splits tried.
+	 */
+	void candidatesTried(Value attribute, int candidates){
+		LongAdder count = candidate_splits.get(attribute.toString());
+		if(count == null){
+			count = candidate_splits.computeIfAbsent(attribute.toString(), key -> new LongAdder());
+		}
+		count.add(candidates);
+	}
+
+	/**
+	 * Gets the bytes allocated so far by the current thread.
+	 * @return (long): The bytes, or 0 if the JVM doesn't report them.
+	 */
+	static long threadAllocatedBytes(){
+		if(THREADS instanceof com.sun.management.ThreadMXBean){
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)THREADS;
+			if(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()){
+				return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Gets the bytes allocated so far by every live thread, for phases
+	 * that hand work to a pool.
+	 * @return (long): The bytes, or 0 if the JVM doesn't report them.
+	 */
+	static long allAllocatedBytes(){
+		if(THREADS instanceof com.sun.management.ThreadMXBean){
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)THREADS;
+			if(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()){
+				long bytes = 0;
+				for(long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())){
+					bytes += Math.max(allocated, 0);
+				}
+				return bytes;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Gets the wall time spent in a phase, added up over every span and thread.
+	 * @param phase (Phase): The phase.
+	 * @return (long): The time in nanoseconds.
+	 */
+	public long getPhaseNanos(Phase phase){
+		return phase_nanos[phase.ordinal()].sum();
+	}
+
+	/**
+	 * Gets the wall time spent in a phase, added up over every span and thread.
+	 * @param phase (Phase): The phase.
+	 * @return (long): The time in milliseconds.
+	 */
+	public long getPhaseMillis(Phase phase){
+		return getPhaseNanos(phase) / 1000000L;
+	}
+
+	/**
+	 * Gets the bytes allocated during a phase.
+	 * @param phase (Phase): The phase.
+	 * @return (long): The bytes.
+	 */
+	public long getPhaseBytes(Phase phase){
+		return phase_bytes[phase.ordinal()].sum();
+	}
+
+	/**
+	 * Gets the histogram of how long each span of a phase took.
+	 * @param phase (Phase): The phase.
+	 * @return (MetricHistogram): Span times in nanoseconds.
+	 */
+	public MetricHistogram getPhaseSpans(Phase phase){
+		return phase_spans[phase.ordinal()];
+	}
+
+	/**
+	 * Gets the bytes allocated over every phase.
+	 * @return (long): The bytes.
+	 */
+	public long getBytesAllocated(){
+		long bytes = 0;
+		for(LongAdder phase : phase_bytes){
+			bytes += phase.sum();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Gets the number of nodes built, leaves included.
+	 * @return (long): The number of nodes.
+	 */
+	public long getNodesBuilt(){
+		return nodes_built.sum();
+	}
+
+	/**
+	 * Gets the histogram of the number of rows in each node built.
+	 * @return (MetricHistogram): Rows per node.
+	 */
+	public MetricHistogram getNodeRows(){
+		return node_rows;
+	}
+
+	/**
+	 * Gets the number of candidate splits tried for an attribute, over every node.
+	 * A numeric attribute tries one split per distinct value, or per non empty
+	 * bucket with histograms, and a nominal attribute tries one split per node.
+	 * @param attribute (Value): The attribute.
+	 * @return (long): The number of splits tried.
+	 */
+	public long getCandidateSplits(Value attribute){
+		LongAdder count = candidate_splits.get(attribute.toString());
+		return (count != null) ? count.sum() : 0;
+	}
+
+	/**
+	 * Gets the number of candidate splits tried for every attribute tried.
+	 * @return (Map<String, Long>): Splits tried by attribute name, in name order.
+	 */
+	public Map<String, Long> getCandidateSplits(){
+		TreeMap<String, Long> counts = new TreeMap<String, Long>();
+		for(Map.Entry<String, LongAdder> entry : candidate_splits.entrySet()){
+			counts.put(entry.getKey(), entry.getValue().sum());
+		}
+		return counts;
+	}
+
+	/**
+	 * Prints the time and bytes of each phase, the node counts and the
+	 * candidate splits per attribute.
+	 * @param output (PrintStream): Where to print the metrics.
+	 */
+	public void print(PrintStream output){
+		output.format("%nBuild metrics:%n");
+		for(Phase phase : Phase.values()){
+			MetricHistogram spans = getPhaseSpans(phase);
+			output.format("  %-15s %8d ms %10.1f MB", phase, getPhaseMillis(phase), getPhaseBytes(phase) / 1048576.0);
+			if(spans.getCount() > 1){
+				output.format("  %d spans, p50 <= %d us, p99 <= %d us, max %d us",
+						spans.getCount(), spans.getPercentile(50) / 1000, spans.getPercentile(99) / 1000, spans.getMax() / 1000);
+			}
+			output.format("%n");
+		}
+		output.format("  %-15s %8s    %10.1f MB%n", "Total", "", getBytesAllocated() / 1048576.0);
+		output.format("Nodes built: %d (rows per node: %s)%n", getNodesBuilt(), node_rows);
+		output.format("Candidate splits per attribute:%n");
+		for(Map.Entry<String, Long> entry : getCandidateSplits().entrySet()){
+			output.format("  %s: %d%n", entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Calls one of PhaseEvent's methods.
+	 */
+	private static Object invoke(Method method, Object... args){
+		try {
+			return method.invoke(null, args);
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			throw new IllegalStateException("Couldn't record a JFR event", e);
+		}
+	}
+
+	/**
+	 * A timed stretch of one phase on one thread.
+	 */
+	final class Span {
+		private final Phase phase;
+		private final long begin_nanos;
+		private final long begin_bytes;
+		private final Object event;
+
+		private Span(Phase _phase){
+			phase = _phase;
+			event = jfr_events ? invoke(event_start) : null;
+			begin_bytes = threadAllocatedBytes();
+			begin_nanos = System.nanoTime();
+		}
+
+		/**
+		 * Ends the span, adding its time and bytes to its phase.
+		 * @param rows (int): The rows the span worked on, for the JFR event.
+		 */
+		void end(int rows){
+			long nanos = System.nanoTime() - begin_nanos;
+			long bytes = threadAllocatedBytes() - begin_bytes;
+			add(phase, nanos, bytes);
+			if(event != null){
+				invoke(event_finish, event, phase.toString(), rows, bytes);
+			}
+		}
+
+		/**
+		 * Ends a span that didn't work on rows.
+		 */
+		void end(){
+			end(0);
+		}
+	}
+}
@@ -5,6 +5,13 @@ import java.util.HashSet;
 
 /**
  * Nodes used internally by DecisionTree for the C4.5 decision tree algorithm.
+ * Each node owns its set of remaining attributes, copied from its parent,
+ * so subtrees can be built independently of one another.
+ * A node's rows are counted into a NodeSummary the first time they are
+ * asked about, or when the node is split, and every later question about
+ * its class counts is answered from it. Once a node has been split,
+ * except at the root, its Dataset and attribute set are let go, so a
+ * finished tree doesn't hold on to the training data.
  * @author Matthew Tetford
  *
  */
@@ -19,6 +26,14 @@ public class C45Node {
 	private int split_number;
 	private boolean gte;
 	private int depth;
+	private NodeSummary summary;
+	//The attribute the summary counts
+	private Value summary_target;
+	NodeHistograms histograms;
+	long random_seed;
+	//The best split found for the node's rows and their summary at the time, for TreeUpdater
+	Split best_split;
+	NodeSummary split_summary;
 	
 	/**
 	 * Creates a node with the given data set. Excludes the given target class
@@ -33,7 +48,7 @@ public class C45Node {
 		continuous_split = false;
 		
 		if(parent != null){
-			attributes_remaining = parent.getRemainingAttributes();
+			attributes_remaining = new HashSet<Value>(parent.getRemainingAttributes());
 			attributes_remaining.remove(_class_remove);
 			depth = (parent.getDepth()+1);
 		}else{
@@ -62,7 +77,7 @@ public class C45Node {
 		continuous_split = false;
 		
 		if(parent != null){
-			attributes_remaining = parent.getRemainingAttributes();
+			attributes_remaining = new HashSet<Value>(parent.getRemainingAttributes());
 			attributes_remaining.remove(_class_remove);
 			depth = (parent.getDepth()+1);
 		}else{
@@ -94,7 +109,7 @@ public class C45Node {
 		gte = _gte;
 		
 		if(parent != null){
-			attributes_remaining = parent.getRemainingAttributes();
+			attributes_remaining = new HashSet<Value>(parent.getRemainingAttributes());
 			depth = (parent.getDepth()+1);
 		}else{
 			attributes_remaining = dataset.getAttributeSet();
@@ -121,8 +136,98 @@ public class C45Node {
 		children = new ArrayList<C45Node>();
 	}
 	
+	/**
+	 * Summarizes the rows of the node and, unless the node is the root,
+	 * lets go of its Dataset and remaining attributes. Called by the
+	 * tree builder once the node's children have their own Datasets.
+	 * @param target_class (Value): The attribute the tree classifies by.
+	 */
+	void finish(Value target_class){
+		if(target_class != null && (summary == null || !target_class.equals(summary_target))){
+			summary = new NodeSummary(dataset, target_class);
+			summary_target = target_class;
+		}
+		histograms = null;
+		if(parent != null){
+			dataset = null;
+			attributes_remaining = null;
+		}
+	}
+	
+	/**
+	 * Gives an unfinished node the Dataset of its rows, for nodes created
+	 * before their rows were gathered, as ExternalBuilder does.
+	 * @param _dataset (Dataset): The node's rows.
+	 */
+	void setDataset(Dataset _dataset){
+		dataset = _dataset;
+	}
+	
+	/**
+	 * Gives a finished node its rows and attributes back and drops its
+	 * children and summary, so it can be built again, as TreeUpdater does
+	 * for subtrees whose split has changed.
+	 * @param _dataset (Dataset): The node's rows.
+	 * @param _attributes_remaining (HashSet<Value>): The attributes the node may split on.
+	 */
+	void reopen(Dataset _dataset, HashSet<Value> _attributes_remaining){
+		dataset = _dataset;
+		attributes_remaining = _attributes_remaining;
+		children = new ArrayList<C45Node>();
+		summary = null;
+		summary_target = null;
+		histograms = null;
+		best_split = null;
+		split_summary = null;
+	}
+
+	/**
+	 * Finishes the node with a summary counted elsewhere, for nodes whose
+	 * rows aren't held in a Dataset, then lets go as finish does.
+	 * @param _summary (NodeSummary): The summary of the node's rows.
+	 * @param target_class (Value): The attribute the summary counts, the one the tree classifies by.
+	 */
+	void finish(NodeSummary _summary, Value target_class){
+		summary = _summary;
+		summary_target = target_class;
+		finish(target_class);
+	}
+	
+	/**
+	 * Gets the summary of the node's rows.
+	 * @return (NodeSummary): The summary, or null if the node hasn't been finished.
+	 */
+	public NodeSummary getSummary(){
+		return summary;
+	}
+	
+	/**
+	 * Gets the summary of the node's rows for the given target, counting
+	 * the rows the first time it is asked for and keeping the counts, so
+	 * the majority value, accuracy and counts of a node are never counted twice.
+	 * Only the counts of one attribute are kept, the tree's target once the
+	 * node is finished. A node that still has its rows counts any other
+	 * attribute afresh each time it is asked.
+	 * @param target_attribute (Value): The attribute to count the values of.
+	 * @return (NodeSummary): The summary of the node's rows.
+	 * @throws IllegalStateException If the node has let go of its rows and kept the counts of a different attribute.
+	 */
+	public NodeSummary getSummary(Value target_attribute){
+		if(summary == null){
+			summary = new NodeSummary(dataset, target_attribute);
+			summary_target = target_attribute;
+		}else if(!target_attribute.equals(summary_target)){
+			if(dataset == null){
+				throw new IllegalStateException("The node only kept the counts of " + summary_target + ", not " + target_attribute);
+			}
+			return new NodeSummary(dataset, target_attribute);
+		}
+		return summary;
+	}
+	
 	/**
 	 * Returns the nodes data set.
+	 * Null once a node other than the root has been finished.
 	 * @return (Dataset): The nodes data set.
 	 */
 	public Dataset getDataset(){
@@ -159,6 +264,7 @@ public class C45Node {
 	
 	/**
 	 * Gets the remaining attributes we may split on.
+	 * Null once a node other than the root has been finished.
 	 * @return (HashSet<String>): Remaining attributes.
 	 */
 	public HashSet<Value> getRemainingAttributes(){
@@ -191,49 +297,25 @@ public class C45Node {
 	
 	/**
 	 * Gets the most frequent value from the specified target attribute.
-	 * If there is a tie, the first looked at is returned.
+	 * Ties go to the value that appears first in the training data.
+	 * Served from the node's summary, so only the first call counts the rows.
 	 * @param target_attribute (String): The attribute we wish to evaluate the values of.
 	 * @return (String): The most frequent value.
 	 */
 	public Value getMaxValue(Value target_attribute){
-		//System.out.println("\nGetting Max Value");
-		Value max_value = new Value();
-		
-		HashSet<Value> values = dataset.getValueSet(target_attribute);
-		double max_count = 0;
-		int count = 1;
-		
-		for(Value value : values){
-			if(count > 0){
-				double num_of_values = dataset.getValueCount(target_attribute, value);
-				if(num_of_values > max_count){
-					max_count = num_of_values;
-					max_value = value;
-					//System.out.println("New Max is " + value.toString() + " with count " + max_count);
-				}
-			}
-			count++;
-		}
-		
-		return max_value;
+		return getSummary(target_attribute).getMajority();
 	}
 	
 	/**
 	 * Gets the usefulness measure from the current node given
 	 * the target value.
+	 * Served from the node's summary, so only the first call counts the rows.
 	 * @param target_Attribute (Value): The attribute we wish to measure.
 	 * @param value (Value): The value we wish to measure.
 	 * @return (double): The usefulness measure.
 	 */
 	public double getAccuracy(Value target_Attribute, Value value){
-		double usefulness_measure = 0;
-		
-		double numerator = (double)dataset.getValueCount(target_Attribute, value);
-		double denominator = (double)(dataset.height-1);
-		
-		usefulness_measure = numerator / denominator;
-		
-		return usefulness_measure;
+		return getSummary(target_Attribute).getAccuracy(value);
 	}
 	
 	/**
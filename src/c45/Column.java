@@ -0,0 +1,24 @@
+package c45;
+
+/**
+ * A single column of integer cells.
+ * Numeric attributes store their values directly, nominal attributes
+ * store the codes given to their values by a ValueDictionary.
+ * Used internally by Dataset for columnar storage.
+ * @author Matthew Tetford
+ */
+abstract class Column {
+
+	/**
+	 * Gets the cell at the given row.
+	 * @param row (int): The row index, starting at 0 for the first data row.
+	 * @return (int): The number or dictionary code stored in the cell.
+	 */
+	abstract int get(int row);
+
+	/**
+	 * Gets the number of cells in the column.
+	 * @return (int): The number of cells.
+	 */
+	abstract int size();
+}
@@ -0,0 +1,125 @@
+package c45;
+
+import java.util.Arrays;
+
+/**
+ * Collects the cells of one column while a file is being read.
+ * A column starts out numeric and stores numbers directly. The first
+ * non numeric cell turns it into a nominal column, at which point the
+ * numbers seen so far are moved into a ValueDictionary.
+ * Used internally by Dataset for columnar storage.
+ * @author Matthew Tetford
+ */
+final class ColumnBuilder {
+	private int[] data;
+	private int size;
+	private ValueDictionary dictionary;
+
+	ColumnBuilder(){
+		data = new int[1024];
+		size = 0;
+		dictionary = null;
+	}
+
+	/**
+	 * Appends a numeric cell.
+	 * @param number (int): The number to append.
+	 */
+	void addNumber(int number){
+		if(dictionary == null){
+			append(number);
+		}else{
+			append(dictionary.encodeNumber(number));
+		}
+	}
+
+	/**
+	 * Appends a non numeric cell. Makes the column nominal if it wasn't already.
+	 * @param string (String): The lower case string to append.
+	 */
+	void addString(String string){
+		if(dictionary == null){
+			makeNominal();
+		}
+		append(dictionary.encodeString(string));
+	}
+
+	/**
+	 * Appends a non numeric cell held as lower case UTF-8 bytes.
+	 * Makes the column nominal if it wasn't already.
+	 * @param buffer (byte[]): The buffer holding the cell.
+	 * @param offset (int): The start of the cell in the buffer.
+	 * @param length (int): The number of bytes in the cell.
+	 */
+	void addBytes(byte[] buffer, int offset, int length){
+		if(dictionary == null){
+			makeNominal();
+		}
+		append(dictionary.encodeBytes(buffer, offset, length));
+	}
+	
+	/**
+	 * Determines if every cell seen so far was numeric.
+	 * @return (boolean): True if the column is numeric. False otherwise.
+	 */
+	boolean isNumeric(){
+		return dictionary == null;
+	}
+
+	/**
+	 * Gets the number of cells appended so far.
+	 * @return (int): The number of cells.
+	 */
+	int size(){
+		return size;
+	}
+
+	/**
+	 * Gets the dictionary of the column. Null while the column is numeric.
+	 * @return (ValueDictionary): The dictionary.
+	 */
+	ValueDictionary getDictionary(){
+		return dictionary;
+	}
+
+	/**
+	 * Copies the cells into part of a larger column.
+	 * @param target (int[]): The column to copy into.
+	 * @param at (int): Where the first cell goes in the target.
+	 * @param codes (int[]): Maps this column's dictionary codes to the target's codes, or null to copy cells as they are.
+	 */
+	void copyInto(int[] target, int at, int[] codes){
+		if(codes == null){
+			System.arraycopy(data, 0, target, at, size);
+		}else{
+			for(int y = 0; y < size; y++){
+				target[at + y] = codes[data[y]];
+			}
+		}
+	}
+
+	/**
+	 * Finishes the column, trimming the storage to the number of cells.
+	 * @return (Column): The finished column.
+	 */
+	Column build(){
+		return new ArrayColumn(Arrays.copyOf(data, size));
+	}
+
+	/**
+	 * Moves the numbers seen so far into a new dictionary, making the column nominal.
+	 */
+	void makeNominal(){
+		dictionary = new ValueDictionary();
+		for(int y = 0; y < size; y++){
+			data[y] = dictionary.encodeNumber(data[y]);
+		}
+	}
+
+	private void append(int cell){
+		if(size == data.length){
+			data = Arrays.copyOf(data, data.length * 2);
+		}
+		data[size++] = cell;
+	}
+}
@@ -0,0 +1,115 @@
+package c45;
+
+/**
+ * Collects the cells of a csv file, or of one chunk of it, into one
+ * ColumnBuilder per column.
+ * Checks that every data row has as many cells as the header row.
+ * Used internally by Dataset to load files.
+ * @author Matthew Tetford
+ */
+final class ColumnSink implements CsvParser.Sink {
+	private Value[] headers;
+	private ColumnBuilder[] builders;
+	private int rows;
+	private long chunk_start;
+
+	ColumnSink(){
+		headers = null;
+		builders = null;
+		rows = 0;
+		chunk_start = -1;
+	}
+
+	/**
+	 * Creates a sink for one chunk of a file whose header row has already been read.
+	 * @param _headers (Value[]): The header row of the file.
+	 * @param _chunk_start (long): The byte the chunk starts at, used in error messages.
+	 */
+	ColumnSink(Value[] _headers, long _chunk_start){
+		this();
+		header(_headers);
+		chunk_start = _chunk_start;
+	}
+
+	public void header(Value[] _headers){
+		headers = _headers;
+		builders = new ColumnBuilder[headers.length];
+		for(int x = 0; x < builders.length; x++){
+			builders[x] = new ColumnBuilder();
+		}
+	}
+
+	public void number(int x, int number){
+		checkWidth(x+1);
+		builders[x].addNumber(number);
+	}
+
+	public void bytes(int x, byte[] buffer, int offset, int length){
+		checkWidth(x+1);
+		builders[x].addBytes(buffer, offset, length);
+	}
+
+	public void endRow(int cells){
+		if(cells != headers.length){
+			rowError(cells);
+		}
+		rows++;
+	}
+
+	/**
+	 * Determines if a header row was read.
+	 * @return (boolean): True if the file had a header row. False if it was empty.
+	 */
+	boolean hasHeaders(){
+		return headers != null;
+	}
+
+	/**
+	 * Gets the header row, marked as attributes.
+	 * Columns that only ever saw numbers are numeric.
+	 * @return (Value[]): The headers.
+	 */
+	Value[] getHeaders(){
+		for(int x = 0; x < headers.length; x++){
+			headers[x].attribute = true;
+			headers[x].attribute_is_numeric = builders[x].isNumeric();
+		}
+		return headers;
+	}
+
+	/**
+	 * Gets the number of data rows read.
+	 * @return (int): The number of rows, not counting the header row.
+	 */
+	int getRows(){
+		return rows;
+	}
+
+	/**
+	 * Gets the builder of each column.
+	 * @return (ColumnBuilder[]): The builders.
+	 */
+	ColumnBuilder[] getBuilders(){
+		return builders;
+	}
+
+	/**
+	 * Finishes the columns.
+	 * @return (ColumnStore): The storage for the rows read.
+	 */
+	ColumnStore build(){
+		return ColumnStore.build(builders, rows);
+	}
+
+	private void checkWidth(int cells){
+		if(cells > headers.length){
+			rowError(cells);
+		}
+	}
+
+	private void rowError(int cells){
+		String row = (chunk_start < 0) ? "Row " + (rows+2) : "Row " + (rows+1) + " of the chunk at byte " + chunk_start;
+		System.err.println(row + " has " + cells + " values, expected " + headers.length);
+		System.exit(1);
+	}
+}
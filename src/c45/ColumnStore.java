@@ -0,0 +1,221 @@
+package c45;
+
+/**
+ * Column oriented storage for the data rows of a Dataset.
+ * Numeric columns hold their numbers directly, nominal columns hold
+ * dictionary codes alongside a ValueDictionary. Values are only
+ * created for nominal columns, once per distinct value.
+ * Used internally by Dataset for columnar storage.
+ * @author Matthew Tetford
+ */
+final class ColumnStore {
+	private Column[] columns;
+	private ValueDictionary[] dictionaries;
+	private Column[] class_columns;
+	private ValueDictionary[] class_dictionaries;
+	final int rows;
+
+	/**
+	 * Creates a store from finished columns.
+	 * @param _columns (Column[]): The columns of the store.
+	 * @param _dictionaries (ValueDictionary[]): The dictionary of each column, null for numeric columns.
+	 * @param _rows (int): The number of data rows.
+	 */
+	ColumnStore(Column[] _columns, ValueDictionary[] _dictionaries, int _rows){
+		columns = _columns;
+		dictionaries = _dictionaries;
+		class_columns = new Column[_columns.length];
+		class_dictionaries = new ValueDictionary[_columns.length];
+		rows = _rows;
+	}
+
+	/**
+	 * Creates a store from the builders used while reading a file.
+	 * @param builders (ColumnBuilder[]): One builder per column.
+	 * @param _rows (int): The number of data rows.
+	 * @return (ColumnStore): The new store.
+	 */
+	static ColumnStore build(ColumnBuilder[] builders, int _rows){
+		Column[] columns = new Column[builders.length];
+		ValueDictionary[] dictionaries = new ValueDictionary[builders.length];
+		for(int x = 0; x < builders.length; x++){
+			columns[x] = builders[x].build();
+			dictionaries[x] = builders[x].getDictionary();
+		}
+		return new ColumnStore(columns, dictionaries, _rows);
+	}
+
+	/**
+	 * Gets the number of columns in the store.
+	 * @return (int): The number of columns.
+	 */
+	int width(){
+		return columns.length;
+	}
+
+	/**
+	 * Determines if the given column stores numbers directly.
+	 * @param x (int): The column index.
+	 * @return (boolean): True if the column is numeric. False if it is dictionary coded.
+	 */
+	boolean isNumeric(int x){
+		return dictionaries[x] == null;
+	}
+
+	/**
+	 * Gets the given column.
+	 * @param x (int): The column index.
+	 * @return (Column): The column.
+	 */
+	Column getColumn(int x){
+		return columns[x];
+	}
+
+	/**
+	 * Gets the dictionary of the given column. Null for numeric columns.
+	 * @param x (int): The column index.
+	 * @return (ValueDictionary): The dictionary.
+	 */
+	ValueDictionary getDictionary(int x){
+		return dictionaries[x];
+	}
+
+	/**
+	 * Gets the given column with every distinct value coded as a class.
+	 * Nominal columns are returned as they are. Numeric columns are coded
+	 * the first time they are asked for, which lets a numeric attribute be
+	 * used as a target class.
+	 * @param x (int): The column index.
+	 * @return (Column): The class codes of the column.
+	 */
+	Column getClassColumn(int x){
+		if(dictionaries[x] != null){
+			return columns[x];
+		}
+		return numericClasses(x);
+	}
+	
+	/**
+	 * Gets the dictionary of the class codes returned by getClassColumn.
+	 * @param x (int): The column index.
+	 * @return (ValueDictionary): The dictionary of class codes.
+	 */
+	ValueDictionary getClassDictionary(int x){
+		if(dictionaries[x] != null){
+			return dictionaries[x];
+		}
+		numericClasses(x);
+		return class_dictionaries[x];
+	}
+	
+	/**
+	 * Sets the class codes of a numeric column, coded elsewhere, such as
+	 * into a segment file, instead of coding them on first use.
+	 * @param x (int): The column index.
+	 * @param column (Column): The class code of every row.
+	 * @param dictionary (ValueDictionary): The dictionary of the class codes.
+	 */
+	synchronized void setClassColumn(int x, Column column, ValueDictionary dictionary){
+		class_dictionaries[x] = dictionary;
+		class_columns[x] = column;
+	}
+	
+	private synchronized Column numericClasses(int x){
+		if(class_columns[x] == null){
+			ValueDictionary dictionary = new ValueDictionary();
+			int[] data = new int[rows];
+			for(int y = 0; y < rows; y++){
+				data[y] = dictionary.encodeNumber(columns[x].get(y));
+			}
+			class_dictionaries[x] = dictionary;
+			class_columns[x] = new ArrayColumn(data);
+		}
+		return class_columns[x];
+	}
+	
+	/**
+	 * Gets the cell at the given coords as a Value.
+	 * Nominal cells share one Value per distinct value.
+	 * @param x (int): The column index.
+	 * @param row (int): The row index.
+	 * @return (Value): The value of the cell.
+	 */
+	Value getValue(int x, int row){
+		if(dictionaries[x] == null){
+			return new Value(columns[x].get(row));
+		}
+		return dictionaries[x].decode(columns[x].get(row));
+	}
+
+	/**
+	 * Gets the numeric value of the cell at the given coords.
+	 * Non numeric cells of nominal columns read as 0, as Value.num_value does.
+	 * @param x (int): The column index.
+	 * @param row (int): The row index.
+	 * @return (int): The number in the cell.
+	 */
+	int getNumber(int x, int row){
+		if(dictionaries[x] == null){
+			return columns[x].get(row);
+		}
+		return dictionaries[x].decode(columns[x].get(row)).num_value;
+	}
+
+	/**
+	 * Determines which codes of a nominal column equal the given value,
+	 * following Value.equals. Lets callers compare whole columns against
+	 * a value with one array lookup per cell.
+	 * @param x (int): The index of a nominal column.
+	 * @param value (Value): The value to compare against.
+	 * @return (boolean[]): True at each code whose value equals the given value.
+	 */
+	boolean[] matchingCodes(int x, Value value){
+		ValueDictionary dictionary = dictionaries[x];
+		boolean[] matching = new boolean[dictionary.size()];
+		for(int code = 0; code < matching.length; code++){
+			matching[code] = dictionary.decode(code).equals(value);
+		}
+		return matching;
+	}
+	
+	/**
+	 * Simply sets the cell at the given coords. A non numeric value written
+	 * into a numeric column turns the column into a nominal one.
+	 * @param x (int): The column index.
+	 * @param row (int): The row index.
+	 * @param value (Value): The value to store.
+	 */
+	synchronized void setValue(int x, int row, Value value){
+		class_columns[x] = null;
+		class_dictionaries[x] = null;
+		if(dictionaries[x] == null && !value.empty && value.numeric){
+			writable(x).set(row, value.num_value);
+		}else{
+			if(dictionaries[x] == null){
+				makeNominal(x);
+			}
+			writable(x).set(row, dictionaries[x].encode(value));
+		}
+	}
+
+	private ArrayColumn writable(int x){
+		if(!(columns[x] instanceof ArrayColumn)){
+			int[] data = new int[rows];
+			for(int y = 0; y < rows; y++){
+				data[y] = columns[x].get(y);
+			}
+			columns[x] = new ArrayColumn(data);
+		}
+		return (ArrayColumn)columns[x];
+	}
+
+	private void makeNominal(int x){
+		ValueDictionary dictionary = new ValueDictionary();
+		int[] data = new int[rows];
+		for(int y = 0; y < rows; y++){
+			data[y] = dictionary.encodeNumber(columns[x].get(y));
+		}
+		columns[x] = new ArrayColumn(data);
+		dictionaries[x] = dictionary;
+	}
+}
@@ -0,0 +1,308 @@
+package c45;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A built decision tree flattened into arrays for fast prediction.
+ * Node n tests column feature[n] of a row. Numeric nodes send rows with
+ * a cell greater than or equal to threshold[n] to node first_child[n]
+ * and other rows to node first_child[n]+1. Nominal nodes look the cell's
+ * dictionary code up in child_table, starting at table_start[n]. Leaves
+ * have a feature of -1 and predict prediction[n]. Every node keeps the
+ * class its training rows voted for, which is predicted when a row has a
+ * value the node has no child for.
+ * Rows are int arrays indexed by column: numbers for numeric columns
+ * and codes from the training data's dictionaries for nominal columns.
+ * The encode methods turn Values into such rows. Predicting allocates
+ * nothing and needs no locking, so one tree can be shared by many threads.
+ * @author Matthew Tetford
+ */
+public final class CompiledTree extends Predictor {
+	final int[] feature;
+	final boolean[] numeric;
+	final int[] threshold;
+	final int[] first_child;
+	final int[] table_start;
+	final int[] table_size;
+	final int[] child_table;
+	final int[] prediction;
+	private final Value[] classes;
+	final ValueDictionary class_dictionary;
+	final Value[] headers;
+	final ValueDictionary[] dictionaries;
+	final int target;
+
+	private CompiledTree(int nodes, int table, Dataset dataset, int _target){
+		feature = new int[nodes];
+		numeric = new boolean[nodes];
+		threshold = new int[nodes];
+		first_child = new int[nodes];
+		table_start = new int[nodes];
+		table_size = new int[nodes];
+		child_table = new int[table];
+		prediction = new int[nodes];
+		target = _target;
+
+		class_dictionary = dataset.getClassDictionary(target);
+		classes = new Value[class_dictionary.size()];
+		for(int c = 0; c < classes.length; c++){
+			classes[c] = class_dictionary.decode(c);
+		}
+		headers = dataset.getAttributeArray();
+		dictionaries = new ValueDictionary[dataset.width];
+		for(int x = 0; x < dataset.width; x++){
+			dictionaries[x] = dataset.getDictionary(x);
+		}
+	}
+
+	/**
+	 * Creates a tree from arrays read from a model file. The arrays are used as they are.
+	 */
+	CompiledTree(int[] _feature, boolean[] _numeric, int[] _threshold, int[] _first_child,
+			int[] _table_start, int[] _table_size, int[] _child_table, int[] _prediction,
+			ValueDictionary _class_dictionary, Value[] _headers, ValueDictionary[] _dictionaries, int _target){
+		feature = _feature;
+		numeric = _numeric;
+		threshold = _threshold;
+		first_child = _first_child;
+		table_start = _table_start;
+		table_size = _table_size;
+		child_table = _child_table;
+		prediction = _prediction;
+		class_dictionary = _class_dictionary;
+		headers = _headers;
+		dictionaries = _dictionaries;
+		target = _target;
+
+		classes = new Value[class_dictionary.size()];
+		for(int c = 0; c < classes.length; c++){
+			classes[c] = class_dictionary.decode(c);
+		}
+	}
+
+	/**
+	 * Loads a tree saved by write. The file is memory mapped, so loading
+	 * takes about as long as copying the node arrays, and needs neither
+	 * the training data nor a rebuild.
+	 * @param filename (String): The model file.
+	 * @return (CompiledTree): The tree, ready to predict with.
+	 */
+	public static CompiledTree read(String filename){
+		return ModelFile.read(filename);
+	}
+
+	/**
+	 * Saves the tree to a binary model file that read can load.
+	 * The file holds the headers and dictionaries of the training data,
+	 * the class values and the node arrays.
+	 * @param filename (String): The file to write the model to.
+	 */
+	public void write(String filename){
+		ModelFile.write(filename, this);
+	}
+
+	/**
+	 * Flattens a built tree. The tree should already be pruned.
+	 * @param root (C45Node): The root of the tree.
+	 * @param target_class (Value): The attribute the tree classifies by.
+	 * @return (CompiledTree): The flattened tree.
+	 */
+	public static CompiledTree compile(C45Node root, Value target_class){
+		Dataset dataset = root.getDataset();
+		int target = dataset.getHeaderIndex(target_class);
+
+		//Number the nodes breadth first so the children of a node are next to each other
+		ArrayList<C45Node> order = new ArrayList<C45Node>();
+		int table = 0;
+		ArrayDeque<C45Node> queue = new ArrayDeque<C45Node>();
+		queue.add(root);
+		while(!queue.isEmpty()){
+			C45Node node = queue.poll();
+			order.add(node);
+			ArrayList<C45Node> children = node.getChildren();
+			if(!children.isEmpty() && !children.get(0).isContinuousSplit()){
+				int x = dataset.getHeaderIndex(children.get(0).getSplitAttribute());
+				table += dataset.getDictionary(x).size();
+			}
+			if(!children.isEmpty() && children.get(0).isContinuousSplit()){
+				//Numeric children go greater than or equal first, then less than
+				queue.add(continuousChild(children, true));
+				queue.add(continuousChild(children, false));
+			}else{
+				queue.addAll(children);
+			}
+		}
+
+		CompiledTree tree = new CompiledTree(order.size(), table, dataset, target);
+		int next_node = 1;
+		int next_table = 0;
+		for(int n = 0; n < order.size(); n++){
+			C45Node node = order.get(n);
+			int predicted = dataset.getClassCode(target, node.getMaxValue(target_class));
+			tree.prediction[n] = (predicted >= 0 || n == 0) ? predicted : tree.prediction[tree.parentOf(n)];
+			tree.feature[n] = -1;
+
+			ArrayList<C45Node> children = node.getChildren();
+			if(children.isEmpty()){
+				continue;
+			}
+			int x = dataset.getHeaderIndex(children.get(0).getSplitAttribute());
+			tree.feature[n] = x;
+			tree.first_child[n] = next_node;
+			if(children.get(0).isContinuousSplit()){
+				tree.numeric[n] = true;
+				tree.threshold[n] = children.get(0).getSplitNumber();
+				next_node += 2;
+			}else{
+				ValueDictionary dictionary = dataset.getDictionary(x);
+				tree.table_start[n] = next_table;
+				tree.table_size[n] = dictionary.size();
+				Arrays.fill(tree.child_table, next_table, next_table + dictionary.size(), -1);
+				for(C45Node child : children){
+					int code = dictionary.lookup(child.getSplitValue());
+					if(code >= 0){
+						tree.child_table[next_table + code] = next_node;
+					}
+					next_node++;
+				}
+				next_table += dictionary.size();
+			}
+		}
+		return tree;
+	}
+
+	private static C45Node continuousChild(ArrayList<C45Node> children, boolean gte){
+		for(C45Node child : children){
+			if(child.isGTE() == gte){
+				return child;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the parent of a node. Only used while compiling.
+	 */
+	private int parentOf(int n){
+		for(int p = n - 1; p >= 0; p--){
+			if(feature[p] >= 0 && first_child[p] <= n){
+				return p;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Predicts the class of an encoded row.
+	 * @param row (int[]): The row, indexed by column. The target column is ignored.
+	 * @return (int): The code of the predicted class, see getClassValue.
+	 */
+	public int predict(int[] row){
+		int n = 0;
+		while(true){
+			int x = feature[n];
+			if(x < 0){
+				return prediction[n];
+			}
+			int cell = row[x];
+			int next;
+			if(numeric[n]){
+				next = first_child[n] + ((cell >= threshold[n]) ? 0 : 1);
+			}else{
+				next = (cell >= 0 && cell < table_size[n]) ? child_table[table_start[n] + cell] : -1;
+				if(next < 0){
+					return prediction[n];
+				}
+			}
+			n = next;
+		}
+	}
+
+	/**
+	 * Predicts the class of an encoded row held as doubles.
+	 * Numeric cells are compared as they are, nominal cells hold dictionary codes.
+	 * @param row (double[]): The row, indexed by column. The target column is ignored.
+	 * @return (int): The code of the predicted class, see getClassValue.
+	 */
+	public int predict(double[] row){
+		int n = 0;
+		while(true){
+			int x = feature[n];
+			if(x < 0){
+				return prediction[n];
+			}
+			double cell = row[x];
+			int next;
+			if(numeric[n]){
+				next = first_child[n] + ((cell >= threshold[n]) ? 0 : 1);
+			}else{
+				int code = (int)cell;
+				next = (code >= 0 && code < table_size[n]) ? child_table[table_start[n] + code] : -1;
+				if(next < 0){
+					return prediction[n];
+				}
+			}
+			n = next;
+		}
+	}
+
+	/**
+	 * Gets the dictionary the given nominal column is encoded with.
+	 * @param x (int): The column.
+	 * @return (ValueDictionary): The dictionary, or null if the column is numeric.
+	 */
+	ValueDictionary getDictionary(int x){
+		return dictionaries[x];
+	}
+
+	/**
+	 * Gets the dictionary of class codes returned by predict.
+	 * @return (ValueDictionary): The class dictionary.
+	 */
+	ValueDictionary getClassDictionary(){
+		return class_dictionary;
+	}
+
+	/**
+	 * Gets the value of a predicted class.
+	 * @param code (int): The class code returned by predict.
+	 * @return (Value): The value, or an empty Value if the code is -1.
+	 */
+	public Value getClassValue(int code){
+		return (code >= 0) ? classes[code] : new Value();
+	}
+
+	/**
+	 * Gets the number of distinct classes the tree was trained on.
+	 * @return (int): The number of classes.
+	 */
+	public int getClassCount(){
+		return classes.length;
+	}
+
+	/**
+	 * Gets the column the tree classifies by.
+	 * @return (int): The index of the target column.
+	 */
+	public int getTargetIndex(){
+		return target;
+	}
+
+	/**
+	 * Gets the headers of the training data, in column order.
+	 * @return (Value[]): The headers.
+	 */
+	public Value[] getHeaders(){
+		return headers.clone();
+	}
+
+	/**
+	 * Gets the number of nodes in the tree.
+	 * @return (int): The number of nodes.
+	 */
+	public int getNodeCount(){
+		return feature.length;
+	}
+}
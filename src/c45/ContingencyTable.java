@@ -0,0 +1,136 @@
+package c45;
+
+/**
+ * Counts of rows for every pairing of an attribute's values with the
+ * target class's values, taken in one pass over a node's rows.
+ * Entropy and information gain of a nominal split are derived from the
+ * counts instead of rescanning the rows once per value.
+ * Used internally by DecisionTree to implement C4.5 algorithm.
+ * @author Matthew Tetford
+ */
+final class ContingencyTable {
+	final int values;
+	final int classes;
+	final int total;
+	private final int[] counts;
+	private final int[] value_totals;
+	private final int[] class_totals;
+
+	/**
+	 * Wraps counts taken elsewhere, such as by ExternalBuilder.
+	 * @param _values (int): The number of attribute value codes.
+	 * @param _classes (int): The number of class codes.
+	 * @param _counts (int[]): The count of every value and class, at value * classes + class.
+	 * @param _value_totals (int[]): The number of rows with each value.
+	 * @param _class_totals (int[]): The number of rows with each class.
+	 * @param _total (int): The number of rows.
+	 */
+	ContingencyTable(int _values, int _classes, int[] _counts, int[] _value_totals, int[] _class_totals, int _total){
+		values = _values;
+		classes = _classes;
+		counts = _counts;
+		value_totals = _value_totals;
+		class_totals = _class_totals;
+		total = _total;
+	}
+
+	/**
+	 * Counts the rows of a Dataset by attribute value and target class.
+	 * Values are coded the same way as Dataset.getClassColumn, so numeric
+	 * attributes get one row in the table per distinct number.
+	 * @param dataset (Dataset): The rows to count.
+	 * @param attribute (int): The index of the attribute.
+	 * @param target (int): The index of the target class.
+	 * @return (ContingencyTable): The counts.
+	 */
+	static ContingencyTable count(Dataset dataset, int attribute, int target){
+		Column attribute_codes = dataset.getClassColumn(attribute);
+		Column class_codes = dataset.getClassColumn(target);
+		int values = dataset.getClassCount(attribute);
+		int classes = dataset.getClassCount(target);
+
+		int[] counts = new int[values * classes];
+		int[] value_totals = new int[values];
+		int[] class_totals = new int[classes];
+		int total = dataset.height-1;
+
+		for(int y = 1; y <= total; y++){
+			int row = dataset.row(y);
+			int value = attribute_codes.get(row);
+			int code = class_codes.get(row);
+			counts[value * classes + code]++;
+			value_totals[value]++;
+			class_totals[code]++;
+		}
+
+		return new ContingencyTable(values, classes, counts, value_totals, class_totals, total);
+	}
+
+	/**
+	 * Gets the number of rows with the given attribute value and class.
+	 * @param value (int): The code of the attribute value.
+	 * @param code (int): The code of the class.
+	 * @return (int): The count.
+	 */
+	int getCount(int value, int code){
+		return counts[value * classes + code];
+	}
+
+	/**
+	 * Gets the number of rows with the given attribute value.
+	 * @param value (int): The code of the attribute value.
+	 * @return (int): The count.
+	 */
+	int getValueTotal(int value){
+		return value_totals[value];
+	}
+
+	/**
+	 * Gets the class counts of the rows with the given attribute value.
+	 * @param value (int): The code of the attribute value.
+	 * @return (int[]): The count of each class.
+	 */
+	int[] getClassCounts(int value){
+		int[] row = new int[classes];
+		System.arraycopy(counts, value * classes, row, 0, classes);
+		return row;
+	}
+
+	/**
+	 * Gets the class counts of all rows.
+	 * @return (int[]): The count of each class.
+	 */
+	int[] getClassTotals(){
+		return class_totals.clone();
+	}
+
+	/**
+	 * Calculates the entropy of the target class over all rows.
+	 * @return (double): The entropy.
+	 */
+	double entropy(){
+		return DecisionTree.entropy(class_totals, total);
+	}
+
+	/**
+	 * Calculates the information gain of splitting on the attribute:
+	 * the entropy of all rows less the entropy of each value's rows
+	 * weighted by the share of rows with that value.
+	 * @return (double): The information gain.
+	 */
+	double gain(){
+		double gain = entropy();
+		int[] row = new int[classes];
+
+		for(int value = 0; value < values; value++){
+			int value_total = value_totals[value];
+			if(value_total > 0){
+				System.arraycopy(counts, value * classes, row, 0, classes);
+				double ratio = (double)value_total / (double)total;
+				gain -= ratio * DecisionTree.entropy(row, value_total);
+			}
+		}
+
+		return gain;
+	}
+}
@@ -0,0 +1,263 @@
+package c45;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * k-fold cross validation and grid search over the tree options
+ * min_continuous_node_size, max_tree_depth and min_split_gain.
+ * The training data is loaded once and its rows are shuffled into folds
+ * once. Every configuration shares the folds' row id arrays, each tree
+ * being built from a view of them, and, in histogram mode, one set of
+ * quantile buckets over the whole data set. Every fold of every
+ * configuration is its own task in the pool, built serially within the
+ * task, so configurations and folds run concurrently. Held out rows are
+ * scored straight from the column storage with a CompiledTree.
+ * Usage: java c45.CrossValidation training.csv target folds
+ * min_node_sizes max_depths min_gains [threads], where the target is a
+ * column number starting at 1 and each grid is a comma separated list,
+ * for example: java c45.CrossValidation math.csv 30 10 0,5,10 0,4,8 0,0.01
+ * @author Matthew Tetford
+ */
+public final class CrossValidation {
+	private final Dataset dataset;
+	private final Value target_class;
+	private final int[][] training_rows;
+	private final int[][] testing_rows;
+	private final ForkJoinPool pool;
+	private final int histogram_bins;
+	private final QuantileBins bins;
+
+	/**
+	 * Shuffles the rows of a data set into folds.
+	 * @param _dataset (Dataset): The data set, loaded once.
+	 * @param _target_class (Value): The attribute to classify by.
+	 * @param folds (int): The number of folds, at least 2.
+	 * @param seed (long): The seed of the shuffle.
+	 * @param _pool (ForkJoinPool): The pool to run folds in, or null to run them one by one.
+	 * @param _histogram_bins (int): The quantile buckets per numeric attribute, 0 to search exactly.
+	 */
+	public CrossValidation(Dataset _dataset, Value _target_class, int folds, long seed, ForkJoinPool _pool, int _histogram_bins){
+		int rows = _dataset.height-1;
+		if(folds < 2 || folds > rows){
+			System.err.println("Cross validation needs between 2 and " + rows + " folds");
+			System.exit(1);
+		}
+		dataset = _dataset;
+		target_class = _target_class;
+		pool = _pool;
+		histogram_bins = _histogram_bins;
+		bins = (histogram_bins > 0) ? QuantileBins.build(dataset, histogram_bins) : null;
+
+		int[] shuffled = new int[rows];
+		for(int y = 1; y <= rows; y++){
+			shuffled[y-1] = dataset.row(y);
+		}
+		SplittableRandom random = new SplittableRandom(seed);
+		for(int i = rows - 1; i > 0; i--){
+			int pick = random.nextInt(i + 1);
+			int temp = shuffled[i];
+			shuffled[i] = shuffled[pick];
+			shuffled[pick] = temp;
+		}
+
+		training_rows = new int[folds][];
+		testing_rows = new int[folds][];
+		for(int f = 0; f < folds; f++){
+			int from = (int)((long)rows * f / folds);
+			int to = (int)((long)rows * (f+1) / folds);
+			testing_rows[f] = new int[to - from];
+			System.arraycopy(shuffled, from, testing_rows[f], 0, to - from);
+			training_rows[f] = new int[rows - (to - from)];
+			System.arraycopy(shuffled, 0, training_rows[f], 0, from);
+			System.arraycopy(shuffled, to, training_rows[f], from, rows - to);
+		}
+	}
+
+	/**
+	 * Cross validates one configuration.
+	 * @param min_node_size (int): The fewest rows a node needs to keep children, 0 to ignore.
+	 * @param max_depth (int): The deepest a node may be and keep children, 0 to ignore.
+	 * @param min_gain (double): The minimum gain to split on.
+	 * @return (CrossValidationResult): The accuracy and timing of each fold.
+	 */
+	public CrossValidationResult evaluate(int min_node_size, int max_depth, double min_gain){
+		return gridSearch(new int[]{min_node_size}, new int[]{max_depth}, new double[]{min_gain}).get(0);
+	}
+
+	/**
+	 * Cross validates every combination of the given options, all at once.
+	 * @param min_node_sizes (int[]): The minimum node sizes to try.
+	 * @param max_depths (int[]): The maximum depths to try.
+	 * @param min_gains (double[]): The minimum gains to try.
+	 * @return (ArrayList<CrossValidationResult>): A result per configuration, highest mean accuracy first.
+	 */
+	public ArrayList<CrossValidationResult> gridSearch(int[] min_node_sizes, int[] max_depths, double[] min_gains){
+		ArrayList<CrossValidationResult> results = new ArrayList<CrossValidationResult>();
+		final ArrayList<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+		for(int min_node_size : min_node_sizes){
+			for(int max_depth : max_depths){
+				for(double min_gain : min_gains){
+					CrossValidationResult result = new CrossValidationResult(min_node_size, max_depth, min_gain, getFolds());
+					results.add(result);
+					for(int f = 0; f < getFolds(); f++){
+						tasks.add(new FoldTask(result, f));
+					}
+				}
+			}
+		}
+
+		if(pool == null){
+			for(RecursiveAction task : tasks){
+				task.invoke();
+			}
+		}else{
+			pool.invoke(new RecursiveAction(){
+				private static final long serialVersionUID = 1L;
+				protected void compute(){
+					ForkJoinTask.invokeAll(tasks);
+				}
+			});
+		}
+
+		//Stable, so ties keep the order of the grid
+		Collections.sort(results, new Comparator<CrossValidationResult>(){
+			public int compare(CrossValidationResult a, CrossValidationResult b){
+				return Double.compare(b.getMeanAccuracy(), a.getMeanAccuracy());
+			}
+		});
+		return results;
+	}
+
+	/**
+	 * Gets the number of folds.
+	 * @return (int): The number of folds.
+	 */
+	public int getFolds(){
+		return testing_rows.length;
+	}
+
+	/**
+	 * Prints a result per line, in the order given.
+	 * @param results (ArrayList<CrossValidationResult>): The results.
+	 * @param output (PrintStream): Where to print them.
+	 */
+	public static void print(ArrayList<CrossValidationResult> results, PrintStream output){
+		for(CrossValidationResult result : results){
+			output.println(result);
+		}
+	}
+
+	/**
+	 * Builds one fold's tree from its training rows and scores its held out rows.
+	 */
+	private final class FoldTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final CrossValidationResult result;
+		private final int fold;
+
+		FoldTask(CrossValidationResult _result, int _fold){
+			result = _result;
+			fold = _fold;
+		}
+
+		protected void compute(){
+			long begin = System.nanoTime();
+			C45Node root = new C45Node(dataset.select(training_rows[fold]), null, target_class);
+			TreeBuilder builder = new TreeBuilder(target_class, result.getMinSplitGain(), result.getMaxDepth(),
+					result.getMinNodeSize(), null, TreeBuilder.DEFAULT_FORK_ROWS, histogram_bins, null);
+			builder.setQuantileBins(bins);
+			builder.build(root);
+			CompiledTree tree = CompiledTree.compile(root, target_class);
+			long built = System.nanoTime();
+
+			int target = dataset.getHeaderIndex(target_class);
+			Column classes = dataset.getClassColumn(target);
+			int[] row = new int[dataset.width];
+			int correct = 0;
+			for(int row_id : testing_rows[fold]){
+				dataset.encodeRow(row_id, row);
+				if(tree.predict(row) == classes.get(row_id)){
+					correct++;
+				}
+			}
+			long scored = System.nanoTime();
+
+			result.record(fold, (double)correct / testing_rows[fold].length, built - begin, scored - built,
+					tree.getNodeCount());
+		}
+	}
+
+	public static void main(String[] args){
+		if(args.length < 6){
+			System.err.println("Usage: java c45.CrossValidation training.csv target folds"
+					+ " min_node_sizes max_depths min_gains [threads]");
+			System.exit(1);
+		}
+		int threads = (args.length > 6) ? parseInts(args[6])[0] : Runtime.getRuntime().availableProcessors();
+		ForkJoinPool pool = (threads > 1) ? new ForkJoinPool(threads) : null;
+
+		Dataset dataset = Dataset.isSnapshot(args[0]) ? Dataset.readSnapshot(args[0]) : new Dataset(args[0], pool);
+		System.out.println("Read " + dataset.getLoadStatistics() + ".");
+		int target = parseInts(args[1])[0];
+		if(target < 1 || target > dataset.width){
+			System.err.println("The target must be a column number between 1 and " + dataset.width);
+			System.exit(1);
+		}
+		Value target_class = dataset.getAttribute(target-1);
+
+		long begin = System.currentTimeMillis();
+		CrossValidation validation = new CrossValidation(dataset, target_class, parseInts(args[2])[0], 1, pool, 0);
+		ArrayList<CrossValidationResult> results = validation.gridSearch(parseInts(args[3]), parseInts(args[4]),
+				parseDoubles(args[5]));
+		long duration = System.currentTimeMillis() - begin;
+
+		System.out.println("\n" + validation.getFolds() + " fold cross validation of " + results.size()
+				+ " configurations for " + target_class + ", best first:");
+		print(results, System.out);
+		System.out.println("\nCross validation took " + duration + " milliseconds.");
+		if(pool != null){
+			pool.shutdown();
+		}
+	}
+
+	private static int[] parseInts(String list){
+		String[] items = list.split(",");
+		int[] numbers = new int[items.length];
+		try {
+			for(int i = 0; i < items.length; i++){
+				numbers[i] = Integer.parseInt(items[i].trim());
+				if(numbers[i] < 0){
+					throw new NumberFormatException();
+				}
+			}
+		} catch (NumberFormatException e) {
+			System.err.println("Expected whole numbers of 0 or more, got " + list);
+			System.exit(1);
+		}
+		return numbers;
+	}
+
+	private static double[] parseDoubles(String list){
+		String[] items = list.split(",");
+		double[] numbers = new double[items.length];
+		try {
+			for(int i = 0; i < items.length; i++){
+				numbers[i] = Double.parseDouble(items[i].trim());
+				if(!(numbers[i] >= 0)){
+					throw new NumberFormatException();
+				}
+			}
+		} catch (NumberFormatException e) {
+			System.err.println("Expected numbers of 0 or more, got " + list);
+			System.exit(1);
+		}
+		return numbers;
+	}
+}
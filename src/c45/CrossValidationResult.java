@@ -0,0 +1,160 @@
+package c45;
+
+/**
+ * The cross validated accuracy and timing of one configuration of the
+ * tree options: the accuracy on each fold's held out rows, their mean and
+ * standard deviation, and how long building and scoring each fold took.
+ * @author Matthew Tetford
+ */
+public final class CrossValidationResult {
+	private final int min_node_size;
+	private final int max_depth;
+	private final double min_split_gain;
+	private final double[] accuracies;
+	private final long[] build_nanos;
+	private final long[] score_nanos;
+	private final int[] nodes;
+
+	/**
+	 * Creates an empty result for a configuration, filled in fold by fold.
+	 * @param _min_node_size (int): The fewest rows a node needs to keep children.
+	 * @param _max_depth (int): The deepest a node may be and keep children.
+	 * @param _min_split_gain (double): The minimum gain to split on.
+	 * @param folds (int): The number of folds.
+	 */
+	CrossValidationResult(int _min_node_size, int _max_depth, double _min_split_gain, int folds){
+		min_node_size = _min_node_size;
+		max_depth = _max_depth;
+		min_split_gain = _min_split_gain;
+		accuracies = new double[folds];
+		build_nanos = new long[folds];
+		score_nanos = new long[folds];
+		nodes = new int[folds];
+	}
+
+	/**
+	 * Records one fold. Each fold is recorded by one thread.
+	 */
+	void record(int fold, double accuracy, long _build_nanos, long _score_nanos, int _nodes){
+		accuracies[fold] = accuracy;
+		build_nanos[fold] = _build_nanos;
+		score_nanos[fold] = _score_nanos;
+		nodes[fold] = _nodes;
+	}
+
+	/**
+	 * Gets the minimum node size of the configuration.
+	 * @return (int): The fewest rows a node needs to keep children.
+	 */
+	public int getMinNodeSize(){
+		return min_node_size;
+	}
+
+	/**
+	 * Gets the maximum depth of the configuration.
+	 * @return (int): The deepest a node may be and keep children, 0 for no limit.
+	 */
+	public int getMaxDepth(){
+		return max_depth;
+	}
+
+	/**
+	 * Gets the minimum split gain of the configuration.
+	 * @return (double): The minimum gain to split on.
+	 */
+	public double getMinSplitGain(){
+		return min_split_gain;
+	}
+
+	/**
+	 * Gets the number of folds.
+	 * @return (int): The number of folds.
+	 */
+	public int getFolds(){
+		return accuracies.length;
+	}
+
+	/**
+	 * Gets the accuracy on one fold's held out rows.
+	 * @param fold (int): The fold.
+	 * @return (double): The accuracy, between 0 and 1.
+	 */
+	public double getAccuracy(int fold){
+		return accuracies[fold];
+	}
+
+	/**
+	 * Gets the mean accuracy over the folds.
+	 * @return (double): The mean accuracy, between 0 and 1.
+	 */
+	public double getMeanAccuracy(){
+		double sum = 0;
+		for(double accuracy : accuracies){
+			sum += accuracy;
+		}
+		return sum / accuracies.length;
+	}
+
+	/**
+	 * Gets the sample standard deviation of the accuracy over the folds.
+	 * @return (double): The standard deviation, 0 with a single fold.
+	 */
+	public double getStdAccuracy(){
+		if(accuracies.length < 2){
+			return 0;
+		}
+		double mean = getMeanAccuracy();
+		double squares = 0;
+		for(double accuracy : accuracies){
+			squares += (accuracy - mean) * (accuracy - mean);
+		}
+		return Math.sqrt(squares / (accuracies.length - 1));
+	}
+
+	/**
+	 * Gets the mean time building a fold's tree took.
+	 * @return (double): The time in milliseconds.
+	 */
+	public double getMeanBuildMillis(){
+		return mean(build_nanos) / 1e6;
+	}
+
+	/**
+	 * Gets the mean time scoring a fold's held out rows took.
+	 * @return (double): The time in milliseconds.
+	 */
+	public double getMeanScoreMillis(){
+		return mean(score_nanos) / 1e6;
+	}
+
+	/**
+	 * Gets the mean number of nodes in a fold's tree.
+	 * @return (double): The number of nodes.
+	 */
+	public double getMeanNodes(){
+		double sum = 0;
+		for(int count : nodes){
+			sum += count;
+		}
+		return sum / nodes.length;
+	}
+
+	private static double mean(long[] values){
+		double sum = 0;
+		for(long value : values){
+			sum += value;
+		}
+		return sum / values.length;
+	}
+
+	/**
+	 * Returns a one line summary of the configuration and its scores.
+	 * @return (String): The summary.
+	 */
+	public String toString(){
+		return String.format("min node size %d, max depth %d, min gain %s: accuracy %.2f%c +/- %.2f, "
+				+ "build %.1f ms, score %.1f ms, %.0f nodes",
+				min_node_size, max_depth, min_split_gain, getMeanAccuracy() * 100, '%',
+				getStdAccuracy() * 100, getMeanBuildMillis(), getMeanScoreMillis(), getMeanNodes());
+	}
+}
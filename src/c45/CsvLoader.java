@@ -0,0 +1,307 @@
+package c45;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Loads a csv file into column storage.
+ * Files can be streamed through a single CsvParser, or memory mapped
+ * and split into chunks that start and end on a newline. Chunks are
+ * parsed concurrently, each into its own column builders and
+ * dictionaries. The chunks are then merged column by column into shared
+ * dictionaries, taking the chunks in file order, so every value gets
+ * the same code it would get from a single pass over the file.
+ * Used internally by Dataset to load files.
+ * @author Matthew Tetford
+ */
+final class CsvLoader {
+	/** Files smaller than this are streamed even when a pool is given. */
+	static final long MIN_MAPPED_BYTES = 1 << 20;
+	/** The largest chunk mapped at once, well under the 2GB limit of a mapping. */
+	static final long MAX_CHUNK_BYTES = 1 << 30;
+	private static final int SCAN_BYTES = 1 << 16;
+
+	Value[] headers;
+	ColumnStore store;
+	LoadStatistics statistics;
+	private long type_nanos;
+
+	private CsvLoader(){
+	}
+
+	/**
+	 * Loads a file, mapping it and parsing it in chunks if a pool is given
+	 * and the file is large enough to be worth it.
+	 * @param filename (String): The file to load.
+	 * @param pool (ForkJoinPool): The pool to parse chunks in, or null to stream the file.
+	 * @return (CsvLoader): The loaded headers, storage and load statistics.
+	 */
+	static CsvLoader load(String filename, ForkJoinPool pool){
+		long begin = System.nanoTime();
+		CsvLoader loader = new CsvLoader();
+		long bytes = 0;
+
+		try {
+			FileInputStream in = new FileInputStream(filename);
+			try {
+				FileChannel channel = in.getChannel();
+				bytes = channel.size();
+				if(pool != null && pool.getParallelism() > 1 && bytes >= MIN_MAPPED_BYTES){
+					loader.map(channel, pool);
+				}else{
+					loader.stream(in);
+				}
+			} finally {
+				in.close();
+			}
+		}
+		catch (FileNotFoundException e) {
+			System.err.println("File not found");
+			System.exit(1);
+		}
+		catch (IOException | UncheckedIOException e) {
+			System.err.println("IO Error");
+			System.exit(1);
+		}
+
+		loader.statistics = new LoadStatistics(loader.store.rows, bytes, System.nanoTime() - begin, loader.type_nanos);
+		return loader;
+	}
+
+	private void stream(FileInputStream in) throws IOException{
+		ColumnSink sink = new ColumnSink();
+		new CsvParser(sink, true).parse(in);
+		if(!sink.hasHeaders()){
+			emptyFile();
+		}
+		headers = sink.getHeaders();
+		long begin = System.nanoTime();
+		store = sink.build();
+		type_nanos = System.nanoTime() - begin;
+	}
+
+	private void map(FileChannel channel, ForkJoinPool pool) throws IOException{
+		long size = channel.size();
+		long data_start = readHeader(channel, size);
+
+		//Cut the data into roughly equal chunks, each ending just after a newline
+		long data_bytes = size - data_start;
+		long count = Math.max(pool.getParallelism(), (data_bytes + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+		ArrayList<ChunkTask> chunks = new ArrayList<ChunkTask>();
+		long start = data_start;
+		for(long i = 1; i <= count && start < size; i++){
+			long end = (i == count) ? size : nextLine(channel, data_start + data_bytes * i / count, size);
+			if(end - start > MAX_CHUNK_BYTES){
+				end = nextLine(channel, start + MAX_CHUNK_BYTES / 2, size);
+			}
+			if(end > start){
+				chunks.add(new ChunkTask(channel, start, end - start));
+			}
+			start = end;
+		}
+
+		ColumnSink[] sinks = pool.invoke(new ParseTask(chunks));
+		int rows = 0;
+		for(ColumnSink sink : sinks){
+			rows += sink.getRows();
+		}
+
+		//Settling each column's type and merging its chunks is timed as type detection
+		long begin = System.nanoTime();
+		Column[] columns = new Column[headers.length];
+		ValueDictionary[] dictionaries = new ValueDictionary[headers.length];
+		pool.invoke(new MergeTask(sinks, rows, columns, dictionaries));
+
+		for(int x = 0; x < headers.length; x++){
+			headers[x].attribute = true;
+			headers[x].attribute_is_numeric = (dictionaries[x] == null);
+		}
+		store = new ColumnStore(columns, dictionaries, rows);
+		type_nanos = System.nanoTime() - begin;
+	}
+
+	/**
+	 * Reads lines from the start of the file until the header row is found.
+	 * @return (long): The byte just after the header row.
+	 */
+	private long readHeader(FileChannel channel, long size) throws IOException{
+		ColumnSink sink = new ColumnSink();
+		CsvParser parser = new CsvParser(sink, true);
+		byte[] block = new byte[SCAN_BYTES];
+		long position = 0;
+		while(position < size){
+			int read = read(channel, position, block);
+			int line_start = 0;
+			for(int i = 0; i < read; i++){
+				if(block[i] == '\n' || block[i] == '\r'){
+					parser.parse(block, line_start, i + 1 - line_start);
+					line_start = i + 1;
+					if(sink.hasHeaders()){
+						headers = sink.getHeaders();
+						return position + line_start;
+					}
+				}
+			}
+			parser.parse(block, line_start, read - line_start);
+			position += read;
+		}
+		parser.finish();
+		if(!sink.hasHeaders()){
+			emptyFile();
+		}
+		headers = sink.getHeaders();
+		return size;
+	}
+
+	/**
+	 * Finds the start of the line after the given byte.
+	 * @return (long): The byte after the first newline at or after from, or the file size.
+	 */
+	private static long nextLine(FileChannel channel, long from, long size) throws IOException{
+		byte[] block = new byte[SCAN_BYTES];
+		long position = from;
+		while(position < size){
+			int read = read(channel, position, block);
+			for(int i = 0; i < read; i++){
+				if(block[i] == '\n' || block[i] == '\r'){
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	private static int read(FileChannel channel, long position, byte[] block) throws IOException{
+		ByteBuffer buffer = ByteBuffer.wrap(block);
+		while(buffer.hasRemaining()){
+			if(channel.read(buffer, position + buffer.position()) < 0){
+				break;
+			}
+		}
+		return buffer.position();
+	}
+
+	private static void emptyFile(){
+		System.err.println("File is empty");
+		System.exit(1);
+	}
+
+	/**
+	 * Maps and parses one chunk of the file.
+	 */
+	private final class ChunkTask extends RecursiveTask<ColumnSink> {
+		private static final long serialVersionUID = 1L;
+		private final FileChannel channel;
+		private final long start;
+		private final long length;
+
+		ChunkTask(FileChannel _channel, long _start, long _length){
+			channel = _channel;
+			start = _start;
+			length = _length;
+		}
+
+		protected ColumnSink compute(){
+			ColumnSink sink = new ColumnSink(headers, start);
+			CsvParser parser = new CsvParser(sink, false);
+			try {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+				parser.parse(buffer);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			parser.finish();
+			return sink;
+		}
+	}
+
+	/**
+	 * Parses every chunk, returning their sinks in file order.
+	 */
+	private static final class ParseTask extends RecursiveTask<ColumnSink[]> {
+		private static final long serialVersionUID = 1L;
+		private final ArrayList<ChunkTask> chunks;
+
+		ParseTask(ArrayList<ChunkTask> _chunks){
+			chunks = _chunks;
+		}
+
+		protected ColumnSink[] compute(){
+			ForkJoinTask.invokeAll(chunks);
+			ColumnSink[] sinks = new ColumnSink[chunks.size()];
+			for(int i = 0; i < sinks.length; i++){
+				sinks[i] = chunks.get(i).join();
+			}
+			return sinks;
+		}
+	}
+
+	/**
+	 * Merges the chunks of every column, one column per task.
+	 */
+	private static final class MergeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final ColumnSink[] sinks;
+		private final int rows;
+		private final Column[] columns;
+		private final ValueDictionary[] dictionaries;
+
+		MergeTask(ColumnSink[] _sinks, int _rows, Column[] _columns, ValueDictionary[] _dictionaries){
+			sinks = _sinks;
+			rows = _rows;
+			columns = _columns;
+			dictionaries = _dictionaries;
+		}
+
+		protected void compute(){
+			ArrayList<RecursiveAction> merges = new ArrayList<RecursiveAction>();
+			for(int x = 0; x < columns.length; x++){
+				final int column = x;
+				merges.add(new RecursiveAction(){
+					private static final long serialVersionUID = 1L;
+					protected void compute(){
+						merge(column);
+					}
+				});
+			}
+			ForkJoinTask.invokeAll(merges);
+		}
+
+		private void merge(int x){
+			boolean numeric = true;
+			for(ColumnSink sink : sinks){
+				numeric &= sink.getBuilders()[x].isNumeric();
+			}
+
+			//Chunks are added in file order, so codes follow first appearance in the file
+			ValueDictionary dictionary = numeric ? null : new ValueDictionary();
+			int[] data = new int[rows];
+			int at = 0;
+			for(ColumnSink sink : sinks){
+				ColumnBuilder builder = sink.getBuilders()[x];
+				int[] codes = null;
+				if(!numeric){
+					if(builder.isNumeric()){
+						builder.makeNominal();
+					}
+					codes = dictionary.encodeAll(builder.getDictionary());
+				}
+				builder.copyInto(data, at, codes);
+				at += builder.size();
+			}
+			columns[x] = new ArrayColumn(data);
+			dictionaries[x] = dictionary;
+		}
+	}
+}
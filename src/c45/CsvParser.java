@@ -0,0 +1,259 @@
+package c45;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Reads csv files a byte at a time and hands each cell to a Sink.
+ * Follows the rules Dataset has always used for csv files: quotes and
+ * semicolons are dropped, rows that end up empty are skipped, runs of
+ * commas count as one separator, and every cell is converted to lower case.
+ * Cells that are whole numbers that fit in an int are passed on as numbers.
+ * Other cells are passed on as lower case UTF-8 bytes straight from the
+ * read buffer, so no String is created for a row or for an ASCII cell.
+ * The first row is taken to be the header row.
+ * Used internally by Dataset to load files.
+ * @author Matthew Tetford
+ */
+final class CsvParser {
+
+	/**
+	 * Receives the cells of a csv file in order.
+	 */
+	interface Sink {
+		/**
+		 * Receives the header row.
+		 * @param headers (Value[]): The headers, in column order.
+		 */
+		void header(Value[] headers);
+
+		/**
+		 * Receives a numeric cell.
+		 * @param x (int): The column of the cell.
+		 * @param number (int): The number.
+		 */
+		void number(int x, int number);
+
+		/**
+		 * Receives a non numeric cell. The bytes are only valid during the call.
+		 * @param x (int): The column of the cell.
+		 * @param buffer (byte[]): The buffer holding the lower case UTF-8 cell.
+		 * @param offset (int): The start of the cell in the buffer.
+		 * @param length (int): The number of bytes in the cell.
+		 */
+		void bytes(int x, byte[] buffer, int offset, int length);
+
+		/**
+		 * Receives the end of a data row.
+		 * @param cells (int): The number of cells in the row.
+		 */
+		void endRow(int cells);
+	}
+
+	static final int BUFFER_SIZE = 1 << 20;
+	private static final long INT_LIMIT = 2147483648L;
+
+	private final Sink sink;
+	private byte[] token;
+	private int length;
+	private boolean digits;
+	private boolean negative;
+	private boolean ascii;
+	private long number;
+	private int cell;
+	private boolean row_content;
+	private boolean seen_comma;
+	private boolean leading_empty;
+	private ArrayList<Value> headers;
+	private long bytes_read;
+
+	/**
+	 * Creates a parser that hands cells to the given sink.
+	 * @param _sink (Sink): Where the cells go.
+	 * @param header_row (boolean): True if the first row is the header row.
+	 */
+	CsvParser(Sink _sink, boolean header_row){
+		sink = _sink;
+		token = new byte[256];
+		headers = header_row ? new ArrayList<Value>() : null;
+		bytes_read = 0;
+		startRow();
+	}
+
+	/**
+	 * Reads a whole stream. The stream is not closed.
+	 * @param in (InputStream): The stream to read.
+	 * @return (long): The number of bytes read.
+	 * @throws IOException If the stream can't be read.
+	 */
+	long parse(InputStream in) throws IOException{
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int read;
+		while((read = in.read(buffer)) > 0){
+			parse(buffer, 0, read);
+		}
+		finish();
+		return bytes_read;
+	}
+
+	/**
+	 * Reads the remaining bytes of a buffer, such as part of a memory mapped file.
+	 * Call finish once the last buffer has been read.
+	 * @param buffer (ByteBuffer): The bytes to read.
+	 */
+	void parse(ByteBuffer buffer){
+		byte[] chunk = new byte[Math.min(BUFFER_SIZE, Math.max(buffer.remaining(), 1))];
+		while(buffer.hasRemaining()){
+			int read = Math.min(chunk.length, buffer.remaining());
+			buffer.get(chunk, 0, read);
+			parse(chunk, 0, read);
+		}
+	}
+
+	/**
+	 * Reads a block of bytes. Rows and cells may run over into the next block.
+	 * @param buffer (byte[]): The bytes to read.
+	 * @param offset (int): The first byte to read.
+	 * @param count (int): The number of bytes to read.
+	 */
+	void parse(byte[] buffer, int offset, int count){
+		int end = offset + count;
+		for(int i = offset; i < end; i++){
+			byte b = buffer[i];
+			switch(b){
+			case '\n':
+			case '\r':
+				endRow();
+				break;
+			case ',':
+				comma();
+				break;
+			case '"':
+			case ';':
+				break;
+			default:
+				append(b);
+			}
+		}
+		bytes_read += count;
+	}
+
+	/**
+	 * Ends the last row if the input didn't end with a newline.
+	 */
+	void finish(){
+		endRow();
+	}
+
+	/**
+	 * Gets the number of bytes read so far.
+	 * @return (long): The number of bytes.
+	 */
+	long getBytesRead(){
+		return bytes_read;
+	}
+
+	private void append(byte b){
+		row_content = true;
+		if(b >= 'A' && b <= 'Z'){
+			b += ('a' - 'A');
+		}else if(b < 0){
+			ascii = false;
+		}
+
+		if(digits){
+			if(b >= '0' && b <= '9'){
+				number = number * 10 + (b - '0');
+				if(number > INT_LIMIT){
+					digits = false;
+				}
+			}else if(b != '-' || length > 0){
+				digits = false;
+			}else{
+				negative = true;
+			}
+		}
+
+		if(length == token.length){
+			token = java.util.Arrays.copyOf(token, length * 2);
+		}
+		token[length++] = b;
+	}
+
+	private void comma(){
+		row_content = true;
+		if(length > 0){
+			emit();
+		}else if(cell == 0 && !seen_comma){
+			//A row starting with commas has an empty first cell, as String.split gives
+			leading_empty = true;
+		}
+		seen_comma = true;
+	}
+
+	private void emit(){
+		if(leading_empty){
+			leading_empty = false;
+			int saved = length;
+			length = 0;
+			cellComplete(false);
+			length = saved;
+		}
+		boolean numeric = digits && length > (negative ? 1 : 0)
+				&& (negative ? number <= INT_LIMIT : number < INT_LIMIT);
+		cellComplete(numeric);
+		resetToken();
+	}
+
+	private void cellComplete(boolean numeric){
+		if(headers != null){
+			headers.add(numeric ? new Value(number()) : new Value(new String(token, 0, length, StandardCharsets.UTF_8)));
+		}else if(numeric){
+			sink.number(cell, number());
+		}else if(ascii){
+			sink.bytes(cell, token, 0, length);
+		}else{
+			byte[] lower = new String(token, 0, length, StandardCharsets.UTF_8).toLowerCase().getBytes(StandardCharsets.UTF_8);
+			sink.bytes(cell, lower, 0, lower.length);
+		}
+		cell++;
+	}
+
+	private int number(){
+		return (int)(negative ? -number : number);
+	}
+
+	private void endRow(){
+		if(length > 0){
+			emit();
+		}
+		if(row_content){
+			if(headers != null){
+				sink.header(headers.toArray(new Value[headers.size()]));
+				headers = null;
+			}else{
+				sink.endRow(cell);
+			}
+		}
+		startRow();
+	}
+
+	private void startRow(){
+		cell = 0;
+		row_content = false;
+		seen_comma = false;
+		leading_empty = false;
+		resetToken();
+	}
+
+	private void resetToken(){
+		length = 0;
+		digits = true;
+		negative = false;
+		ascii = true;
+		number = 0;
+	}
+}
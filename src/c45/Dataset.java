@@ -1,25 +1,39 @@
 package c45;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.IOException;
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Used to store and perform operations on datasets.
  * Used internally by Decision Tree to implement C4.5 algorithm.
+ * Data is stored by column in a ColumnStore: numeric attributes as
+ * int columns and nominal attributes as dictionary coded int columns.
+ * Row 0 of the Dataset is the header row, held separately as Values.
+ * Subsets are views: a range of row ids into the storage of the
+ * Dataset they were taken from. No cells are copied.
  * @author Matthew Tetford
  */
 public class Dataset {
-	private Value[][] dataset;
+	private ColumnStore store;
+	private Value[] headers;
+	private int[] rows;
+	private int offset;
+	private boolean owns_rows;
+	private LoadStatistics load_statistics;
 	public final int height;
 	public final int width;
 	
 	public Dataset(){
-		dataset = new Value[0][0];
+		store = new ColumnStore(new Column[0], new ValueDictionary[0], 0);
+		headers = new Value[0];
+		rows = new int[0];
+		offset = 0;
+		owns_rows = false;
 		height = 0;
 		width = 0;
 	}
@@ -30,117 +44,162 @@ public class Dataset {
 	 * All rows must be the same length.
 	 * Stray newlines do not matter.
 	 * All values are converted to lower case.
+	 * Files are read as UTF-8. Whole numbers are read as numbers,
+	 * anything else is read as a nominal value.
 	 * @param filename (String): The filename of the file we wish to parse.
 	 */
 	public Dataset(String filename){
-		ArrayList<String> rows = new ArrayList<String>();
-		int tempHeight = 0;
-		int tempWidth = 0;
-		
-		//Read file, line by line, append to a list
-		try {
-			BufferedReader br = new BufferedReader(new FileReader(filename));
-			String row;	
-			
-			//Try just saving lines on first go
-			while((row = br.readLine()) != null){
-				row = row.replaceAll("(\\r|\\n|\")", "");
-				row = row.replaceAll("(;)", "");
-				if(row.length() > 0){
-					rows.add(row);
-					tempHeight++;
-				}
-		    }//end while read file
-			
-			//Close the things
-			br.close();
-		}
-		catch (FileNotFoundException e) {
-			//e.printStackTrace();
-			System.err.println("File not found");
-			System.exit(1);
-		} 
-	    catch (IOException e) {
-			//e.printStackTrace();
-			System.err.println("IO Error");
-			System.exit(1);
-		}
-
-		//Get the row length, all rows should be the same length
-		tempWidth = rows.get(0).split(",+").length;
-		
-		//can now init array since we now know the size of each dimension
-		height = tempHeight;
-		width = tempWidth;
-		dataset = new Value[width][height];
-		//println("x = " + row_length + " y = " + transaction_count);
-		
-		//Now tokenize
-		int y = 0;
-		for(String row : rows){
-			String[] tokens = row.split(",+");
-			for(int x = 0; x < tokens.length; x++){
-				tokens[x] = tokens[x].toLowerCase();
-				if(tokens[x].matches("-?\\d+(\\.\\d+)?")){
-					dataset[x][y] = new Value(Integer.parseInt(tokens[x]));
-				}else{
-					dataset[x][y] = new Value(tokens[x]);
-				}
-			}
-			y++;
+		this(CsvLoader.load(filename, null));
+	}//end from file constructor
+	
+	/**
+	 * Constructs a Dataset from a given text file, parsing the file on several threads.
+	 * The file is memory mapped and cut into chunks at newlines, and the chunks
+	 * are parsed concurrently. The result is the same as Dataset(String).
+	 * Small files are read on a single thread.
+	 * @param filename (String): The filename of the file we wish to parse.
+	 * @param threads (int): The number of threads to parse with.
+	 */
+	public Dataset(String filename, int threads){
+		this(loadParallel(filename, threads));
+	}
+	
+	/**
+	 * Constructs a Dataset from a given text file, parsing chunks of the file in the given pool.
+	 * @param filename (String): The filename of the file we wish to parse.
+	 * @param pool (ForkJoinPool): The pool to parse in, or null to read the file on this thread.
+	 */
+	Dataset(String filename, ForkJoinPool pool){
+		this(CsvLoader.load(filename, pool));
+	}
+	
+	private Dataset(CsvLoader loader){
+		this(loader.headers, loader.store, loader.statistics);
+	}
+	
+	private Dataset(Value[] _headers, ColumnStore _store, LoadStatistics _load_statistics){
+		this(_headers, _store, _load_statistics, identityRows(_store.rows));
+	}
+	
+	private Dataset(Value[] _headers, ColumnStore _store, LoadStatistics _load_statistics, int[] _rows){
+		headers = _headers;
+		store = _store;
+		width = headers.length;
+		height = store.rows+1;
+		rows = _rows;
+		offset = 0;
+		owns_rows = false;
+		load_statistics = _load_statistics;
+	}
+	
+	/**
+	 * Loads a Dataset from a binary snapshot written by writeSnapshot.
+	 * The columns are memory mapped rather than read, so loading takes
+	 * about as long as reading the dictionaries, and the pages are shared
+	 * with any other process that has the same snapshot open.
+	 * @param filename (String): The filename of the snapshot.
+	 * @return (Dataset): The Dataset held in the snapshot.
+	 */
+	public static Dataset readSnapshot(String filename){
+		Snapshot snapshot = Snapshot.read(filename);
+		return new Dataset(snapshot.headers, snapshot.store, snapshot.statistics);
+	}
+	
+	/**
+	 * Loads a Dataset too big for the heap. The file is streamed into one
+	 * segment file per column in the given directory, and the segments
+	 * are memory mapped, so the heap only holds the dictionaries.
+	 * The rows aren't listed either: the Dataset can only be trained on
+	 * by a Trainer with external memory set, which streams row ids from
+	 * spill files, see ExternalBuilder.
+	 * @param filename (String): The filename of the csv file.
+	 * @param directory (String): The directory to write the segment files to.
+	 * @param memory_budget (long): The bytes of heap loading may use.
+	 * @return (Dataset): The Dataset held in the segment files.
+	 */
+	public static Dataset loadSegments(String filename, String directory, long memory_budget){
+		SegmentStore segments = SegmentStore.load(filename, new File(directory), memory_budget);
+		return new Dataset(segments.loaded_headers, segments.store, segments.statistics, null);
+	}
+	
+	/**
+	 * Determines if the Dataset was loaded by loadSegments, so its rows aren't listed.
+	 * @return (boolean): True if the rows are only in segment files. False otherwise.
+	 */
+	public boolean isExternal(){
+		return rows == null;
+	}
+	
+	/**
+	 * Determines if the given file is a snapshot written by writeSnapshot.
+	 * @param filename (String): The filename to check.
+	 * @return (boolean): True if the file is a snapshot. False otherwise.
+	 */
+	public static boolean isSnapshot(String filename){
+		return Snapshot.isSnapshot(filename);
+	}
+	
+	/**
+	 * Writes the Dataset to a binary snapshot that readSnapshot can load.
+	 * The snapshot holds the headers, the column types, the dictionaries
+	 * and the encoded columns.
+	 * @param filename (String): The filename to write the snapshot to.
+	 */
+	public void writeSnapshot(String filename){
+		Snapshot.write(filename, headers, store, rows, offset, height-1);
+	}
+	
+	private static CsvLoader loadParallel(String filename, int threads){
+		if(threads <= 1){
+			return CsvLoader.load(filename, null);
 		}
-		
-		//Need to determine if some columns are numeric
-		for(int x = 0; x < width; x++){
-			boolean numeric = true;
-			for(y = 1; y < height; y++){
-				if(!dataset[x][y].numeric){
-					numeric = false;
-					break;
-				}
-			}
-			dataset[x][0].attribute = true;
-			dataset[x][0].attribute_is_numeric = numeric;
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			return CsvLoader.load(filename, pool);
+		} finally {
+			pool.shutdown();
 		}
-	}//end from file constructor
+	}
 	
 	/**
 	 * Creates a subset Dataset from the given Dataset.
+	 * The subset is a view that shares the storage of the superset.
 	 * @param superset (Dataset): The original dataset.
 	 * @param attribute (String): The attribute we will split on.
 	 * @param value (String): The value we will split on.
 	 */
 	public Dataset(Dataset superset, Value attribute, Value value){
 		
-		Value[][] superset_array = superset.toArray();
-		width = superset_array.length;
+		width = superset.width;
 		int tempHeight = 0;
-		ArrayList<Integer> row_indexes = new ArrayList<Integer>();
-		row_indexes.add(0);
 		
 		int header_index = superset.getHeaderIndex(attribute);
-		for(int y = 0; y < superset_array[0].length; y++){
-			if(superset_array[header_index][y].equals(value)){
-				row_indexes.add(y);
+		for(int y = 1; y < superset.height; y++){
+			if(superset.cellEquals(header_index, y, value)){
 				tempHeight++;
 			}
 		}
 		
-		height = tempHeight+1;
-		dataset = new Value[width][height];
-		
-		int y = 0;
-		for(Integer row : row_indexes){
-			for(int x = 0; x < width; x++){
-				dataset[x][y] = superset_array[x][row];
+		int[] row_indexes = new int[tempHeight];
+		int i = 0;
+		for(int y = 1; y < superset.height; y++){
+			if(superset.cellEquals(header_index, y, value)){
+				row_indexes[i++] = superset.row(y);
 			}
-			y++;
 		}
+		
+		height = tempHeight+1;
+		headers = superset.headers.clone();
+		store = superset.store;
+		rows = row_indexes;
+		offset = 0;
+		owns_rows = false;
 	}
 	
 	/**
 	 * Creates a subset Dataset from the given Dataset using a
 	 * continuous split value.
+	 * The subset is a view that shares the storage of the superset.
 	 * @param superset (Dataset): The original dataset.
 	 * @param attribute (Value): The attribute we will split on.
 	 * @param value (int): The value we will split on.
@@ -148,37 +207,104 @@ public class Dataset {
 	 */
 	public Dataset(Dataset superset, Value attribute, int value, boolean greater_than_equal){
 		
-		Value[][] superset_array = superset.toArray();
-		width = superset_array.length;
+		width = superset.width;
 		int tempHeight = 0;
-		ArrayList<Integer> row_indexes = new ArrayList<Integer>();
-		row_indexes.add(0);
 		
 		int header_index = superset.getHeaderIndex(attribute);
-		for(int y = 1; y < superset_array[0].length; y++){
-			if(greater_than_equal){
-				if(superset_array[header_index][y].num_value >= value){
-					row_indexes.add(y);
-					tempHeight++;
-				}
-			}else{
-				if(superset_array[header_index][y].num_value < value){
-					row_indexes.add(y);
-					tempHeight++;
-				}
+		if(greater_than_equal){
+			tempHeight = superset.getValueCountGTE(header_index, value);
+		}else{
+			tempHeight = (superset.height-1) - superset.getValueCountGTE(header_index, value);
+		}
+		
+		int[] row_indexes = new int[tempHeight];
+		int i = 0;
+		for(int y = 1; y < superset.height; y++){
+			if((superset.getNumber(header_index, y) >= value) == greater_than_equal){
+				row_indexes[i++] = superset.row(y);
 			}
 		}
 		
 		height = tempHeight+1;
-		dataset = new Value[width][height];
-		
-		int y = 0;
-		for(Integer row : row_indexes){
-			for(int x = 0; x < width; x++){
-				dataset[x][y] = superset_array[x][row];
+		headers = superset.headers.clone();
+		store = superset.store;
+		rows = row_indexes;
+		offset = 0;
+		owns_rows = false;
+	}
+	
+	/**
+	 * Creates a view over a range of the given row ids.
+	 * Used internally when partitioning.
+	 * @param superset (Dataset): The dataset the rows belong to.
+	 * @param _rows (int[]): The row ids the view is a range of.
+	 * @param _offset (int): Start of the range.
+	 * @param count (int): Number of rows in the range.
+	 */
+	private Dataset(Dataset superset, int[] _rows, int _offset, int count){
+		width = superset.width;
+		height = count+1;
+		headers = superset.headers.clone();
+		store = superset.store;
+		rows = _rows;
+		offset = _offset;
+		owns_rows = true;
+	}
+	
+	/**
+	 * Draws a bootstrap sample of the rows: as many rows as the Dataset
+	 * has, picked at random with replacement. The sample is a view that
+	 * shares the storage, so only the row ids are copied.
+	 * @param random (SplittableRandom): Where to draw the rows from.
+	 * @return (Dataset): The sample.
+	 */
+	Dataset bootstrap(SplittableRandom random){
+		int count = height-1;
+		int[] sample = new int[count];
+		for(int i = 0; i < count; i++){
+			sample[i] = row(1 + random.nextInt(count));
+		}
+		return new Dataset(this, sample, 0, count);
+	}
+	
+	/**
+	 * Creates a view of the given rows of the storage. The ids are copied,
+	 * since partitioning the view reorders them, so one array of ids can
+	 * back any number of views.
+	 * @param row_ids (int[]): The storage row ids, see row.
+	 * @return (Dataset): The view.
+	 */
+	Dataset select(int[] row_ids){
+		return new Dataset(this, row_ids.clone(), 0, row_ids.length);
+	}
+	
+	/**
+	 * Creates a view of the given rows of the storage that takes the array
+	 * of ids over, so the caller must not use it afterwards.
+	 * @param row_ids (int[]): The storage row ids, see row.
+	 * @return (Dataset): The view.
+	 */
+	Dataset adopt(int[] row_ids){
+		return new Dataset(this, row_ids, 0, row_ids.length);
+	}
+	
+	/**
+	 * Creates a Dataset with no rows, the same headers and copies of the
+	 * dictionaries, so values can be added to the copies without changing
+	 * this Dataset.
+	 * @return (Dataset): The empty Dataset.
+	 */
+	Dataset schema(){
+		Column[] columns = new Column[width];
+		ValueDictionary[] dictionaries = new ValueDictionary[width];
+		for(int x = 0; x < width; x++){
+			columns[x] = new ArrayColumn(new int[0]);
+			if(store.getDictionary(x) != null){
+				dictionaries[x] = new ValueDictionary();
+				dictionaries[x].encodeAll(store.getDictionary(x));
 			}
-			y++;
 		}
+		return new Dataset(headers.clone(), new ColumnStore(columns, dictionaries, 0), load_statistics, new int[0]);
 	}
 	
 	/**
@@ -189,18 +315,26 @@ public class Dataset {
 	 */
 	public void makeDatasetConsistent(Dataset edit){
 		for(int x = 0; x < width; x++){
-			Value value = dataset[x][0];
+			Value value = headers[x];
 			edit.setValue(x, 0, value);
 		}
 	}
 	
+	/**
+	 * Gets how long the Dataset took to load from its file.
+	 * @return (LoadStatistics): The load statistics, or null if the Dataset wasn't loaded from a file.
+	 */
+	public LoadStatistics getLoadStatistics(){
+		return load_statistics;
+	}
+	
 	/**
 	 * Gets the header or attribute at the given index.
 	 * @param x (int): The index of the attribute we want to retrieve.
 	 * @return (String): The attribute.
 	 */
 	public Value getAttribute(int x){
-		return dataset[x][0];
+		return headers[x];
 	}
 	
 	/**
@@ -212,8 +346,8 @@ public class Dataset {
 		HashSet<String> test = new HashSet<String>();
 		
 		for(int x = 0; x < width; x++){
-			if(test.add(dataset[x][0].toString())){
-				attributes.add(dataset[x][0]);
+			if(test.add(headers[x].toString())){
+				attributes.add(headers[x]);
 			}
 		}
 		return attributes;
@@ -227,7 +361,7 @@ public class Dataset {
 		Value[] attributes = new Value[width];
 		
 		for(int x = 0; x < width; x++){
-			attributes[x] = dataset[x][0];
+			attributes[x] = headers[x];
 		}
 		
 		return attributes;
@@ -239,14 +373,23 @@ public class Dataset {
 	 * @return (int): The number of distinct values.
 	 */
 	public int getAttributeValueCount(Value attribute){
-		HashSet<String> values = new HashSet<String>();
 		int attribute_index = getHeaderIndex(attribute);
 		
+		if(store.isNumeric(attribute_index)){
+			return getValueNumericSet(attribute).size();
+		}
+		
+		boolean[] seen = new boolean[store.getDictionary(attribute_index).size()];
+		int count = 0;
 		for(int y = 1; y < height; y++){
-			values.add(dataset[attribute_index][y].toString());
+			int code = store.getColumn(attribute_index).get(row(y));
+			if(!seen[code]){
+				seen[code] = true;
+				count++;
+			}
 		}
 		
-		return values.size();
+		return count;
 	}
 	
 	/**
@@ -256,17 +399,26 @@ public class Dataset {
 	 * @return (String): The value at the index given.
 	 */
 	public Value getValue(int x, int y){
-		return dataset[x][y];
+		if(y == 0){
+			return headers[x];
+		}
+		return store.getValue(x, row(y));
 	}
 	
 	/**
 	 * Simply sets the string at the given index.
+	 * Subsets share storage with their superset, so setting a value
+	 * below the header row also changes it in the superset.
 	 * @param x (int): X coord of value we want to replace.
 	 * @param y (int): Y coord of value we want to replace.
 	 * @param string (String): The string we wish to place at the given coord.
 	 */
 	public void setValue(int x, int y, Value value){
-		dataset[x][y] = value;
+		if(y == 0){
+			headers[x] = value;
+		}else{
+			store.setValue(x, row(y), value);
+		}
 	}
 	
 	/**
@@ -278,9 +430,19 @@ public class Dataset {
 	public int getValueCount(Value attribute, Value value){
 		int attribute_index = getHeaderIndex(attribute);
 		int count = 0;
-		for(int y = 1; y < height; y++){
-			if(dataset[attribute_index][y].equals(value)){
-				count++;
+		if(store.isNumeric(attribute_index)){
+			for(int y = 1; y < height; y++){
+				if(cellEquals(attribute_index, y, value)){
+					count++;
+				}
+			}
+		}else{
+			boolean[] matching = store.matchingCodes(attribute_index, value);
+			Column column = store.getColumn(attribute_index);
+			for(int y = 1; y < height; y++){
+				if(matching[column.get(row(y))]){
+					count++;
+				}
 			}
 		}
 		return count;
@@ -293,10 +455,10 @@ public class Dataset {
 	 */
 	public int getMaxValue(Value attribute){
 		int index = getHeaderIndex(attribute);
-		int max = dataset[index][1].num_value;
+		int max = getNumber(index, 1);
 		for(int y = 2; y < height; y++){
-			if(dataset[index][y].num_value > max){
-				max = dataset[index][y].num_value;
+			if(getNumber(index, y) > max){
+				max = getNumber(index, y);
 			}
 		}
 		
@@ -310,11 +472,10 @@ public class Dataset {
 	 */
 	public int getMinValue(Value attribute){
 		int index = getHeaderIndex(attribute);
-		int min = dataset[index][1].num_value;
+		int min = getNumber(index, 1);
 		for(int y = 2; y < height; y++){
-			//System.out.println("Min test " + min + " > " + dataset[index][y].num_value + "\n");
-			if(dataset[index][y].num_value < min){
-				min = dataset[index][y].num_value;
+			if(getNumber(index, y) < min){
+				min = getNumber(index, y);
 			}
 		}
 		
@@ -333,7 +494,7 @@ public class Dataset {
 			int index = getHeaderIndex(attribute);
 			double sum = 0;
 			for(int y = 1; y < height; y++){
-				sum += (double)dataset[index][y].num_value;
+				sum += (double)getNumber(index, y);
 			}
 			avg = (sum / (double)(height-1));
 		}else{
@@ -355,7 +516,7 @@ public class Dataset {
 			ArrayList<Integer> values = new ArrayList<Integer>();
 			int index = getHeaderIndex(attribute);
 			for(int y = 1; y < height; y++){
-				values.add(dataset[index][y].num_value);
+				values.add(getNumber(index, y));
 			}
 			Collections.sort(values);
 			
@@ -392,7 +553,7 @@ public class Dataset {
 		int index = getHeaderIndex(attribute);
 		
 		for(int y = 1; y < height; y++){
-			values.add(dataset[index][y].num_value);
+			values.add(getNumber(index, y));
 		}
 		
 		return values;
@@ -411,7 +572,7 @@ public class Dataset {
 		if(attribute.attribute_is_numeric){
 			int attribute_index = getHeaderIndex(attribute);
 			for(int y = 1; y < height; y++){
-				if(dataset[attribute_index][y].num_value >= number){
+				if(getNumber(attribute_index, y) >= number){
 					count++;
 				}
 			}
@@ -436,7 +597,7 @@ public class Dataset {
 		if(attribute.attribute_is_numeric){
 			int attribute_index = getHeaderIndex(attribute);
 			for(int y = 1; y < height; y++){
-				if(dataset[attribute_index][y].num_value < number){
+				if(getNumber(attribute_index, y) < number){
 					count++;
 				}
 			}
@@ -455,13 +616,26 @@ public class Dataset {
 	 */
 	public HashSet<Value> getValueSet(Value attribute){
 		HashSet<Value> values = new HashSet<Value>();
-		HashSet<String> test = new HashSet<String>();
 		int attribute_index = getHeaderIndex(attribute);
 		
+		if(store.isNumeric(attribute_index)){
+			for(int number : getValueNumericSet(attribute)){
+				Value value = new Value(number);
+				if(!attribute.toString().equals(value.toString())){
+					values.add(value);
+				}
+			}
+			return values;
+		}
+		
+		ValueDictionary dictionary = store.getDictionary(attribute_index);
+		boolean[] seen = new boolean[dictionary.size()];
 		for(int y = 1; y < height; y++){
-			if(!attribute.toString().equals(dataset[attribute_index][y].toString())){
-				if(test.add(dataset[attribute_index][y].toString())){
-					values.add(dataset[attribute_index][y]);
+			int code = store.getColumn(attribute_index).get(row(y));
+			if(!seen[code]){
+				seen[code] = true;
+				if(!attribute.toString().equals(dictionary.decode(code).toString())){
+					values.add(dictionary.decode(code));
 				}
 			}
 		}
@@ -497,7 +671,7 @@ public class Dataset {
 		ArrayList<Value> row = new ArrayList<Value>();
 		
 		for(int x = 0; x < width; x++){
-			row.add(dataset[x][index]);
+			row.add(getValue(x, index));
 		}
 		
 		return row;
@@ -528,7 +702,7 @@ public class Dataset {
 	public int getHeaderIndex(Value header){
 		int index = -1;
 		for(int x = 0; x < width; x++){
-			if(dataset[x][0].equals(header)){
+			if(headers[x].equals(header)){
 				index = x;
 			}
 		}
@@ -540,24 +714,288 @@ public class Dataset {
 	 * @return (String): A formatted string of the Dataset.
 	 */
 	public String toString(){
-		String s = "";
+		StringBuilder s = new StringBuilder();
 		
 		for(int y = 0; y < height; y++){
 			for(int x = 0; x < width; x++){
-				s += dataset[x][y].toString();
-				s += "\t\t";
+				s.append(getValue(x, y).toString());
+				s.append("\t\t");
 			}
-			s += "\n";
+			s.append("\n");
 		}
 		
-		return s;
+		return s.toString();
 	}
 	
 	/**
-	 * Gets the array of the Dataset.
-	 * @return (String[][]): The Dataset's data array.
+	 * Gets the Dataset as an array, headers in row 0.
+	 * The array is built from the column storage on each call, so changes
+	 * to it are not reflected in the Dataset. Use setValue instead.
+	 * @return (Value[][]): The Dataset's data array.
 	 */
 	public Value[][] toArray(){
-		return dataset;
+		Value[][] array = new Value[width][height];
+		
+		for(int x = 0; x < width; x++){
+			for(int y = 0; y < height; y++){
+				array[x][y] = getValue(x, y);
+			}
+		}
+		
+		return array;
+	}
+	
+	/**
+	 * Gets the numeric value at a given index of the Dataset without
+	 * creating a Value. Non numeric values read as 0.
+	 * @param x (int): X coord of value.
+	 * @param y (int): Y coord of value, 1 or greater.
+	 * @return (int): The number at the index given.
+	 */
+	int getNumber(int x, int y){
+		return store.getNumber(x, row(y));
+	}
+	
+	/**
+	 * Determines if the value at a given index equals the given value,
+	 * following Value.equals, without creating a Value.
+	 * @param x (int): X coord of value.
+	 * @param y (int): Y coord of value, 1 or greater.
+	 * @param value (Value): The value to compare against.
+	 * @return (boolean): True if the values are equal. False otherwise.
+	 */
+	boolean cellEquals(int x, int y, Value value){
+		if(store.isNumeric(x)){
+			return !value.empty && value.numeric && store.getColumn(x).get(row(y)) == value.num_value;
+		}
+		return store.getDictionary(x).decode(store.getColumn(x).get(row(y))).equals(value);
+	}
+	
+	/**
+	 * Gets the number of values greater than or equal to the given number
+	 * in the column at the given index.
+	 * @param x (int): The index of the attribute.
+	 * @param number (int): The number to compare against.
+	 * @return (int): The count.
+	 */
+	int getValueCountGTE(int x, int number){
+		int count = 0;
+		for(int y = 1; y < height; y++){
+			if(getNumber(x, y) >= number){
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Splits the Dataset into two subsets on a numeric attribute, values
+	 * greater than or equal to the given number first.
+	 * The subsets are ranges over a single row id array, which is
+	 * rearranged in place. The first partition of a Dataset that was not
+	 * itself produced by partitioning copies its row ids, so the
+	 * Dataset's own row order is left alone.
+	 * @param x (int): The index of the attribute to split on.
+	 * @param number (int): The number to split on.
+	 * @return (Dataset[]): The upper and lower subsets.
+	 */
+	Dataset[] partition(int x, int number){
+		int count = height-1;
+		int[] target = partitionRows();
+		int start = owns_rows ? offset : 0;
+		
+		int i = start;
+		int j = start + count - 1;
+		while(i <= j){
+			if(store.getNumber(x, target[i]) >= number){
+				i++;
+			}else{
+				int temp = target[i];
+				target[i] = target[j];
+				target[j] = temp;
+				j--;
+			}
+		}
+		
+		int upper = i - start;
+		return new Dataset[]{
+			new Dataset(this, target, start, upper),
+			new Dataset(this, target, start + upper, count - upper)
+		};
+	}
+	
+	/**
+	 * Splits the Dataset into one subset per value of a nominal attribute,
+	 * in order of the attribute's dictionary codes. Empty subsets are left out.
+	 * The subsets are ranges over a single row id array, as with partition(int, int).
+	 * @param x (int): The index of the nominal attribute to split on.
+	 * @return (ArrayList<Dataset>): The subsets.
+	 */
+	ArrayList<Dataset> partition(int x){
+		int count = height-1;
+		int[] target = partitionRows();
+		int start = owns_rows ? offset : 0;
+		Column column = store.getColumn(x);
+		
+		//Counting sort of the range by code
+		int[] starts = new int[store.getDictionary(x).size() + 1];
+		for(int i = start; i < start + count; i++){
+			starts[column.get(target[i]) + 1]++;
+		}
+		for(int code = 1; code < starts.length; code++){
+			starts[code] += starts[code-1];
+		}
+		int[] sorted = new int[count];
+		int[] next = Arrays.copyOf(starts, starts.length - 1);
+		for(int i = start; i < start + count; i++){
+			int row = target[i];
+			sorted[next[column.get(row)]++] = row;
+		}
+		System.arraycopy(sorted, 0, target, start, count);
+		
+		ArrayList<Dataset> subsets = new ArrayList<Dataset>();
+		for(int code = 0; code < starts.length - 1; code++){
+			int size = starts[code+1] - starts[code];
+			if(size > 0){
+				subsets.add(new Dataset(this, target, start + starts[code], size));
+			}
+		}
+		return subsets;
+	}
+	
+	/**
+	 * Gets the row id array to partition in place, copying this Dataset's
+	 * range first unless it was produced by partitioning.
+	 * @return (int[]): The row id array.
+	 */
+	private int[] partitionRows(){
+		if(owns_rows){
+			return rows;
+		}
+		return Arrays.copyOfRange(rows, offset, offset + height - 1);
+	}
+	
+	/**
+	 * Gets the column of the given attribute with each distinct value
+	 * coded as a class, indexed by storage row id.
+	 * @param x (int): The index of the attribute.
+	 * @return (Column): The class codes.
+	 */
+	Column getClassColumn(int x){
+		return store.getClassColumn(x);
+	}
+	
+	/**
+	 * Gets the number of distinct class codes of the given attribute
+	 * across the whole storage, not just this Dataset's rows.
+	 * @param x (int): The index of the attribute.
+	 * @return (int): The number of class codes.
+	 */
+	int getClassCount(int x){
+		return store.getClassDictionary(x).size();
+	}
+	
+	/**
+	 * Gets the value given the class code by getClassColumn.
+	 * @param x (int): The index of the attribute.
+	 * @param code (int): The class code.
+	 * @return (Value): The value.
+	 */
+	Value getClassValue(int x, int code){
+		return store.getClassDictionary(x).decode(code);
+	}
+	
+	/**
+	 * Gets the class code getClassColumn gives the given value.
+	 * @param x (int): The index of the attribute.
+	 * @param value (Value): The value.
+	 * @return (int): The class code, or -1 if no row in the storage has the value.
+	 */
+	int getClassCode(int x, Value value){
+		return store.getClassDictionary(x).lookup(value);
+	}
+	
+	/**
+	 * Gets the dictionary of the class codes given by getClassColumn.
+	 * @param x (int): The index of the attribute.
+	 * @return (ValueDictionary): The dictionary of class codes.
+	 */
+	ValueDictionary getClassDictionary(int x){
+		return store.getClassDictionary(x);
+	}
+	
+	/**
+	 * Gets the storage of the given attribute, indexed by storage row id.
+	 * @param x (int): The index of the attribute.
+	 * @return (Column): The numbers or dictionary codes of the attribute.
+	 */
+	Column getColumn(int x){
+		return store.getColumn(x);
+	}
+	
+	/**
+	 * Sets the class codes of a numeric attribute, see ColumnStore.setClassColumn.
+	 * @param x (int): The index of the attribute.
+	 * @param column (Column): The class code of every storage row.
+	 * @param dictionary (ValueDictionary): The dictionary of the class codes.
+	 */
+	void setClassColumn(int x, Column column, ValueDictionary dictionary){
+		store.setClassColumn(x, column, dictionary);
+	}
+	
+	/**
+	 * Gets the dictionary of the given nominal attribute.
+	 * @param x (int): The index of the attribute.
+	 * @return (ValueDictionary): The dictionary, or null if the attribute is numeric.
+	 */
+	ValueDictionary getDictionary(int x){
+		return store.getDictionary(x);
+	}
+	
+	/**
+	 * Gets the numeric value stored at the given storage row id.
+	 * @param x (int): The index of the attribute.
+	 * @param row_id (int): The storage row id.
+	 * @return (int): The number.
+	 */
+	int getNumberAt(int x, int row_id){
+		return store.getNumber(x, row_id);
+	}
+	
+	/**
+	 * Encodes a row of the storage as CompiledTree.predict takes it:
+	 * numbers for numeric columns and dictionary codes for nominal columns.
+	 * @param row_id (int): The storage row id.
+	 * @param into (int[]): Where to put the cells, indexed by column.
+	 */
+	void encodeRow(int row_id, int[] into){
+		for(int x = 0; x < width; x++){
+			into[x] = store.getColumn(x).get(row_id);
+		}
+	}
+	
+	/**
+	 * Gets the number of rows in the column storage this Dataset is a view of.
+	 * @return (int): The number of storage rows.
+	 */
+	int getStorageRows(){
+		return store.rows;
+	}
+	
+	/**
+	 * Gets the id in the column storage of the given row.
+	 * @param y (int): The row of the Dataset, 1 or greater.
+	 * @return (int): The storage row id.
+	 */
+	int row(int y){
+		return rows[offset + y - 1];
+	}
+	
+	private static int[] identityRows(int count){
+		int[] ids = new int[count];
+		for(int i = 0; i < count; i++){
+			ids[i] = i;
+		}
+		return ids;
 	}
 }
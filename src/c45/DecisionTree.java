@@ -1,11 +1,14 @@
 package c45;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Creates and prints a decision tree parsed from a user defined
@@ -13,13 +16,18 @@ import java.util.Scanner;
  * tree until no attributes are left to classify on or the
  * information gain at the current node is 0.
  * An optional test is also performed if the user specifies a
- * testing file.
+ * testing file as the first command line argument. The predictions
+ * are written to the file named by the second argument, or to
+ * C45_Predictions.txt.
+ * With forest trees set, a random forest is built instead of a single
+ * tree, and only its size and test results are printed.
  * 
  * Input: 	User defined training dataset.
  * 			User defined target attribute.
  * 			User defined testing dataset.
  * 
- * Output:	Simple decision tree visualization.
+ * Output:	Simple decision tree visualization, rendered once to both the
+ * 			console and C45_Rules.txt, or as JSON or CSV, see setRulesFormat.
  * 			Test output.
  * 
  * @author Matthew Tetford
@@ -28,59 +36,161 @@ import java.util.Scanner;
 public class DecisionTree {
 	private static Dataset training_dataset;
 	private static Value target_class;
-	private static Dataset testing_dataset;
+	private static String testing_filename;
+	private static String predictions_file = "C45_Predictions.txt";
 	private static boolean testing = false;
-	private static char percent = '%';
 	private static String output_file = "C45_Rules.txt";
+	private static TreeRenderer.Format rules_format = TreeRenderer.Format.TEXT;
 	private static int min_continuous_node_size;
 	private static int max_tree_depth;
 	private static double min_split_gain;
+	private static int build_threads = Runtime.getRuntime().availableProcessors();
+	private static int subtree_fork_rows = TreeBuilder.DEFAULT_FORK_ROWS;
+	private static ForkJoinPool build_pool;
+	private static int histogram_bins = 0;
+	private static BuildMetrics metrics;
+	private static int forest_trees = 0;
+	private static int forest_attributes = 0;
+	private static long forest_seed = 1;
+	private static boolean snapshot_training_data = false;
+	private static String snapshot_suffix = ".snapshot";
+	private static String model_file;
+	private static long memory_budget = 0;
+	private static String spill_directory;
 	
 	private static boolean VERBOSE_TREE_PRUNE = false;
 	
 	public static void main(String[] args){
 		
+		if(args.length > 0){
+			testing = true;
+			testing_filename = args[0];
+			if(args.length > 1){
+				predictions_file = args[1];
+			}
+		}
+		
 		getUserInput();
 		
-		long begin_time = System.currentTimeMillis();
+		if(forest_trees > 0){
+			runForest();
+			return;
+		}
 		
-		/*	Testing disabled in this build
-		 * 
-		 *	if(testing){
-		 *		training_dataset.makeDatasetConsistent(testing_dataset);
-		 *	}
-		 */
+		long begin_time = System.currentTimeMillis();
 		
 		C45Node root = new C45Node(training_dataset, null, target_class);
 		buildTree(root);
 		
-		postPruneTree(root);
-		
 		long end_time = System.currentTimeMillis();
 		long duration = (end_time - begin_time);
 		
-		println("\nPrinting the decision tree for " + target_class.toString() + ":");
+		CompiledTree tree = null;
+		if(testing || model_file != null){
+			tree = CompiledTree.compile(root, target_class);
+		}
+		if(model_file != null){
+			tree.write(model_file);
+			println("Wrote the model to " + model_file + ".");
+		}
 		
-		//Print the results to the console
-		PrintStream output = System.out;
-		printTree(root, output);
-		output.format("%n");
+		ScoreReport report = null;
 		if(testing){
-			testTree(root, output, testing_dataset);
+			report = testTree(tree);
 		}
 		
-		//Print the results to hardcoded file
-		output = setupOutputStream(output_file);
-		printTree(root, output);
-		output.format("%n");
-		if(testing){
-			testTree(root, output, testing_dataset);
+		println("\nPrinting the decision tree for " + target_class.toString() + ":");
+		BuildMetrics.Span span = (metrics != null) ? metrics.begin(BuildMetrics.Phase.OUTPUT) : null;
+		
+		//Render the rules once to the console and the rules file
+		PrintStream file = setupOutputStream(output_file);
+		PrintStream[] outputs = (rules_format == TreeRenderer.Format.TEXT)
+				? new PrintStream[]{System.out, file} : new PrintStream[]{System.out};
+		new TreeRenderer(target_class, TreeRenderer.Format.TEXT, (Appendable[])outputs).render(root);
+		if(rules_format != TreeRenderer.Format.TEXT){
+			new TreeRenderer(target_class, rules_format, file).render(root);
+		}
+		for(PrintStream output : outputs){
+			output.format("%n");
+			if(testing){
+				report.print(output);
+			}
+		}
+		
+		file.flush();
+		file.close();
+		if(span != null){
+			span.end();
 		}
 		
 		println("\nBuilding and pruning tree took " + duration + " milliseconds.");
+		if(metrics != null){
+			metrics.print(System.out);
+		}
+	}
+	
+	/**
+	 * Builds a random forest from the training data, scores the testing
+	 * file with it if there is one, and prints the results.
+	 */
+	private static void runForest(){
+		long begin_time = System.currentTimeMillis();
+		RandomForest forest = buildForest(training_dataset);
+		long duration = System.currentTimeMillis() - begin_time;
+		
+		ScoreReport report = null;
+		if(testing){
+			report = new BatchScorer(forest, getBuildPool()).score(testing_filename, predictions_file);
+			println("Wrote " + report.getRows() + " predictions to " + predictions_file + ".");
+		}
 		
-		output.flush();
-		output.close();
+		BuildMetrics.Span span = (metrics != null) ? metrics.begin(BuildMetrics.Phase.OUTPUT) : null;
+		PrintStream file = setupOutputStream(output_file);
+		for(PrintStream output : new PrintStream[]{System.out, file}){
+			output.format("%nRandom forest for %s: %d trees, %d nodes.%n",
+					target_class.toString(), forest.getTreeCount(), forest.getNodeCount());
+			if(testing){
+				report.print(output);
+			}
+		}
+		file.flush();
+		file.close();
+		if(span != null){
+			span.end();
+		}
+		
+		println("\nBuilding the forest took " + duration + " milliseconds.");
+		if(metrics != null){
+			metrics.print(System.out);
+		}
+	}
+	
+	/**
+	 * Loads the training data from a csv file or a snapshot file.
+	 * With snapshots turned on, a csv file is reloaded from the snapshot
+	 * next to it if that snapshot is newer, and a new snapshot is written
+	 * after the csv file is parsed.
+	 * @param filename (String): The csv or snapshot file to load.
+	 * @return (Dataset): The training data.
+	 */
+	private static Dataset loadTrainingData(String filename){
+		if(Dataset.isSnapshot(filename)){
+			return Dataset.readSnapshot(filename);
+		}
+		if(spill_directory != null){
+			return Dataset.loadSegments(filename, spill_directory, getMemoryBudget());
+		}
+		
+		String snapshot = filename + snapshot_suffix;
+		if(snapshot_training_data && new File(snapshot).lastModified() > new File(filename).lastModified()){
+			return Dataset.readSnapshot(snapshot);
+		}
+		
+		Dataset dataset = new Dataset(filename, getBuildPool());
+		if(snapshot_training_data){
+			dataset.writeSnapshot(snapshot);
+		}
+		return dataset;
 	}
 	
 	/**
@@ -94,22 +204,19 @@ public class DecisionTree {
 		//Getting the filename of the training data
 		print("Enter the name of the training data file you wish to use: ");
 		String training_filename = console.nextLine();
-		training_dataset = new Dataset(training_filename);
-		
-		//Getting the filename of the testing data
-		
-		/*	Testing disabled in this build.
-		 * 
-		 *	print("If desired, enter the name of the testing file you wish to use: ");
-		 *	String testing_filename = console.nextLine();
-		 *	if(testing_filename.length() < 1){
-		 *		println("No testing file specified, continuing without test.");
-		 *	}else{
-		 *		testing = false;
-		 *		println("Sorry! Tree testing is disabled in this implementation...");
-		 *		//testing_dataset = new Dataset(testing_filename);
-		 *	}
-		 */
+		long begin = System.nanoTime();
+		long begin_bytes = (metrics != null) ? BuildMetrics.allAllocatedBytes() : 0;
+		training_dataset = loadTrainingData(training_filename);
+		if(metrics != null){
+			//Type detection happens while loading, so it is taken out of the load time
+			long type_nanos = training_dataset.getLoadStatistics().getTypeDetectionNanos();
+			metrics.add(BuildMetrics.Phase.LOAD, System.nanoTime() - begin - type_nanos,
+					BuildMetrics.allAllocatedBytes() - begin_bytes);
+			metrics.add(BuildMetrics.Phase.TYPE_DETECTION, type_nanos, 0);
+		}
+		println("Read " + training_dataset.getLoadStatistics() + ".");
+		
+		//The testing file, if any, is given on the command line
 		
 		//Getting the desired minimum number of continuous records in a node
 		boolean min_size_ok = false;
@@ -161,13 +268,14 @@ public class DecisionTree {
 	
 	/**
 	 * Sets up our output for a given filename.
+	 * The stream is buffered, so it must be flushed or closed once written.
 	 * @param filename (String): The filename we wish to use.
 	 * @return (PrintStream): The print stream for the given file.
 	 */
 	public static PrintStream setupOutputStream(String filename){
 		PrintStream output = null;
 		try {
-			output = new PrintStream(new FileOutputStream(filename, false));
+			output = new PrintStream(new BufferedOutputStream(new FileOutputStream(filename, false), 1 << 16));
 		} catch (FileNotFoundException e) {
 			System.err.println("Write file not found.");
 			//e.printStackTrace();
@@ -177,68 +285,248 @@ public class DecisionTree {
 	}
 	
 	/**
-	 * Builds the decision tree.
+	 * Sets the number of threads used to build the tree.
+	 * Attributes, and large numeric sweeps, are scored concurrently at each
+	 * node, and large subtrees are built concurrently. Ties go to the lowest
+	 * column index so the tree is the same for any number of threads.
+	 * Defaults to the number of available processors.
+	 * @param threads (int): The number of threads, 1 to build serially.
+	 */
+	public static void setBuildThreads(int threads){
+		if(threads < 1){
+			System.err.println("Building needs at least one thread");
+			System.exit(1);
+		}
+		build_threads = threads;
+		build_pool = null;
+	}
+	
+	/**
+	 * Sets the fewest rows a child node needs to have its subtree built as
+	 * a separate task. Smaller subtrees are built by the thread that split
+	 * their parent.
+	 * @param rows (int): The number of rows.
+	 */
+	public static void setSubtreeForkRows(int rows){
+		subtree_fork_rows = rows;
+	}
+	
+	/**
+	 * Sets the options getUserInput otherwise asks for, so trees can be
+	 * built and pruned without the console.
+	 * @param _target_class (Value): The attribute to classify by.
+	 * @param min_node_size (int): The fewest rows a node needs to keep children, 0 to ignore.
+	 * @param max_depth (int): The deepest a node may be and keep children, 0 to ignore.
+	 * @param min_gain (double): The minimum gain to split on.
+	 */
+	public static void setTreeOptions(Value _target_class, int min_node_size, int max_depth, double min_gain){
+		if(min_node_size < 0 || max_depth < 0 || min_gain < 0){
+			System.err.println("Tree options must not be negative");
+			System.exit(1);
+		}
+		target_class = _target_class;
+		min_continuous_node_size = min_node_size;
+		max_tree_depth = max_depth;
+		min_split_gain = min_gain;
+	}
+	
+	/**
+	 * Sets the number of quantile buckets numeric attributes are cut into
+	 * for approximate split finding. Only the start of each bucket is tried
+	 * as a split number, and large nodes are scored from class counts per
+	 * bucket instead of sorting their rows, which builds faster on large
+	 * data sets for a small loss of accuracy. Defaults to 0, which tries
+	 * every distinct value.
+	 * @param bins (int): The number of buckets, such as 256, or 0 to search exactly.
+	 */
+	public static void setHistogramBins(int bins){
+		if(bins < 0 || bins > QuantileBins.MAX_BINS){
+			System.err.println("Histogram bins must be between 0 and " + QuantileBins.MAX_BINS);
+			System.exit(1);
+		}
+		histogram_bins = bins;
+	}
+	
+	/**
+	 * Sets where training runs record their metrics: the time and bytes of
+	 * each phase, the nodes built and the candidate splits tried for each
+	 * attribute. main prints the metrics after the tree. Off by default.
+	 * @param _metrics (BuildMetrics): The metrics to record into, or null to not record.
+	 */
+	public static void setMetrics(BuildMetrics _metrics){
+		metrics = _metrics;
+	}
+	
+	/**
+	 * Gets the metrics training runs record into.
+	 * @return (BuildMetrics): The metrics, or null if they aren't recorded.
+	 */
+	public static BuildMetrics getMetrics(){
+		return metrics;
+	}
+	
+	/**
+	 * Sets the number of trees in the random forest main builds instead of
+	 * a single tree. Each tree is built from a bootstrap sample of the
+	 * training rows and the trees are built concurrently on the build
+	 * threads. Defaults to 0, which builds a single tree.
+	 * @param trees (int): The number of trees, 0 for a single tree.
+	 */
+	public static void setForestTrees(int trees){
+		if(trees < 0){
+			System.err.println("A forest can't have a negative number of trees");
+			System.exit(1);
+		}
+		forest_trees = trees;
+	}
+	
+	/**
+	 * Sets the number of attributes each node of a forest tree picks at
+	 * random from its remaining attributes to search for a split.
+	 * Defaults to 0, which uses the square root of the number of attributes.
+	 * @param attributes (int): The number of attributes, 0 for the square root.
+	 */
+	public static void setForestAttributes(int attributes){
+		if(attributes < 0){
+			System.err.println("Forest nodes can't search a negative number of attributes");
+			System.exit(1);
+		}
+		forest_attributes = attributes;
+	}
+	
+	/**
+	 * Sets the seed of the random samples of forest trees. The same seed
+	 * builds the same forest for any number of build threads.
+	 * @param seed (long): The seed.
+	 */
+	public static void setForestSeed(long seed){
+		forest_seed = seed;
+	}
+	
+	/**
+	 * Turns on or off the snapshot cache for training data. When on, each
+	 * csv file is saved as a binary snapshot beside it, and later runs load
+	 * the snapshot instead of parsing the csv file again.
+	 * @param snapshots (boolean): True to read and write snapshots.
+	 */
+	public static void setSnapshotTrainingData(boolean snapshots){
+		snapshot_training_data = snapshots;
+	}
+	
+	/**
+	 * Turns on out of core building for training data larger than the heap.
+	 * A csv training file is streamed into column segment files in the
+	 * given directory instead of the heap, and the tree is built by
+	 * streaming node rows through spill files in the same directory, see
+	 * ExternalBuilder. Random forests need the data in memory. Off by default.
+	 * @param budget (long): The bytes of heap loading and building may use, 0 for a quarter of the maximum heap.
+	 * @param directory (String): The directory for segment and spill files, or null to turn out of core building off.
+	 */
+	public static void setExternalMemory(long budget, String directory){
+		memory_budget = budget;
+		spill_directory = directory;
+	}
+	
+	private static long getMemoryBudget(){
+		return (memory_budget > 0) ? memory_budget : Runtime.getRuntime().maxMemory() / 4;
+	}
+	
+	/**
+	 * Sets the file main saves the compiled tree to, which
+	 * CompiledTree.read can load to score without rebuilding.
+	 * Random forests aren't saved. Off by default.
+	 * @param filename (String): The model file, or null to not save the tree.
+	 */
+	public static void setModelFile(String filename){
+		model_file = filename;
+	}
+	
+	/**
+	 * Sets the format main writes the rules file in. The console always
+	 * gets the rules as text. Rules in JSON or CSV are written to
+	 * C45_Rules.json or C45_Rules.csv, without the test results, so the
+	 * file can be read back as it is. Text by default.
+	 * @param format (TreeRenderer.Format): The format of the rules file.
+	 */
+	public static void setRulesFormat(TreeRenderer.Format format){
+		rules_format = format;
+		output_file = "C45_Rules" + format.getExtension();
+	}
+	
+	/**
+	 * Gets the pool used to build the tree, creating it on first use.
+	 * @return (ForkJoinPool): The pool, or null when building serially.
+	 */
+	private static synchronized ForkJoinPool getBuildPool(){
+		if(build_pool == null && build_threads > 1){
+			build_pool = new ForkJoinPool(build_threads);
+		}
+		return build_pool;
+	}
+	
+	/**
+	 * Builds the decision tree. Nodes too deep or too small to keep children
+	 * are left as leaves as the tree is built, so there is no need to call
+	 * postPruneTree afterwards.
 	 * @param current (ID3Node): The node we start to build the tree from (typically the root).
 	 */
 	public static void buildTree(C45Node current){
-		HashSet<Value> remaining_attributes = current.getRemainingAttributes();
-		double max_gain = 0;
-		Value split_attribute = new Value();
-		int split_value = 0;
-		
-		for(Value attribute : remaining_attributes){
-			if(attribute.attribute_is_numeric){
-				HashSet<Integer> values = current.getDataset().getValueNumericSet(attribute);
-				
-				for(int value : values){
-					double gain = continuousGain(current.getDataset(), target_class, attribute, value);
-					if(gain > max_gain){
-						max_gain = gain;
-						split_attribute = attribute;
-						split_value = value;
-					}
-				}
-			}else{
-				double gain = gain(current.getDataset(), target_class, attribute);
-				if(gain > max_gain){
-					max_gain = gain;
-					split_attribute = attribute;
-				}
-			}
-		}
-		
-		if(max_gain > 0 && max_gain >= min_split_gain){
-			//Build and assign children
-			if(split_attribute.attribute_is_numeric){
-				Dataset upper = new Dataset(current.getDataset(), split_attribute, split_value, true);
-				C45Node upper_child = new C45Node(upper, current, split_attribute, split_value, true);
-				current.addChild(upper_child);
-				buildTree(upper_child);
-				Dataset lower = new Dataset(current.getDataset(), split_attribute, split_value, false);
-				C45Node lower_child = new C45Node(lower, current, split_attribute, split_value, false);
-				current.addChild(lower_child);
-				buildTree(lower_child);
-			}else{
-				HashSet<Value> child_values = current.getDataset().getValueSet(split_attribute);
-				for(Value value : child_values){
-					Dataset subset = new Dataset(current.getDataset(), split_attribute, value);
-					C45Node child = new C45Node(subset, current, split_attribute, value);
-					current.addChild(child);
-					buildTree(child);
-				}
-			}
+		getTrainer().build(current);
+	}
+	
+	/**
+	 * Updates a tree built by buildTree with rows appended to its training
+	 * data, rebuilding only the subtrees whose splits the new rows change.
+	 * @param root (C45Node): The root of the tree.
+	 * @param dataset (Dataset): The rows the tree was built from followed by the new rows.
+	 * @param old_rows (int): The number of rows the tree was built from.
+	 * @return (int): The number of nodes whose split was searched again.
+	 */
+	public static int updateTree(C45Node root, Dataset dataset, int old_rows){
+		return getTrainer().updateTree(root, dataset, old_rows);
+	}
+
+	/**
+	 * Builds a random forest of setForestTrees trees, at least one, with the
+	 * stopping rules recorded during user input.
+	 * @param dataset (Dataset): The training data.
+	 * @return (RandomForest): The forest.
+	 */
+	public static RandomForest buildForest(Dataset dataset){
+		return getTrainer().buildForest(dataset);
+	}
+	
+	/**
+	 * Gets a trainer set up with the options recorded during user input,
+	 * or given to the setters.
+	 * @return (Trainer): The trainer.
+	 */
+	public static Trainer getTrainer(){
+		Trainer trainer = new Trainer(target_class);
+		trainer.setMinNodeSize(min_continuous_node_size);
+		trainer.setMaxDepth(max_tree_depth);
+		trainer.setMinSplitGain(min_split_gain);
+		trainer.setHistogramBins(histogram_bins);
+		trainer.setForest(forest_trees, forest_attributes, forest_seed);
+		trainer.setPool(getBuildPool());
+		trainer.setSubtreeForkRows(subtree_fork_rows);
+		trainer.setMetrics(metrics);
+		if(spill_directory != null){
+			trainer.setExternalMemory(getMemoryBudget(), spill_directory);
 		}
+		return trainer;
 	}
 	
 	/**
 	 * Prunes the resulting tree after generation according using values recorded
-	 * during user input.
+	 * during user input. Trees built by buildTree already follow these rules.
+	 * Pruning from the root is timed as the pruning phase of the metrics.
 	 * @param current (C45Node)
 	 */
 	public static void postPruneTree(C45Node current){
 		
 		if(!current.isRoot()){
-			int size = (current.getDataset().height-1);
+			int size = current.getSummary().getRows();
 			if(size < min_continuous_node_size){
 				if(VERBOSE_TREE_PRUNE){
 					println("Children deleted. Target value count was " +
@@ -261,145 +549,48 @@ public class DecisionTree {
 				}
 			}
 		}else{
+			BuildMetrics.Span span = (metrics != null) ? metrics.begin(BuildMetrics.Phase.PRUNING) : null;
 			ArrayList<C45Node> children = current.getChildren();
 			for(C45Node child : children){
 				postPruneTree(child);
 			}
+			if(span != null){
+				span.end();
+			}
 		}
 	}
 	
 	/**
-	 * Prints a decision tree to the given print stream.
+	 * Prints a decision tree to the given print stream, for the target
+	 * attribute chosen during user input.
 	 * @param current (ID3Node): The node we wish to start at (typically the root).
 	 * @param output (PrintStream): Where we wish to put the output.
 	 */
 	public static void printTree(C45Node current, PrintStream output){
-		String indent = "";
-		for(int i = 1; i < current.getDepth(); i++){
-			indent += " ";
-		}
-		
-		if(current.hasChild()){
-			ArrayList<C45Node> children = current.getChildren();
-			if(!current.isRoot()){
-				
-				Value split = current.getSplitAttribute();
-				Value value = current.getSplitValue();
-				
-				if(current.isContinuousSplit()){
-					String operator = "";
-					if(current.isGTE()){
-						operator = ">=";
-					}else{
-						operator = "<";
-					}
-					
-					int number = current.getSplitNumber();
-					output.format(indent + "If %s is %s %d,%n", split.toString(), operator, number);
-					
-				}else{
-					output.format(indent + "If %s is %s,%n", split.toString(), value.toString());
-				}
-			}
-			for(C45Node child : children){
-				printTree(child, output);
-			}
-		}else{
-			Value split = current.getSplitAttribute();
-			Value value = current.getSplitValue();
-			
-			
-			if(current.isContinuousSplit()){
-				String operator = "";
-				if(current.isGTE()){
-					operator = ">=";
-				}else{
-					operator = "<";
-				}
-				
-				int number = current.getSplitNumber();
-				output.format(indent + "If %s is %s %d,%n", split.toString(), operator, number);
-			}else{
-				output.format(indent + "If %s is %s,%n", split.toString(), value.toString());
-			}
-			
-			if(target_class.attribute_is_numeric){
-				if(current.getDataset().getValueSet(target_class).size() > 1){
-					String range = current.getDataset().getRange(target_class);
-					double average = current.getDataset().getAverage(target_class);
-					int median = current.getDataset().getMedian(target_class);
-					output.format(" " + indent + "Then %s is %s, with average %.2f, "
-							+ "median %d, and %d values.%n",
-							target_class.toString(), range, average, median, (current.getDataset().height-1));
-				}else{
-					output.format(" " + indent + "Then %s is %s.%n",
-							target_class.toString(), current.getMaxValue(target_class).toString());
-				}
-				
-				
-				
-			}else{
-				Value max_value = current.getMaxValue(target_class);
-				double accuracy = current.getAccuracy(target_class, max_value) * 100;
-				output.format(" " + indent + "Then %s is %s, with usefulness measure %.2f%c.%n",
-						target_class.toString(), max_value.toString(), accuracy, percent);
-			}
-		}
+		printTree(current, target_class, output);
 	}
 	
 	/**
-	 * Compares the testing dataset given to the constructed tree and prints how
-	 * accurate the tree's predictions are.
-	 * @param root (ID3Node): The root of our constructed tree.
-	 * @param output (PrintStream): Where to put the results. (Typically either System.out or a file)
-	 * @param testing_dataset (Dataset): The dataset we attempt to predict.
+	 * Prints a decision tree to the given print stream.
+	 * To print to several streams at once, or as JSON or CSV, use a TreeRenderer.
+	 * @param current (ID3Node): The node we wish to start at (typically the root).
+	 * @param target_class (Value): The attribute the tree classifies by.
+	 * @param output (PrintStream): Where we wish to put the output.
 	 */
-	private static void testTree(C45Node root, PrintStream output, Dataset testing_dataset){
-		double total = testing_dataset.height-1;
-		double correct = 0;
-		
-		for(int i = 1; i < testing_dataset.height; i++){
-			ArrayList<Value> record = testing_dataset.getRowArrayList(i);
-			if(testTree(record, root)){
-				correct++;
-			}
-		}
-		
-		double accuracy = (correct/total) * 100;
-		output.format("The decision tree predicted the correct value"
-				+ " with %.2f%c usefulness measure.%n", accuracy, percent);
+	public static void printTree(C45Node current, Value target_class, PrintStream output){
+		new TreeRenderer(target_class, TreeRenderer.Format.TEXT, output).render(current);
 	}
 	
 	/**
-	 * Helper method for the main test tree method. Tests one record in
-	 * the testing dataset and returns true or false depending on if
-	 * the trees prediction was correct.
-	 * @param record (ArrayList<String>): The record to be tested.
-	 * @param root (ID3Node): The root of the tree we wish to test.
-	 * @return (boolean): Is false if our prediction was wrong, true otherwise.
+	 * Scores the testing file with the constructed tree and writes the predictions.
+	 * The file is scored in blocks on the build pool.
+	 * @param tree (CompiledTree): Our constructed tree, compiled.
+	 * @return (ScoreReport): How accurate the tree's predictions were.
 	 */
-	private static boolean testTree(ArrayList<Value> record, C45Node node){
-		boolean correct = false;
-		
-		if(node.hasChild()){
-			ArrayList<C45Node> children = node.getChildren();
-			for(C45Node child : children){
-				for(Value value : record){
-					if(child.getSplitValue().equals(value)){
-						record.remove(value);
-						return testTree(record, child);
-					}
-				}
-			}
-		}else{
-			for(Value value : record){
-				if(value.equals(node.getMaxValue(target_class))){
-					correct = true;
-				}
-			}
-		}
-		
-		return correct;
+	private static ScoreReport testTree(CompiledTree tree){
+		ScoreReport report = new BatchScorer(tree, getBuildPool()).score(testing_filename, predictions_file);
+		println("Wrote " + report.getRows() + " predictions to " + predictions_file + ".");
+		return report;
 	}
 	
 	/**
@@ -409,14 +600,32 @@ public class DecisionTree {
 	 * @return: (double) The calculated entropy.
 	 */
 	public static double entropy(Dataset dataset, Value target_class){
+		int target = dataset.getHeaderIndex(target_class);
+		Column classes = dataset.getClassColumn(target);
+		
+		int[] class_counts = new int[dataset.getClassCount(target)];
+		for(int y = 1; y < dataset.height; y++){
+			class_counts[classes.get(dataset.row(y))]++;
+		}
+		
+		return entropy(class_counts, dataset.height - 1);
+	}
+	
+	/**
+	 * Returns the entropy of a class distribution.
+	 * @param class_counts (int[]): The number of rows in each class.
+	 * @param total (int): The total number of rows.
+	 * @return: (double) The calculated entropy.
+	 */
+	public static double entropy(int[] class_counts, int total){
 		double entropy = 0d;
-
-		double total_rows = (double)(dataset.height - 1);
-		HashSet<Value> values = dataset.getValueSet(target_class);
-		for(Value value : values){
-			double value_count = (double)dataset.getValueCount(target_class, value);
-			double ratio = (value_count / total_rows);
-			entropy -= ratio * Math.log(ratio)/Math.log(2);
+		
+		double total_rows = (double)total;
+		for(int count : class_counts){
+			if(count > 0){
+				double ratio = ((double)count / total_rows);
+				entropy -= ratio * Math.log(ratio)/Math.log(2);
+			}
 		}
 		
 		return entropy;
@@ -447,32 +656,25 @@ public class DecisionTree {
 	 * @return (double)
 	 */
 	public static double continuousGain(Dataset dataset, Value target_class, Value split_attribute, int number){
-		double gain = 0d;
-			
-		Dataset lower_dataset = new Dataset(dataset, split_attribute, number, false);
-		Dataset upper_dataset = new Dataset(dataset, split_attribute, number, true);
-		
-		double probability_lower = (double)(lower_dataset.height-1) / (double)(dataset.height-1);
-		double probability_upper = (double)(upper_dataset.height-1) / (double)(dataset.height-1);
-				
-		double temp_gain = binaryEntropy(probability_upper, probability_lower);
-				
-		double lower_split_entropy = entropy(lower_dataset, target_class);
-		double upper_split_entropy = entropy(upper_dataset, target_class);
-		
-		if((lower_split_entropy + upper_split_entropy) <= 0){
-			gain = 0d;
-			return gain;
-		}
-				
-		temp_gain -= (probability_lower * lower_split_entropy);
-		temp_gain -= (probability_upper * upper_split_entropy);
-			
-		if(temp_gain > gain){
-			gain = temp_gain;
+		int x = dataset.getHeaderIndex(split_attribute);
+		int target = dataset.getHeaderIndex(target_class);
+		Column classes = dataset.getClassColumn(target);
+		
+		//Count classes either side of the split number in one pass
+		int[] lower_counts = new int[dataset.getClassCount(target)];
+		int[] upper_counts = new int[lower_counts.length];
+		int lower_total = 0;
+		for(int y = 1; y < dataset.height; y++){
+			int row = dataset.row(y);
+			if(dataset.getNumberAt(x, row) >= number){
+				upper_counts[classes.get(row)]++;
+			}else{
+				lower_counts[classes.get(row)]++;
+				lower_total++;
+			}
 		}
 		
-		return gain;
+		return SplitFinder.continuousGain(lower_counts, lower_total, upper_counts, (dataset.height-1) - lower_total);
 	}
 	
 	/**
@@ -483,24 +685,11 @@ public class DecisionTree {
 	 * @return: (double) The calculated information gain.
 	 */
 	public static double gain(Dataset dataset, Value target_class, Value split_attribute){
-		//println("\n\nCalculating Gain for Target " + target_class.toString() + " on split " + split_attribute.toString());
-		double gain = 0;
-		
-		//Get datasets for each category of split_attribute
-		HashSet<Value> split_values = dataset.getValueSet(split_attribute);
-			
 		//Calculate gain = entropy(dataset, class_attribute) - sum of entropy(subdatasets, categories)
-		gain = entropy(dataset, target_class);
-		//println("Base Gain is: " + gain);
-		for(Value value : split_values){
-			double ratio = (double)dataset.getValueCount(split_attribute, value) / (double)(dataset.height-1);
-			double split_entropy = entropy(new Dataset(dataset, split_attribute, value), target_class);
-			double temp = ratio * split_entropy;
-			gain -= temp;
-		}
-		
-		//println("Total Gain on split is " + gain + "\n\n");
-		return gain;
+		//from one count of rows by split value and class
+		ContingencyTable table = ContingencyTable.count(dataset,
+				dataset.getHeaderIndex(split_attribute), dataset.getHeaderIndex(target_class));
+		return table.gain();
 	}
 	
 	/**
@@ -0,0 +1,550 @@
+package c45;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Builds a decision tree from a Dataset loaded by Dataset.loadSegments,
+ * whose columns are in segment files and whose rows aren't listed.
+ * The rows of a node are a stream of row ids: every row for the root,
+ * and a spill file for other nodes. A node is searched from one pass over
+ * its rows that counts the classes of every bucket of the numeric
+ * attributes and of every value of the nominal attributes, and is
+ * partitioned by a second pass that writes each row id to its child's
+ * spill file. Numeric attributes are cut into quantile buckets from an
+ * evenly spaced sample of rows, and bucket starts are the split numbers
+ * tried, as in histogram split finding. Nodes are built depth first and
+ * a spill file is deleted once its node is partitioned.
+ * A node whose rows fit in the memory budget, at IN_MEMORY_ROW_BYTES per
+ * row, gets its row ids in an array instead, gathered while its parent is
+ * partitioned if its siblings leave room and read back from its spill file
+ * otherwise, and its subtree is built by a TreeBuilder, searching numeric
+ * attributes exactly. Apart from that subtree the heap holds one node's
+ * counts and a buffer per open file.
+ * The stopping rules are those of TreeBuilder.
+ * Used internally by Trainer.
+ * @author Matthew Tetford
+ */
+final class ExternalBuilder {
+	/** Heap a row of an in memory subtree takes: its id, a sort pair and a partition copy. */
+	static final int IN_MEMORY_ROW_BYTES = 16;
+	/** Buckets per numeric attribute when no histogram bins are set. */
+	static final int DEFAULT_BINS = 256;
+	/** The most rows sampled to bucket a numeric attribute. */
+	static final int MAX_SAMPLE_ROWS = 1 << 20;
+	private static final int READ_INTS = 1 << 16;
+	private static final int MAX_SPILL_BUFFER_INTS = 1 << 14;
+	private static final int MIN_SPILL_BUFFER_INTS = 1 << 8;
+
+	private final Value target_class;
+	private final double min_split_gain;
+	private final int max_depth;
+	private final int min_node_rows;
+	private final int histogram_bins;
+	private final long memory_budget;
+	private final File directory;
+	private final BuildMetrics metrics;
+	private final TreeBuilder in_memory;
+	private Dataset dataset;
+	private int target;
+	private Column classes;
+	private int class_count;
+	private QuantileBins bins;
+
+	/**
+	 * Creates a builder.
+	 * @param _target_class (Value): The attribute we want to classify by.
+	 * @param _min_split_gain (double): The minimum gain a split must have.
+	 * @param _max_depth (int): The deepest a node may be and still be split, 0 for no limit.
+	 * @param _min_node_rows (int): The fewest rows a node needs to be split.
+	 * @param _histogram_bins (int): The most quantile buckets per numeric attribute, 0 for DEFAULT_BINS.
+	 * @param _memory_budget (long): The bytes of heap the rows of an in memory subtree may take.
+	 * @param _directory (File): The directory to write spill files to.
+	 * @param pool (ForkJoinPool): The pool to build in memory subtrees in, or null to build them serially.
+	 * @param fork_rows (int): The fewest rows a child needs to be built as its own task.
+	 * @param _metrics (BuildMetrics): Where to record the build, or null to not record it.
+	 */
+	ExternalBuilder(Value _target_class, double _min_split_gain, int _max_depth, int _min_node_rows, int _histogram_bins,
+			long _memory_budget, File _directory, ForkJoinPool pool, int fork_rows, BuildMetrics _metrics){
+		target_class = _target_class;
+		min_split_gain = _min_split_gain;
+		max_depth = _max_depth;
+		min_node_rows = _min_node_rows;
+		histogram_bins = (_histogram_bins > 0) ? _histogram_bins : DEFAULT_BINS;
+		memory_budget = _memory_budget;
+		directory = _directory;
+		metrics = _metrics;
+		in_memory = new TreeBuilder(_target_class, _min_split_gain, _max_depth, _min_node_rows, pool, fork_rows, 0, _metrics);
+	}
+
+	/**
+	 * Builds the tree below the root of an external Dataset.
+	 * @param root (C45Node): The root node, over a Dataset loaded by Dataset.loadSegments.
+	 */
+	void build(C45Node root){
+		dataset = root.getDataset();
+		target = dataset.getHeaderIndex(target_class);
+		if(!directory.isDirectory() && !directory.mkdirs()){
+			System.err.println("Could not create spill directory " + directory);
+			System.exit(1);
+		}
+
+		try {
+			BuildMetrics.Span span = (metrics != null) ? metrics.begin(BuildMetrics.Phase.SPLIT_SEARCH) : null;
+			prepareClasses();
+			bins = sampleBins();
+			if(span != null){
+				span.end(dataset.height-1);
+			}
+			buildNode(root, null, dataset.height-1);
+		} catch (IOException e) {
+			System.err.println("IO Error");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Codes a numeric target into a segment file of its own, so its class
+	 * codes aren't held in the heap. Nominal targets are already coded.
+	 */
+	private void prepareClasses() throws IOException{
+		if(target_class.attribute_is_numeric){
+			Column column = dataset.getColumn(target);
+			ValueDictionary dictionary = new ValueDictionary();
+			File file = newSpillFile();
+			file.deleteOnExit();
+			SpillWriter writer = new SpillWriter(file, MAX_SPILL_BUFFER_INTS);
+			for(int row = 0; row < dataset.height-1; row++){
+				writer.add(dictionary.encodeNumber(column.get(row)));
+			}
+			writer.close();
+			dataset.setClassColumn(target, SegmentStore.map(file), dictionary);
+		}
+		classes = dataset.getClassColumn(target);
+		class_count = dataset.getClassCount(target);
+	}
+
+	/**
+	 * Buckets every numeric attribute from an evenly spaced sample of rows.
+	 * Every bucket start is a value of the column, so splits fall on values.
+	 * @return (QuantileBins): The buckets, without per row buckets.
+	 */
+	private QuantileBins sampleBins(){
+		int rows = dataset.height-1;
+		int numeric = 0;
+		for(int x = 0; x < dataset.width; x++){
+			if(x != target && dataset.getAttribute(x).attribute_is_numeric){
+				numeric++;
+			}
+		}
+		long fit = memory_budget / (4L * Math.max(numeric, 1));
+		int sample = (int)Math.max(Math.min(rows, histogram_bins), Math.min(Math.min(rows, MAX_SAMPLE_ROWS), fit));
+
+		int[][] bounds = new int[dataset.width][];
+		int[] values = new int[sample];
+		for(int x = 0; x < dataset.width; x++){
+			if(x == target || !dataset.getAttribute(x).attribute_is_numeric || rows == 0){
+				continue;
+			}
+			Column column = dataset.getColumn(x);
+			for(int i = 0; i < sample; i++){
+				values[i] = column.get((int)((long)i * rows / sample));
+			}
+			Arrays.sort(values);
+			bounds[x] = QuantileBins.starts(values, histogram_bins);
+		}
+		return QuantileBins.fromBounds(bounds);
+	}
+
+	/**
+	 * Splits a node from a stream of its row ids and builds its children.
+	 * @param node (C45Node): The node.
+	 * @param rows_file (File): The spill file of the node's row ids, null for every row.
+	 * @param count (int): The number of rows.
+	 */
+	private void buildNode(C45Node node, File rows_file, int count) throws IOException{
+		if(rows_file != null && fits(count)){
+			int[] ids = new int[count];
+			RowReader reader = new RowReader(rows_file, count);
+			for(int i = 0; i < count; i++){
+				ids[i] = reader.next();
+			}
+			reader.close();
+			delete(rows_file);
+			node.setDataset(dataset.adopt(ids));
+			in_memory.build(node);
+			return;
+		}
+		if(metrics != null){
+			metrics.nodeBuilt(count);
+		}
+		boolean stopped = !node.isRoot() && (count < min_node_rows || (max_depth != 0 && node.getDepth() > max_depth));
+		ArrayList<Value> attributes = new ArrayList<Value>();
+		if(!stopped){
+			attributes.addAll(node.getRemainingAttributes());
+		}
+
+		BuildMetrics.Span span = (metrics != null) ? metrics.begin(BuildMetrics.Phase.SPLIT_SEARCH) : null;
+		NodeCounts counts = new NodeCounts(attributes);
+		counts.count(new RowReader(rows_file, count));
+		Split best = stopped ? null : counts.bestSplit();
+		if(span != null){
+			span.end(count);
+		}
+		NodeSummary summary = new NodeSummary(counts.class_totals, dataset.getClassDictionary(target),
+				target_class.attribute_is_numeric);
+
+		if(best == null || !(best.gain > 0 && best.gain >= min_split_gain)){
+			node.finish(summary, target_class);
+			delete(rows_file);
+			return;
+		}
+
+		span = (metrics != null) ? metrics.begin(BuildMetrics.Phase.PARTITIONING) : null;
+		int x = dataset.getHeaderIndex(best.attribute);
+		ChildRows[] children = partition(counts, x, best.number, rows_file, count);
+		for(ChildRows child : children){
+			Dataset child_dataset = (child.ids != null) ? dataset.adopt(child.ids) : dataset;
+			if(best.attribute.attribute_is_numeric){
+				child.node = new C45Node(child_dataset, node, best.attribute, best.number, child.code == 0);
+			}else{
+				child.node = new C45Node(child_dataset, node, best.attribute, dataset.getDictionary(x).decode(child.code));
+			}
+			child.ids = null;
+			node.addChild(child.node);
+		}
+		if(span != null){
+			span.end(count);
+		}
+		node.finish(summary, target_class);
+
+		for(ChildRows child : children){
+			if(child.file != null){
+				buildNode(child.node, child.file, child.count);
+			}else{
+				in_memory.build(child.node);
+			}
+		}
+	}
+
+	/**
+	 * Sends each row of a node to its child, in an array if the child fits
+	 * in the memory budget and a spill file otherwise.
+	 * Numeric splits have the greater than or equal child first, coded 0, then
+	 * the lower child, coded 1. Nominal splits have a child per value with
+	 * rows, in code order.
+	 * @return (ChildRows[]): The rows of each child.
+	 */
+	private ChildRows[] partition(NodeCounts counts, int x, int number, File rows_file, int count) throws IOException{
+		Column column = dataset.getColumn(x);
+		boolean numeric = dataset.getAttribute(x).attribute_is_numeric;
+
+		//Child sizes are known from the counts, so each child is routed to an array or a file up front
+		ArrayList<ChildRows> list = new ArrayList<ChildRows>();
+		int[] child_of;
+		if(numeric){
+			int split_bucket = bins.bucket(x, number);
+			int[] histogram = counts.numeric_counts[x];
+			int upper = 0;
+			for(int i = split_bucket * class_count; i < histogram.length; i++){
+				upper += histogram[i];
+			}
+			list.add(new ChildRows(0, upper));
+			list.add(new ChildRows(1, count - upper));
+			child_of = new int[]{0, 1};
+		}else{
+			child_of = new int[dataset.getDictionary(x).size()];
+			Arrays.fill(child_of, -1);
+			for(int code = 0; code < child_of.length; code++){
+				int size = counts.nominal_counts[x].getValueTotal(code);
+				if(size > 0){
+					child_of[code] = list.size();
+					list.add(new ChildRows(code, size));
+				}
+			}
+		}
+		ChildRows[] children = list.toArray(new ChildRows[list.size()]);
+
+		//Children are gathered in arrays while their ids fit in the budget together, the rest spill
+		long gathered = 0;
+		int spilled = 0;
+		for(ChildRows child : children){
+			if(fits(child.count) && fits(gathered + child.count)){
+				child.ids = new int[child.count];
+				gathered += child.count;
+			}else{
+				spilled++;
+			}
+		}
+		int buffer_ints = (int)Math.max(MIN_SPILL_BUFFER_INTS,
+				Math.min(MAX_SPILL_BUFFER_INTS, memory_budget / (4L * Math.max(spilled, 1))));
+		for(ChildRows child : children){
+			if(child.ids == null){
+				child.file = newSpillFile();
+				child.writer = new SpillWriter(child.file, buffer_ints);
+			}
+		}
+
+		RowReader reader = new RowReader(rows_file, count);
+		for(int i = 0; i < count; i++){
+			int row = reader.next();
+			int cell = column.get(row);
+			ChildRows child = children[numeric ? child_of[(cell >= number) ? 0 : 1] : child_of[cell]];
+			child.add(row);
+		}
+		reader.close();
+		for(ChildRows child : children){
+			if(child.writer != null){
+				child.writer.close();
+				child.writer = null;
+			}
+		}
+		delete(rows_file);
+		return children;
+	}
+
+	/**
+	 * Determines if the given number of rows can be built in memory.
+	 */
+	private boolean fits(long rows){
+		return rows * IN_MEMORY_ROW_BYTES <= memory_budget;
+	}
+
+	private File newSpillFile() throws IOException{
+		return File.createTempFile("c45-", ".rows", directory);
+	}
+
+	private static void delete(File file){
+		if(file != null && !file.delete()){
+			file.deleteOnExit();
+		}
+	}
+
+	/**
+	 * The class counts of one node's rows: in total, per bucket of every
+	 * numeric attribute searched and per value of every nominal attribute searched.
+	 */
+	private final class NodeCounts {
+		private final Value[] attributes;
+		private final int[] columns;
+		final int[] class_totals;
+		final int[][] numeric_counts;
+		final ContingencyTable[] nominal_counts;
+		private final int[][] nominal_cells;
+		private final int[][] value_totals;
+
+		NodeCounts(ArrayList<Value> _attributes){
+			attributes = _attributes.toArray(new Value[_attributes.size()]);
+			//In column order, so ties go to the lowest column as they do in SplitFinder
+			Arrays.sort(attributes, Comparator.comparingInt(dataset::getHeaderIndex));
+			columns = new int[attributes.length];
+			class_totals = new int[class_count];
+			numeric_counts = new int[dataset.width][];
+			nominal_counts = new ContingencyTable[dataset.width];
+			nominal_cells = new int[dataset.width][];
+			value_totals = new int[dataset.width][];
+			for(int i = 0; i < attributes.length; i++){
+				int x = dataset.getHeaderIndex(attributes[i]);
+				columns[i] = x;
+				if(attributes[i].attribute_is_numeric){
+					if(bins.isBinned(x)){
+						numeric_counts[x] = new int[bins.size(x) * class_count];
+					}
+				}else{
+					int values = dataset.getDictionary(x).size();
+					nominal_cells[x] = new int[values * class_count];
+					value_totals[x] = new int[values];
+				}
+			}
+		}
+
+		/**
+		 * Counts every row of the node.
+		 * @param reader (RowReader): The node's row ids.
+		 */
+		void count(RowReader reader) throws IOException{
+			Column[] data = new Column[columns.length];
+			for(int i = 0; i < columns.length; i++){
+				data[i] = dataset.getColumn(columns[i]);
+			}
+			int total = 0;
+			while(reader.hasNext()){
+				int row = reader.next();
+				int code = classes.get(row);
+				class_totals[code]++;
+				total++;
+				for(int i = 0; i < columns.length; i++){
+					int x = columns[i];
+					int cell = data[i].get(row);
+					if(numeric_counts[x] != null){
+						numeric_counts[x][bins.bucket(x, cell) * class_count + code]++;
+					}else if(nominal_cells[x] != null){
+						nominal_cells[x][cell * class_count + code]++;
+						value_totals[x][cell]++;
+					}
+				}
+			}
+			reader.close();
+
+			for(int x = 0; x < dataset.width; x++){
+				if(nominal_cells[x] != null){
+					nominal_counts[x] = new ContingencyTable(value_totals[x].length, class_count,
+							nominal_cells[x], value_totals[x], class_totals, total);
+				}
+			}
+		}
+
+		/**
+		 * Finds the attribute with the highest gain, taking the lowest column
+		 * on ties as SplitFinder does.
+		 * @return (Split): The best split. Has a gain of 0 if no split gains anything.
+		 */
+		Split bestSplit(){
+			NodeHistograms histograms = new NodeHistograms(numeric_counts, class_count);
+			Split best = new Split(new Value(), 0, 0);
+			for(int i = 0; i < attributes.length; i++){
+				int x = columns[i];
+				Split split;
+				if(numeric_counts[x] != null){
+					split = SplitFinder.histogramSplit(attributes[i], x, bins, histograms);
+				}else if(nominal_counts[x] != null){
+					split = new Split(attributes[i], nominal_counts[x].gain(), 0);
+				}else{
+					continue;
+				}
+				if(metrics != null){
+					metrics.candidatesTried(split.attribute, split.candidates);
+				}
+				if(split.gain > best.gain){
+					best = split;
+				}
+			}
+			return best;
+		}
+	}
+
+	/**
+	 * Where the rows of one child go while its parent is partitioned.
+	 */
+	private static final class ChildRows {
+		final int code;
+		final int count;
+		int[] ids;
+		int size;
+		File file;
+		SpillWriter writer;
+		C45Node node;
+
+		ChildRows(int _code, int _count){
+			code = _code;
+			count = _count;
+		}
+
+		void add(int row) throws IOException{
+			if(writer != null){
+				writer.add(row);
+			}else{
+				ids[size++] = row;
+			}
+		}
+	}
+
+	/**
+	 * Reads the row ids of a node from its spill file through a buffer,
+	 * or counts through every row when there is no file.
+	 */
+	private static final class RowReader {
+		private final FileInputStream in;
+		private final ByteBuffer buffer;
+		private IntBuffer ints;
+		private final int count;
+		private int read;
+
+		RowReader(File file, int _count) throws IOException{
+			count = _count;
+			if(file != null){
+				in = new FileInputStream(file);
+				buffer = ByteBuffer.allocateDirect(4 * READ_INTS).order(ByteOrder.LITTLE_ENDIAN);
+				ints = IntBuffer.allocate(0);
+			}else{
+				in = null;
+				buffer = null;
+			}
+		}
+
+		boolean hasNext(){
+			return read < count;
+		}
+
+		int next() throws IOException{
+			if(in == null){
+				return read++;
+			}
+			if(!ints.hasRemaining()){
+				fill();
+			}
+			read++;
+			return ints.get();
+		}
+
+		private void fill() throws IOException{
+			FileChannel channel = in.getChannel();
+			buffer.clear();
+			while(buffer.hasRemaining() && channel.read(buffer) >= 0){
+			}
+			buffer.flip();
+			if(buffer.remaining() < 4){
+				throw new UncheckedIOException(new IOException("Spill file ended early"));
+			}
+			ints = buffer.asIntBuffer();
+		}
+
+		void close() throws IOException{
+			if(in != null){
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Appends row ids to a spill file through a buffer.
+	 */
+	private static final class SpillWriter {
+		private final FileOutputStream out;
+		private final FileChannel channel;
+		private final int[] buffer;
+		private final ByteBuffer bytes;
+		private int size;
+
+		SpillWriter(File file, int buffer_ints) throws IOException{
+			out = new FileOutputStream(file);
+			channel = out.getChannel();
+			buffer = new int[buffer_ints];
+			bytes = ByteBuffer.allocate(4 * buffer_ints).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		void add(int row) throws IOException{
+			if(size == buffer.length){
+				SegmentStore.writeInts(channel, buffer, size, bytes);
+				size = 0;
+			}
+			buffer[size++] = row;
+		}
+
+		void close() throws IOException{
+			SegmentStore.writeInts(channel, buffer, size, bytes);
+			out.close();
+		}
+	}
+}
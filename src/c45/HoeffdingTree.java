@@ -0,0 +1,853 @@
+package c45;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A decision tree learned from a stream of records, one at a time, in the
+ * manner of a Hoeffding tree. Each record is routed to a leaf, which
+ * counts the classes of its records per value of every nominal attribute
+ * and per bucket of every numeric attribute. Every grace period records a
+ * leaf scores its attributes with the same information gain as the batch
+ * tree, and splits on the best one once the Hoeffding bound says, with
+ * the set confidence, that it beats the second best by more than chance
+ * would, or that the two are too close to matter.
+ * Numeric attributes keep a sketch of at most a set number of buckets per
+ * leaf. While a leaf has seen fewer distinct values than that every value
+ * is a bucket of its own; after that the adjacent pair of buckets with
+ * the fewest records is merged to make room. Bucket starts are the split
+ * numbers tried, as in histogram split finding.
+ * The columns and types come from a Dataset given up front, such as the
+ * first batch of records. Nominal and target values not seen before are
+ * added to the tree's own copies of its dictionaries as they arrive.
+ * Stopping rules follow TreeBuilder: leaves deeper than the maximum depth
+ * or with fewer records than the minimum node size aren't split.
+ * The tree predicts as it learns and can be printed as rules, or turned
+ * into a C45Node tree or a CompiledTree. Learning isn't thread safe, so
+ * scoring alongside learning should use a compiled copy.
+ * Usage: java c45.HoeffdingTree first.csv target [more.csv ...]
+ * @author Matthew Tetford
+ */
+public final class HoeffdingTree extends Predictor {
+	static final int DEFAULT_GRACE_PERIOD = 200;
+	static final double DEFAULT_CONFIDENCE = 1e-7;
+	static final double DEFAULT_TIE_THRESHOLD = 0.05;
+	static final int DEFAULT_SKETCH_BUCKETS = 64;
+
+	private final Dataset schema;
+	private final Value target_class;
+	private final Value[] headers;
+	private final int target;
+	private final ValueDictionary class_dictionary;
+	private final int width;
+	private StreamNode root;
+	private long records;
+	private int nodes;
+	private int grace_period = DEFAULT_GRACE_PERIOD;
+	private double confidence = DEFAULT_CONFIDENCE;
+	private double tie_threshold = DEFAULT_TIE_THRESHOLD;
+	private int sketch_buckets = DEFAULT_SKETCH_BUCKETS;
+	private int max_depth = 0;
+	private int min_node_size = 0;
+	private double min_split_gain = 0;
+
+	/**
+	 * Creates a tree with a single leaf for the columns of a Dataset.
+	 * The Dataset's rows aren't learned, see learn(Dataset).
+	 * @param dataset (Dataset): Gives the headers, column types and known values.
+	 * @param _target_class (Value): The attribute to classify by.
+	 */
+	public HoeffdingTree(Dataset dataset, Value _target_class){
+		schema = dataset.schema();
+		target_class = _target_class;
+		headers = schema.getAttributeArray();
+		width = headers.length;
+		target = schema.getHeaderIndex(target_class);
+		class_dictionary = schema.getClassDictionary(target);
+
+		boolean[] usable = new boolean[width];
+		Arrays.fill(usable, true);
+		usable[target] = false;
+		root = new StreamNode(0, usable, -1);
+		nodes = 1;
+	}
+
+	/**
+	 * Sets the number of records a leaf sees between looks for a split.
+	 * @param records (int): The grace period, at least 1.
+	 */
+	public void setGracePeriod(int records){
+		if(records < 1){
+			System.err.println("The grace period must be at least 1");
+			System.exit(1);
+		}
+		grace_period = records;
+	}
+
+	/**
+	 * Sets the chance the Hoeffding bound allows of splitting on the wrong attribute.
+	 * @param delta (double): The chance, between 0 and 1.
+	 */
+	public void setConfidence(double delta){
+		if(!(delta > 0 && delta < 1)){
+			System.err.println("The confidence must be between 0 and 1");
+			System.exit(1);
+		}
+		confidence = delta;
+	}
+
+	/**
+	 * Sets how close the best two attributes may be before the leaf is
+	 * split on the best one anyway.
+	 * @param threshold (double): The tie threshold, 0 or more.
+	 */
+	public void setTieThreshold(double threshold){
+		if(!(threshold >= 0)){
+			System.err.println("The tie threshold must be 0 or more");
+			System.exit(1);
+		}
+		tie_threshold = threshold;
+	}
+
+	/**
+	 * Sets the most buckets a leaf keeps per numeric attribute. Only
+	 * affects leaves created afterwards.
+	 * @param buckets (int): The number of buckets, at least 2.
+	 */
+	public void setSketchBuckets(int buckets){
+		if(buckets < 2 || buckets > QuantileBins.MAX_BINS){
+			System.err.println("Sketch buckets must be between 2 and " + QuantileBins.MAX_BINS);
+			System.exit(1);
+		}
+		sketch_buckets = buckets;
+	}
+
+	/**
+	 * Sets the deepest a leaf may be and still be split.
+	 * @param depth (int): The depth, 0 to ignore.
+	 */
+	public void setMaxDepth(int depth){
+		if(depth < 0){
+			System.err.println("The maximum depth can't be negative");
+			System.exit(1);
+		}
+		max_depth = depth;
+	}
+
+	/**
+	 * Sets the fewest records a leaf needs to be split.
+	 * @param size (int): The number of records, 0 to ignore.
+	 */
+	public void setMinNodeSize(int size){
+		if(size < 0){
+			System.err.println("The minimum node size can't be negative");
+			System.exit(1);
+		}
+		min_node_size = size;
+	}
+
+	/**
+	 * Sets the minimum gain to split on.
+	 * @param gain (double): The gain, 0 or more.
+	 */
+	public void setMinSplitGain(double gain){
+		if(!(gain >= 0)){
+			System.err.println("The minimum gain must be 0 or more");
+			System.exit(1);
+		}
+		min_split_gain = gain;
+	}
+
+	/**
+	 * Learns every row of a Dataset with the same columns, in order.
+	 * @param dataset (Dataset): The records.
+	 */
+	public void learn(Dataset dataset){
+		if(dataset.width != width){
+			System.err.println("Dataset has " + dataset.width + " columns, expected " + width);
+			System.exit(1);
+		}
+		int[] row = new int[width];
+		Column classes = dataset.getClassColumn(target);
+		ValueDictionary classes_in = dataset.getClassDictionary(target);
+		for(int y = 1; y < dataset.height; y++){
+			int row_id = dataset.row(y);
+			for(int x = 0; x < width; x++){
+				row[x] = encodeAdding(x, dataset.getValue(x, y));
+			}
+			learnRow(row, class_dictionary.encode(classes_in.decode(classes.get(row_id))));
+		}
+	}
+
+	/**
+	 * Learns one record.
+	 * @param record (ArrayList<Value>): The record, in column order, including the target.
+	 */
+	public void learn(ArrayList<Value> record){
+		if(record.size() != width){
+			System.err.println("Record has " + record.size() + " values, expected " + width);
+			System.exit(1);
+		}
+		//Skip a numeric target without a number before any of its values reach the dictionaries
+		Value label = record.get(target);
+		if(target_class.attribute_is_numeric && (label.isEmpty() || !label.isNumeric())){
+			return;
+		}
+		int[] row = new int[width];
+		for(int x = 0; x < width; x++){
+			row[x] = encodeAdding(x, record.get(x));
+		}
+		learnRow(row, class_dictionary.encode(label));
+	}
+
+	/**
+	 * Streams every record of a csv file with the same columns into the tree.
+	 * @param filename (String): The csv file.
+	 */
+	public void learnFile(String filename){
+		try {
+			FileInputStream in = new FileInputStream(filename);
+			try {
+				new CsvParser(new RecordSink(), true).parse(in);
+			} finally {
+				in.close();
+			}
+		}
+		catch (FileNotFoundException e) {
+			System.err.println("File not found");
+			System.exit(1);
+		}
+		catch (IOException e) {
+			System.err.println("IO Error");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Encodes a cell, adding nominal values not seen before.
+	 */
+	private int encodeAdding(int x, Value value){
+		ValueDictionary dictionary = schema.getDictionary(x);
+		if(dictionary == null){
+			return (!value.isEmpty() && value.isNumeric()) ? value.num_value : Integer.MIN_VALUE;
+		}
+		return dictionary.encode(value);
+	}
+
+	/**
+	 * Routes an encoded record to its leaf, counting it at every node on
+	 * the way, and splits the leaf if its grace period is up.
+	 * @param row (int[]): The record, see Predictor.
+	 * @param code (int): The class code of the record.
+	 */
+	void learnRow(int[] row, int code){
+		records++;
+		StreamNode node = root;
+		while(true){
+			node.addClass(code);
+			if(node.feature < 0){
+				break;
+			}
+			node = node.childFor(row[node.feature], true);
+		}
+
+		node.learn(row, code);
+		if(++node.since_check >= grace_period){
+			node.since_check = 0;
+			trySplit(node);
+		}
+	}
+
+	/**
+	 * Splits a leaf on its best attribute if the Hoeffding bound allows.
+	 */
+	private void trySplit(StreamNode leaf){
+		if(leaf.distinctClasses() < 2 || leaf.total < min_node_size
+				|| (max_depth != 0 && leaf.depth > max_depth)){
+			return;
+		}
+
+		Split best = new Split(new Value(), 0, 0);
+		double second = 0;
+		int classes = class_dictionary.size();
+		for(int x = 0; x < width; x++){
+			if(!leaf.usable[x]){
+				continue;
+			}
+			Split split = leaf.score(x, classes);
+			if(split.gain > best.gain){
+				second = best.gain;
+				best = split;
+			}else if(split.gain > second){
+				second = split.gain;
+			}
+		}
+		if(!(best.gain > 0 && best.gain >= min_split_gain)){
+			return;
+		}
+
+		//Information gain ranges over log2 of the number of classes
+		double range = Math.log(Math.max(classes, 2)) / Math.log(2);
+		double bound = Math.sqrt(range * range * Math.log(1 / confidence) / (2d * leaf.total));
+		if(best.gain - second > bound || bound < tie_threshold){
+			leaf.split(best);
+		}
+	}
+
+	/**
+	 * Predicts the class of an encoded row.
+	 * @param row (int[]): The row, indexed by column. The target column is ignored.
+	 * @return (int): The code of the predicted class, see getClassValue.
+	 */
+	public int predict(int[] row){
+		StreamNode node = root;
+		while(node.feature >= 0){
+			StreamNode child = node.childFor(row[node.feature], false);
+			if(child == null){
+				break;
+			}
+			node = child;
+		}
+		return node.majority();
+	}
+
+	/**
+	 * Builds a C45Node tree of the nodes learned so far, with each node
+	 * summarizing every record that reached it, for printing or compiling.
+	 * @return (C45Node): The root of the tree.
+	 */
+	public C45Node toTree(){
+		C45Node tree = new C45Node(schema, null, target_class);
+		addChildren(tree, root);
+		return tree;
+	}
+
+	private void addChildren(C45Node tree, StreamNode node){
+		ArrayList<StreamNode> children = new ArrayList<StreamNode>();
+		if(node.feature >= 0){
+			Value attribute = headers[node.feature];
+			for(int i = 0; i < node.children.length; i++){
+				StreamNode child = node.children[i];
+				if(child == null){
+					continue;
+				}
+				if(node.numeric){
+					tree.addChild(new C45Node(schema, tree, attribute, node.threshold, i == 0));
+				}else{
+					tree.addChild(new C45Node(schema, tree, attribute, schema.getDictionary(node.feature).decode(i)));
+				}
+				children.add(child);
+			}
+		}
+		tree.finish(new NodeSummary(Arrays.copyOf(node.class_counts, class_dictionary.size()), class_dictionary,
+				target_class.attribute_is_numeric), target_class);
+		for(int i = 0; i < children.size(); i++){
+			addChildren(tree.getChildren().get(i), children.get(i));
+		}
+	}
+
+	/**
+	 * Flattens the nodes learned so far for fast, thread safe prediction.
+	 * @return (CompiledTree): The compiled tree.
+	 */
+	public CompiledTree compile(){
+		return CompiledTree.compile(toTree(), target_class);
+	}
+
+	/**
+	 * Prints the nodes learned so far as rules, as the batch tree is printed.
+	 * @param output (PrintStream): Where to print the rules.
+	 */
+	public void printTree(PrintStream output){
+		DecisionTree.printTree(toTree(), target_class, output);
+	}
+
+	/**
+	 * Gets the number of records learned.
+	 * @return (long): The number of records.
+	 */
+	public long getRecords(){
+		return records;
+	}
+
+	/**
+	 * Gets the number of nodes in the tree.
+	 * @return (int): The number of nodes.
+	 */
+	public int getNodeCount(){
+		return nodes;
+	}
+
+	ValueDictionary getDictionary(int x){
+		return schema.getDictionary(x);
+	}
+
+	ValueDictionary getClassDictionary(){
+		return class_dictionary;
+	}
+
+	/**
+	 * Gets the value of a predicted class.
+	 * @param code (int): The class code returned by predict.
+	 * @return (Value): The value, or an empty Value if the code is -1.
+	 */
+	public Value getClassValue(int code){
+		return (code >= 0) ? class_dictionary.decode(code) : new Value();
+	}
+
+	/**
+	 * Gets the number of distinct classes seen so far.
+	 * @return (int): The number of classes.
+	 */
+	public int getClassCount(){
+		return class_dictionary.size();
+	}
+
+	/**
+	 * Gets the column the tree classifies by.
+	 * @return (int): The index of the target column.
+	 */
+	public int getTargetIndex(){
+		return target;
+	}
+
+	/**
+	 * Gets the headers of the columns, in column order.
+	 * @return (Value[]): The headers.
+	 */
+	public Value[] getHeaders(){
+		return headers.clone();
+	}
+
+	private static int[] grow(int[] array, int size){
+		return (size <= array.length) ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+	}
+
+	/**
+	 * A node of the tree. Leaves hold the counts their splits are scored
+	 * from, which are dropped once the leaf is split.
+	 */
+	private final class StreamNode {
+		final int depth;
+		final boolean[] usable;
+		final int fallback;
+		int[] class_counts;
+		int total;
+		int since_check;
+		int feature = -1;
+		boolean numeric;
+		int threshold;
+		StreamNode[] children;
+		private int[][][] nominal_counts;
+		private NumericSketch[] sketches;
+
+		/**
+		 * Creates a leaf.
+		 * @param _depth (int): The depth, 0 for the root.
+		 * @param _usable (boolean[]): The columns the leaf may split on.
+		 * @param _fallback (int): The class predicted before the leaf has records.
+		 */
+		StreamNode(int _depth, boolean[] _usable, int _fallback){
+			depth = _depth;
+			usable = _usable;
+			fallback = _fallback;
+			class_counts = new int[Math.max(class_dictionary.size(), 2)];
+			nominal_counts = new int[width][][];
+			sketches = new NumericSketch[width];
+			for(int x = 0; x < width; x++){
+				if(usable[x] && schema.getDictionary(x) == null){
+					sketches[x] = new NumericSketch(sketch_buckets);
+				}else if(usable[x]){
+					nominal_counts[x] = new int[0][];
+				}
+			}
+		}
+
+		void addClass(int code){
+			class_counts = grow(class_counts, code + 1);
+			class_counts[code]++;
+			total++;
+		}
+
+		int distinctClasses(){
+			int distinct = 0;
+			for(int count : class_counts){
+				if(count > 0){
+					distinct++;
+				}
+			}
+			return distinct;
+		}
+
+		/**
+		 * Gets the most common class, lowest code on ties.
+		 */
+		int majority(){
+			if(total == 0){
+				return fallback;
+			}
+			int best = 0;
+			for(int c = 1; c < class_counts.length; c++){
+				if(class_counts[c] > class_counts[best]){
+					best = c;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * Counts a record at a leaf.
+		 */
+		void learn(int[] row, int code){
+			for(int x = 0; x < width; x++){
+				if(sketches[x] != null){
+					sketches[x].add(row[x], code);
+				}else if(nominal_counts[x] != null && row[x] >= 0){
+					int[][] counts = nominal_counts[x];
+					if(row[x] >= counts.length){
+						counts = Arrays.copyOf(counts, Math.max(row[x] + 1, counts.length * 2));
+						nominal_counts[x] = counts;
+					}
+					if(counts[row[x]] == null){
+						counts[row[x]] = new int[class_counts.length];
+					}
+					counts[row[x]] = grow(counts[row[x]], code + 1);
+					counts[row[x]][code]++;
+				}
+			}
+		}
+
+		/**
+		 * Scores the best split of a column from the leaf's counts.
+		 */
+		Split score(int x, int classes){
+			if(sketches[x] != null){
+				return sketches[x].bestSplit(headers[x], x, classes);
+			}
+			int[][] counts = nominal_counts[x];
+			int values = counts.length;
+			int[] cells = new int[values * classes];
+			int[] value_totals = new int[values];
+			int[] class_totals = new int[classes];
+			int seen = 0;
+			for(int v = 0; v < values; v++){
+				if(counts[v] == null){
+					continue;
+				}
+				for(int c = 0; c < counts[v].length && c < classes; c++){
+					cells[v * classes + c] = counts[v][c];
+					value_totals[v] += counts[v][c];
+					class_totals[c] += counts[v][c];
+					seen += counts[v][c];
+				}
+			}
+			if(seen == 0){
+				return new Split(headers[x], 0, 0);
+			}
+			return new Split(headers[x], new ContingencyTable(values, classes, cells, value_totals, class_totals, seen).gain(), 0);
+		}
+
+		/**
+		 * Turns the leaf into a split with empty leaves below it.
+		 */
+		void split(Split best){
+			int x = schema.getHeaderIndex(best.attribute);
+			boolean[] child_usable = usable;
+			numeric = (sketches[x] != null);
+			if(numeric){
+				threshold = best.number;
+				children = new StreamNode[2];
+			}else{
+				child_usable = usable.clone();
+				child_usable[x] = false;
+				children = new StreamNode[nominal_counts[x].length];
+			}
+			int predicted = majority();
+			for(int i = 0; i < children.length; i++){
+				if(numeric || nominal_counts[x][i] != null){
+					children[i] = new StreamNode(depth + 1, child_usable, predicted);
+					nodes++;
+				}
+			}
+			feature = x;
+			nominal_counts = null;
+			sketches = null;
+		}
+
+		/**
+		 * Gets the child a cell goes to: greater than or equal first for
+		 * numeric splits, by code for nominal splits.
+		 * @param cell (int): The cell of the split column.
+		 * @param create (boolean): True to add a leaf for a nominal value without one.
+		 * @return (StreamNode): The child, or null if there is none and create is false.
+		 */
+		StreamNode childFor(int cell, boolean create){
+			if(numeric){
+				return children[(cell >= threshold) ? 0 : 1];
+			}
+			if(cell < 0){
+				return create ? firstChild() : null;
+			}
+			if(cell >= children.length || children[cell] == null){
+				if(!create){
+					return null;
+				}
+				if(cell >= children.length){
+					children = Arrays.copyOf(children, cell + 1);
+				}
+				boolean[] child_usable = usable.clone();
+				child_usable[feature] = false;
+				children[cell] = new StreamNode(depth + 1, child_usable, majority());
+				nodes++;
+			}
+			return children[cell];
+		}
+
+		private StreamNode firstChild(){
+			for(StreamNode child : children){
+				if(child != null){
+					return child;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Class counts per bucket of one numeric attribute at one leaf.
+	 * Buckets are kept sorted by start, and a bucket holds the values from
+	 * its start up to the next bucket's start. A bucket that has never been
+	 * merged holds only its start value.
+	 */
+	private static final class NumericSketch {
+		private final int max_buckets;
+		private int[] starts;
+		private int[][] counts;
+		private int[] totals;
+		private boolean[] exact;
+		private int size;
+
+		NumericSketch(int _max_buckets){
+			max_buckets = _max_buckets;
+			starts = new int[8];
+			counts = new int[8][];
+			totals = new int[8];
+			exact = new boolean[8];
+		}
+
+		void add(int value, int code){
+			int b = Arrays.binarySearch(starts, 0, size, value);
+			if(b < 0){
+				int below = -b - 2;
+				if(below >= 0 && !exact[below]){
+					//Falls inside a merged bucket
+					b = below;
+				}else{
+					//Below every bucket, or between a single value bucket and the next
+					b = below + 1;
+					insert(b, value);
+				}
+			}
+			counts[b] = grow(counts[b], code + 1);
+			counts[b][code]++;
+			totals[b]++;
+			if(size > max_buckets){
+				mergeSmallest();
+			}
+		}
+
+		private void insert(int b, int value){
+			if(size == starts.length){
+				starts = Arrays.copyOf(starts, size * 2);
+				counts = Arrays.copyOf(counts, size * 2);
+				totals = Arrays.copyOf(totals, size * 2);
+				exact = Arrays.copyOf(exact, size * 2);
+			}
+			System.arraycopy(starts, b, starts, b + 1, size - b);
+			System.arraycopy(counts, b, counts, b + 1, size - b);
+			System.arraycopy(totals, b, totals, b + 1, size - b);
+			System.arraycopy(exact, b, exact, b + 1, size - b);
+			starts[b] = value;
+			counts[b] = new int[2];
+			totals[b] = 0;
+			exact[b] = true;
+			size++;
+		}
+
+		/**
+		 * Merges the adjacent pair of buckets with the fewest records between them.
+		 */
+		private void mergeSmallest(){
+			int best = 0;
+			for(int b = 1; b < size - 1; b++){
+				if(totals[b] + totals[b+1] < totals[best] + totals[best+1]){
+					best = b;
+				}
+			}
+			int[] merged = grow(counts[best], counts[best+1].length);
+			for(int c = 0; c < counts[best+1].length; c++){
+				merged[c] += counts[best+1][c];
+			}
+			counts[best] = merged;
+			totals[best] += totals[best+1];
+			exact[best] = false;
+			int moved = size - best - 2;
+			System.arraycopy(starts, best + 2, starts, best + 1, moved);
+			System.arraycopy(counts, best + 2, counts, best + 1, moved);
+			System.arraycopy(totals, best + 2, totals, best + 1, moved);
+			System.arraycopy(exact, best + 2, exact, best + 1, moved);
+			size--;
+			counts[size] = null;
+		}
+
+		/**
+		 * Scores every bucket start as a split number, as histogram split finding does.
+		 */
+		Split bestSplit(Value attribute, int x, int classes){
+			if(size == 0){
+				return new Split(attribute, 0, 0);
+			}
+			int[] histogram = new int[size * classes];
+			for(int b = 0; b < size; b++){
+				for(int c = 0; c < counts[b].length && c < classes; c++){
+					histogram[b * classes + c] = counts[b][c];
+				}
+			}
+			int[][] bounds = new int[x + 1][];
+			int[][] cells = new int[x + 1][];
+			bounds[x] = Arrays.copyOf(starts, size);
+			cells[x] = histogram;
+			return SplitFinder.histogramSplit(attribute, x, QuantileBins.fromBounds(bounds),
+					new NodeHistograms(cells, classes));
+		}
+	}
+
+	/**
+	 * Encodes each record of a csv file as it is parsed and learns it.
+	 * Cells already in their column's dictionary are coded as they arrive.
+	 * New values are held until the end of the record, and only added to
+	 * the dictionaries if the record is learned, as learn does.
+	 */
+	private final class RecordSink implements CsvParser.Sink {
+		private static final byte HELD_NONE = 0;
+		private static final byte HELD_NUMBER = 1;
+		private static final byte HELD_BYTES = 2;
+		private final int[] row = new int[width];
+		//Per column, whether a new value is held and the number or bytes of it
+		private final byte[] held = new byte[width];
+		private final int[] held_numbers = new int[width];
+		private final byte[][] held_bytes = new byte[width][];
+		private final int[] held_lengths = new int[width];
+		private boolean usable_label;
+		private long line = 1;
+
+		public void header(Value[] file_headers){
+			if(file_headers.length != width){
+				System.err.println("File has " + file_headers.length + " columns, expected " + width);
+				System.exit(1);
+			}
+		}
+
+		public void number(int x, int number){
+			checkWidth(x+1);
+			ValueDictionary dictionary = schema.getDictionary(x);
+			int code = (dictionary == null) ? number : dictionary.lookupNumber(number);
+			if(dictionary != null && code < 0){
+				held[x] = HELD_NUMBER;
+				held_numbers[x] = number;
+			}else{
+				row[x] = code;
+			}
+			if(x == target){
+				usable_label = true;
+			}
+		}
+
+		public void bytes(int x, byte[] buffer, int offset, int length){
+			checkWidth(x+1);
+			ValueDictionary dictionary = schema.getDictionary(x);
+			int code = (dictionary == null) ? Integer.MIN_VALUE : dictionary.lookupBytes(buffer, offset, length);
+			if(dictionary != null && code < 0){
+				if(held_bytes[x] == null || held_bytes[x].length < length){
+					held_bytes[x] = new byte[Math.max(length, 16)];
+				}
+				System.arraycopy(buffer, offset, held_bytes[x], 0, length);
+				held_lengths[x] = length;
+				held[x] = HELD_BYTES;
+			}else{
+				row[x] = code;
+			}
+			if(x == target){
+				//A numeric target can't take a word, so the record is skipped
+				usable_label = (dictionary != null);
+			}
+		}
+
+		public void endRow(int cells){
+			line++;
+			if(cells != width){
+				System.err.println("Row " + line + " has " + cells + " values, expected " + width);
+				System.exit(1);
+			}
+			for(int x = 0; x < width; x++){
+				if(held[x] != HELD_NONE){
+					if(usable_label){
+						ValueDictionary dictionary = schema.getDictionary(x);
+						row[x] = (held[x] == HELD_NUMBER) ? dictionary.encodeNumber(held_numbers[x])
+								: dictionary.encodeBytes(held_bytes[x], 0, held_lengths[x]);
+					}
+					held[x] = HELD_NONE;
+				}
+			}
+			if(usable_label){
+				//A nominal target's codes are its column's codes
+				int code = (schema.getDictionary(target) == null) ? class_dictionary.encodeNumber(row[target]) : row[target];
+				learnRow(row, code);
+			}
+			usable_label = false;
+		}
+
+		private void checkWidth(int cells){
+			if(cells > width){
+				System.err.println("Row " + (line+1) + " has " + cells + " values, expected " + width);
+				System.exit(1);
+			}
+		}
+	}
+
+	public static void main(String[] args){
+		if(args.length < 2){
+			System.err.println("Usage: java c45.HoeffdingTree first.csv target [more.csv ...]");
+			System.exit(1);
+		}
+		Dataset first = new Dataset(args[0]);
+		int target = -1;
+		try {
+			target = Integer.parseInt(args[1]);
+		} catch (NumberFormatException e) {
+		}
+		if(target < 1 || target > first.width){
+			System.err.println("The target must be a column number between 1 and " + first.width);
+			System.exit(1);
+		}
+
+		long begin = System.currentTimeMillis();
+		HoeffdingTree tree = new HoeffdingTree(first, first.getAttribute(target-1));
+		tree.learn(first);
+		for(int i = 2; i < args.length; i++){
+			tree.learnFile(args[i]);
+		}
+		long duration = System.currentTimeMillis() - begin;
+
+		PrintStream output = DecisionTree.setupOutputStream("C45_Rules.txt");
+		tree.printTree(output);
+		output.flush();
+		output.close();
+		System.out.println("Learned " + tree.getRecords() + " records into " + tree.getNodeCount()
+				+ " nodes in " + duration + " milliseconds, wrote C45_Rules.txt.");
+	}
+}
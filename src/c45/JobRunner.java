@@ -0,0 +1,371 @@
+package c45;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many training jobs from job files in one JVM, without prompts.
+ * Each line of a job file is one job, given as key=value settings
+ * separated by spaces. Blank lines and lines starting with # are skipped.
+ * 	name		The name of the job, used to name its output files. Required.
+ * 	train		The training csv or snapshot file. Required.
+ * 	target		The target column, by name or by number starting at 1. Required.
+ * 	test		A testing csv file to score the model with.
+ * 	out			The directory to write the output files to. Defaults to the current directory.
+ * 	min_node_size, max_depth, min_gain, histogram_bins
+ * 				The tree options, each defaulting to 0.
+ * 	trees, forest_attributes, seed
+ * 				Random forest options. trees defaults to 0, which trains a single tree.
+ * 	metrics		true to write build metrics with the rules.
+ * 	model		true to save a single tree as name_Model.c45m, see CompiledTree.read.
+ * 	format		text, json or csv, the format of a single tree's rules. Defaults to text.
+ * 				Rules in json or csv are written alone to name_Rules.json or name_Rules.csv.
+ * For example:
+ * 	name=math_d4 train=math.csv target=g3 max_depth=4 min_node_size=10 test=math.csv
+ * Every training file is loaded once and shared by the jobs that use it.
+ * Jobs then run concurrently, each as a task in one pool, and write
+ * name_Rules.txt, holding the rules or forest size and the test results,
+ * and, when tested, name_Predictions.txt. A line per job is printed as
+ * each job finishes. A job that fails while running is reported with the
+ * file it was working on and the other jobs carry on.
+ * Usage: java c45.JobRunner jobs.txt [more job files] [threads=n]
+ * @author Matthew Tetford
+ */
+public final class JobRunner {
+	private final ForkJoinPool pool;
+	private final ArrayList<HashMap<String, String>> jobs;
+	private final HashMap<String, Dataset> datasets;
+	private final AtomicInteger failed_jobs;
+
+	/**
+	 * Creates a runner with no jobs.
+	 * @param _pool (ForkJoinPool): The pool to load, build and score in, or null to run jobs one by one.
+	 */
+	public JobRunner(ForkJoinPool _pool){
+		pool = _pool;
+		jobs = new ArrayList<HashMap<String, String>>();
+		datasets = new HashMap<String, Dataset>();
+		failed_jobs = new AtomicInteger();
+	}
+
+	/**
+	 * Reads the jobs of a job file. Stops with an error on a malformed line.
+	 * @param filename (String): The job file.
+	 */
+	public void readJobs(String filename){
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8));
+			try {
+				String line;
+				int number = 0;
+				while((line = in.readLine()) != null){
+					number++;
+					line = line.trim();
+					if(line.isEmpty() || line.startsWith("#")){
+						continue;
+					}
+					addJob(parseJob(line, filename + " line " + number));
+				}
+			} finally {
+				in.close();
+			}
+		}
+		catch (FileNotFoundException e) {
+			System.err.println("Job file not found: " + filename);
+			System.exit(1);
+		}
+		catch (IOException e) {
+			System.err.println("IO Error");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Adds a job, given as settings by key.
+	 * @param job (HashMap<String, String>): The settings of the job.
+	 */
+	public void addJob(HashMap<String, String> job){
+		for(String key : new String[]{"name", "train", "target"}){
+			if(!job.containsKey(key)){
+				System.err.println("Job " + job + " has no " + key);
+				System.exit(1);
+			}
+		}
+		jobs.add(job);
+	}
+
+	private static HashMap<String, String> parseJob(String line, String where){
+		HashMap<String, String> job = new LinkedHashMap<String, String>();
+		for(String setting : line.split("\\s+")){
+			int equals = setting.indexOf('=');
+			if(equals <= 0){
+				System.err.println(where + ": expected key=value, got " + setting);
+				System.exit(1);
+			}
+			job.put(setting.substring(0, equals).toLowerCase(), setting.substring(equals + 1));
+		}
+		return job;
+	}
+
+	/**
+	 * Loads every training file once, then runs every job concurrently.
+	 */
+	public void run(){
+		for(HashMap<String, String> job : jobs){
+			String train = job.get("train");
+			if(!new File(train).canRead()){
+				System.err.println("Job " + job.get("name") + " can't read training file " + train);
+				System.exit(1);
+			}
+			if(!datasets.containsKey(train)){
+				Dataset dataset = Dataset.isSnapshot(train) ? Dataset.readSnapshot(train) : new Dataset(train, pool);
+				println("Read " + train + ": " + dataset.getLoadStatistics() + ".");
+				datasets.put(train, dataset);
+			}
+		}
+
+		//Set every job up before any runs, so a bad setting stops the run before any output
+		final ArrayList<JobTask> tasks = new ArrayList<JobTask>();
+		for(HashMap<String, String> job : jobs){
+			tasks.add(new JobTask(job, datasets.get(job.get("train"))));
+		}
+
+		if(pool == null){
+			for(JobTask task : tasks){
+				task.invoke();
+			}
+		}else{
+			pool.invoke(new RecursiveAction(){
+				private static final long serialVersionUID = 1L;
+				protected void compute(){
+					ForkJoinTask.invokeAll(tasks);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Trains, tests and writes the output of one job.
+	 */
+	private final class JobTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final String name;
+		private final String training_filename;
+		private final Dataset dataset;
+		private final Trainer trainer;
+		private final String testing_filename;
+		private final File rules_file;
+		private final TreeRenderer.Format rules_format;
+		private final File predictions_file;
+		private final File model_file;
+		private final BuildMetrics metrics;
+
+		JobTask(HashMap<String, String> job, Dataset _dataset){
+			name = job.get("name");
+			training_filename = job.get("train");
+			dataset = _dataset;
+			trainer = new Trainer(findTarget(dataset, job.get("target")));
+			trainer.setPool(pool);
+			trainer.setMinNodeSize(intSetting(job, "min_node_size"));
+			trainer.setMaxDepth(intSetting(job, "max_depth"));
+			trainer.setMinSplitGain(doubleSetting(job, "min_gain"));
+			trainer.setHistogramBins(intSetting(job, "histogram_bins"));
+			trainer.setForest(intSetting(job, "trees"), intSetting(job, "forest_attributes"),
+					job.containsKey("seed") ? (long)doubleSetting(job, "seed") : 1);
+			metrics = Boolean.parseBoolean(job.get("metrics")) ? new BuildMetrics() : null;
+			trainer.setMetrics(metrics);
+
+			testing_filename = job.get("test");
+			if(testing_filename != null && !(new File(testing_filename).isFile() && new File(testing_filename).canRead())){
+				System.err.println("Job " + name + " can't read testing file " + testing_filename);
+				System.exit(1);
+			}
+			File out = new File(job.containsKey("out") ? job.get("out") : ".");
+			if((!out.isDirectory() && !out.mkdirs()) || !out.canWrite()){
+				System.err.println("Job " + name + " can't write to " + out);
+				System.exit(1);
+			}
+			rules_format = job.containsKey("format") ? TreeRenderer.Format.parse(job.get("format")) : TreeRenderer.Format.TEXT;
+			if(rules_format == null){
+				System.err.println("Job " + name + " has an unknown format " + job.get("format"));
+				System.exit(1);
+			}
+			rules_file = new File(out, name + "_Rules" + (trainer.isForest() ? ".txt" : rules_format.getExtension()));
+			predictions_file = new File(out, name + "_Predictions.txt");
+			model_file = Boolean.parseBoolean(job.get("model")) ? new File(out, name + "_Model.c45m") : null;
+		}
+
+		/**
+		 * Runs the job. A failure fails only this job, which is reported
+		 * along with the file it was working on, and the other jobs go on.
+		 */
+		protected void compute(){
+			String file = training_filename;
+			try {
+				long begin = System.currentTimeMillis();
+				C45Node root = null;
+				Predictor model;
+				if(trainer.isForest()){
+					model = trainer.buildForest(dataset);
+				}else{
+					root = trainer.buildTree(dataset);
+					CompiledTree tree = CompiledTree.compile(root, trainer.getTargetClass());
+					if(model_file != null){
+						file = model_file.getPath();
+						ModelFile.writeFile(file, tree);
+					}
+					model = tree;
+				}
+				long duration = System.currentTimeMillis() - begin;
+
+				ScoreReport report = null;
+				if(testing_filename != null){
+					file = testing_filename;
+					report = new BatchScorer(model, pool).scoreFile(testing_filename, predictions_file.getPath());
+				}
+
+				file = rules_file.getPath();
+				PrintStream output = new PrintStream(new BufferedOutputStream(new FileOutputStream(rules_file), 1 << 16));
+				if(root != null && rules_format != TreeRenderer.Format.TEXT){
+					//Rules meant to be read back are written alone
+					new TreeRenderer(trainer.getTargetClass(), rules_format, output).render(root);
+				}else{
+					if(root != null){
+						trainer.printTree(root, output);
+					}else{
+						RandomForest forest = (RandomForest)model;
+						output.format("Random forest for %s: %d trees, %d nodes.%n",
+								trainer.getTargetClass().toString(), forest.getTreeCount(), forest.getNodeCount());
+					}
+					output.format("%n");
+					if(report != null){
+						report.print(output);
+					}
+					output.format("%nTraining took %d milliseconds.%n", duration);
+					if(metrics != null){
+						metrics.print(output);
+					}
+				}
+				output.close();
+				//PrintStream keeps write errors to itself until asked
+				if(output.checkError()){
+					throw new IOException("couldn't write the rules");
+				}
+
+				String accuracy = (report != null) ? String.format(", accuracy %.2f%c", report.getAccuracy() * 100, '%') : "";
+				println(String.format("Job %s: trained in %d milliseconds%s, wrote %s.", name, duration, accuracy, rules_file));
+			}
+			catch (IOException | RuntimeException e) {
+				failed_jobs.incrementAndGet();
+				String message = (e.getMessage() != null) ? e.getMessage() : e.toString();
+				System.err.println("Job " + name + " failed on " + file + ": " + message);
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of jobs that have failed, whose errors were printed as they failed.
+	 * @return (int): The number of failed jobs.
+	 */
+	public int getFailedCount(){
+		return failed_jobs.get();
+	}
+
+	private static Value findTarget(Dataset dataset, String target){
+		Value[] headers = dataset.getAttributeArray();
+		if(target.matches("\\d+")){
+			int column = Integer.parseInt(target);
+			if(column >= 1 && column <= headers.length){
+				return headers[column-1];
+			}
+		}
+		for(Value header : headers){
+			if(header.toString().equalsIgnoreCase(target)){
+				return header;
+			}
+		}
+		System.err.println("No target column " + target);
+		System.exit(1);
+		return null;
+	}
+
+	private static int intSetting(HashMap<String, String> job, String key){
+		String value = job.get(key);
+		if(value == null){
+			return 0;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			System.err.println("Job " + job.get("name") + ": " + key + " must be a whole number, got " + value);
+			System.exit(1);
+			return 0;
+		}
+	}
+
+	private static double doubleSetting(HashMap<String, String> job, String key){
+		String value = job.get(key);
+		if(value == null){
+			return 0;
+		}
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			System.err.println("Job " + job.get("name") + ": " + key + " must be a number, got " + value);
+			System.exit(1);
+			return 0;
+		}
+	}
+
+	private static synchronized void println(String line){
+		System.out.println(line);
+	}
+
+	public static void main(String[] args){
+		int threads = Runtime.getRuntime().availableProcessors();
+		ArrayList<String> job_files = new ArrayList<String>();
+		for(String arg : args){
+			if(arg.startsWith("threads=")){
+				threads = Integer.parseInt(arg.substring("threads=".length()));
+			}else{
+				job_files.add(arg);
+			}
+		}
+		if(job_files.isEmpty()){
+			System.err.println("Usage: java c45.JobRunner jobs.txt [more job files] [threads=n]");
+			System.exit(1);
+		}
+
+		ForkJoinPool pool = (threads > 1) ? new ForkJoinPool(threads) : null;
+		JobRunner runner = new JobRunner(pool);
+		for(String job_file : job_files){
+			runner.readJobs(job_file);
+		}
+		long begin = System.currentTimeMillis();
+		runner.run();
+		int failed = runner.getFailedCount();
+		println("Ran " + runner.jobs.size() + " jobs in " + (System.currentTimeMillis() - begin) + " milliseconds"
+				+ ((failed > 0) ? ", " + failed + " failed." : "."));
+		if(pool != null){
+			pool.shutdown();
+		}
+		if(failed > 0){
+			System.exit(1);
+		}
+	}
+}
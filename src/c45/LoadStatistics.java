@@ -0,0 +1,104 @@
+package c45;
+
+/**
+ * Records how long a Dataset took to load from a file, and how much of
+ * that went on settling the type of each column and building its storage.
+ * @author Matthew Tetford
+ */
+public final class LoadStatistics {
+	private final long rows;
+	private final long bytes;
+	private final long nanos;
+	private final long type_nanos;
+
+	/**
+	 * Creates a record of one load.
+	 * @param _rows (long): The number of data rows read, not counting the header row.
+	 * @param _bytes (long): The number of bytes read.
+	 * @param _nanos (long): The time the load took in nanoseconds.
+	 */
+	public LoadStatistics(long _rows, long _bytes, long _nanos){
+		this(_rows, _bytes, _nanos, 0);
+	}
+
+	/**
+	 * Creates a record of one load that settled column types.
+	 * @param _rows (long): The number of data rows read, not counting the header row.
+	 * @param _bytes (long): The number of bytes read.
+	 * @param _nanos (long): The time the load took in nanoseconds.
+	 * @param _type_nanos (long): The part of that time spent settling column types, in nanoseconds.
+	 */
+	public LoadStatistics(long _rows, long _bytes, long _nanos, long _type_nanos){
+		rows = _rows;
+		bytes = _bytes;
+		nanos = _nanos;
+		type_nanos = _type_nanos;
+	}
+
+	/**
+	 * Gets the number of data rows read, not counting the header row.
+	 * @return (long): The number of rows.
+	 */
+	public long getRows(){
+		return rows;
+	}
+
+	/**
+	 * Gets the number of bytes read.
+	 * @return (long): The number of bytes.
+	 */
+	public long getBytes(){
+		return bytes;
+	}
+
+	/**
+	 * Gets the time the load took.
+	 * @return (long): The time in milliseconds.
+	 */
+	public long getMillis(){
+		return nanos / 1000000L;
+	}
+
+	/**
+	 * Gets the time the load took.
+	 * @return (long): The time in nanoseconds.
+	 */
+	public long getNanos(){
+		return nanos;
+	}
+
+	/**
+	 * Gets the part of the load spent settling whether each column is
+	 * numeric or nominal and building the column storage. Snapshots store
+	 * their types, so this is 0 for them.
+	 * @return (long): The time in nanoseconds.
+	 */
+	public long getTypeDetectionNanos(){
+		return type_nanos;
+	}
+
+	/**
+	 * Gets the number of rows read per second.
+	 * @return (double): The throughput in rows per second.
+	 */
+	public double getRowsPerSecond(){
+		return (nanos > 0) ? rows * 1e9 / nanos : 0;
+	}
+
+	/**
+	 * Gets the number of megabytes read per second.
+	 * @return (double): The throughput in megabytes per second.
+	 */
+	public double getMegabytesPerSecond(){
+		return (nanos > 0) ? (bytes / 1048576.0) * 1e9 / nanos : 0;
+	}
+
+	/**
+	 * Returns a one line summary of the load.
+	 * @return (String): The summary.
+	 */
+	public String toString(){
+		return String.format("%d rows in %d milliseconds (%.0f rows/sec, %.1f MB/sec)",
+				rows, getMillis(), getRowsPerSecond(), getMegabytesPerSecond());
+	}
+}
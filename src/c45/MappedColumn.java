@@ -0,0 +1,26 @@
+package c45;
+
+import java.nio.IntBuffer;
+
+/**
+ * A Column read straight from a memory mapped snapshot file.
+ * The cells stay in the page cache, so they are shared by every
+ * Dataset and every JVM that maps the same file.
+ * Used internally by Dataset for columnar storage.
+ * @author Matthew Tetford
+ */
+final class MappedColumn extends Column {
+	private final IntBuffer data;
+
+	MappedColumn(IntBuffer _data){
+		data = _data;
+	}
+
+	int get(int row){
+		return data.get(row);
+	}
+
+	int size(){
+		return data.limit();
+	}
+}
@@ -0,0 +1,130 @@
+package c45;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non negative longs, such as times or row counts, kept
+ * as counts per power of two so recording never allocates and many
+ * threads can record at once. Bucket b holds values from 2^(b-1) up to,
+ * but not including, 2^b, and bucket 0 holds zero, so percentiles are
+ * accurate to within a factor of two.
+ * @author Matthew Tetford
+ */
+public final class MetricHistogram {
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray counts;
+	private final LongAdder count;
+	private final LongAdder sum;
+	private final AtomicLong min;
+	private final AtomicLong max;
+
+	/**
+	 * Creates an empty histogram.
+	 */
+	public MetricHistogram(){
+		counts = new AtomicLongArray(BUCKETS);
+		count = new LongAdder();
+		sum = new LongAdder();
+		min = new AtomicLong(Long.MAX_VALUE);
+		max = new AtomicLong(0);
+	}
+
+	/**
+	 * Records a value. Negative values are recorded as zero.
+	 * @param value (long): The value.
+	 */
+	public void record(long value){
+		value = Math.max(value, 0);
+		counts.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+		count.increment();
+		sum.add(value);
+		min.accumulateAndGet(value, Math::min);
+		max.accumulateAndGet(value, Math::max);
+	}
+
+	/**
+	 * Gets the number of values recorded.
+	 * @return (long): The count.
+	 */
+	public long getCount(){
+		return count.sum();
+	}
+
+	/**
+	 * Gets the sum of the values recorded.
+	 * @return (long): The sum.
+	 */
+	public long getSum(){
+		return sum.sum();
+	}
+
+	/**
+	 * Gets the smallest value recorded.
+	 * @return (long): The minimum, or 0 if nothing was recorded.
+	 */
+	public long getMin(){
+		return (getCount() > 0) ? min.get() : 0;
+	}
+
+	/**
+	 * Gets the largest value recorded.
+	 * @return (long): The maximum.
+	 */
+	public long getMax(){
+		return max.get();
+	}
+
+	/**
+	 * Gets the mean of the values recorded.
+	 * @return (double): The mean, or 0 if nothing was recorded.
+	 */
+	public double getMean(){
+		long values = getCount();
+		return (values > 0) ? (double)getSum() / values : 0;
+	}
+
+	/**
+	 * Gets an upper bound on a percentile of the values recorded: the top
+	 * of the power of two bucket the percentile falls in, or the maximum
+	 * if that is lower.
+	 * @param percentile (double): The percentile, between 0 and 100.
+	 * @return (long): The bound, or 0 if nothing was recorded.
+	 */
+	public long getPercentile(double percentile){
+		long values = getCount();
+		if(values == 0){
+			return 0;
+		}
+		long rank = (long)Math.ceil(values * Math.min(Math.max(percentile, 0), 100) / 100.0);
+		long seen = 0;
+		for(int b = 0; b < BUCKETS; b++){
+			seen += counts.get(b);
+			if(seen >= Math.max(rank, 1)){
+				long top = (b == 0) ? 0 : (b >= 63 ? Long.MAX_VALUE : (1L << b) - 1);
+				return Math.min(top, getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Gets the number of values recorded in a power of two bucket.
+	 * @param bucket (int): The bucket, 0 for zero, b for values from 2^(b-1) to below 2^b.
+	 * @return (long): The count.
+	 */
+	public long getBucketCount(int bucket){
+		return counts.get(bucket);
+	}
+
+	/**
+	 * Returns a one line summary of the histogram.
+	 * @return (String): The summary.
+	 */
+	public String toString(){
+		return String.format("count %d, mean %.1f, p50 <= %d, p99 <= %d, max %d",
+				getCount(), getMean(), getPercentile(50), getPercentile(99), getMax());
+	}
+}
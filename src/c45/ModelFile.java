@@ -0,0 +1,245 @@
+package c45;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads and writes binary model files of a CompiledTree.
+ * Everything is little endian. The file starts with a fixed header:
+ *
+ * 		int magic, int version, int width, int target, int nodes, int table, long data_start
+ *
+ * followed by one entry per column of the training data, laid out as in
+ * a Snapshot: a type byte (1 numeric, 0 nominal), the header value and,
+ * for nominal columns, the dictionary. Then comes the class dictionary.
+ * The node arrays start at data_start, which is a multiple of 8: feature,
+ * threshold, first_child, table_start, table_size and prediction with
+ * nodes ints each, child_table with table ints, and last one byte per
+ * node that is 1 for numeric splits.
+ * Reading maps the file and copies each array out in one go, so a model
+ * loads in about the time it takes to read it from the page cache, and
+ * predicting still runs on plain arrays.
+ * Used internally by CompiledTree to save and load models.
+ * @author Matthew Tetford
+ */
+final class ModelFile {
+	static final int MAGIC = 0x4D353443; //"C45M" when read as little endian bytes
+	static final int VERSION = 1;
+	private static final int HEADER_BYTES = 32;
+	private static final int INT_ARRAYS = 6;
+
+	private ModelFile(){
+	}
+
+	/**
+	 * Writes a tree to a model file.
+	 * @param filename (String): The file to write.
+	 * @param tree (CompiledTree): The tree to save.
+	 */
+	static void write(String filename, CompiledTree tree){
+		try {
+			writeFile(filename, tree);
+		}
+		catch (FileNotFoundException e) {
+			System.err.println("Could not create model file " + filename);
+			System.exit(1);
+		}
+		catch (IOException e) {
+			System.err.println("IO Error writing " + filename);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Writes a tree to a model file, leaving errors to the caller.
+	 * @param filename (String): The file to write.
+	 * @param tree (CompiledTree): The tree to save.
+	 * @throws IOException If the file can't be written.
+	 */
+	static void writeFile(String filename, CompiledTree tree) throws IOException{
+		FileOutputStream out = new FileOutputStream(filename);
+		try {
+			write(out.getChannel(), tree);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void write(FileChannel channel, CompiledTree tree) throws IOException{
+		Value[] headers = tree.headers;
+		int width = headers.length;
+		int nodes = tree.feature.length;
+
+		//Work out the size of the header and dictionaries so the arrays can start on an 8 byte boundary
+		long meta_bytes = HEADER_BYTES;
+		for(int x = 0; x < width; x++){
+			meta_bytes += 1 + Snapshot.valueBytes(headers[x]);
+			if(tree.dictionaries[x] != null){
+				meta_bytes += Snapshot.dictionaryBytes(tree.dictionaries[x]);
+			}
+		}
+		meta_bytes += Snapshot.dictionaryBytes(tree.class_dictionary);
+		long data_start = (meta_bytes + 7) & ~7L;
+
+		ByteBuffer buffer = ByteBuffer.allocate(CsvParser.BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(tree.target)
+				.putInt(nodes).putInt(tree.child_table.length).putLong(data_start);
+		for(int x = 0; x < width; x++){
+			ValueDictionary dictionary = tree.dictionaries[x];
+			buffer = Snapshot.room(channel, buffer, 1);
+			buffer.put((byte)(dictionary == null ? 1 : 0));
+			buffer = Snapshot.putValue(channel, buffer, headers[x]);
+			if(dictionary != null){
+				buffer = Snapshot.putDictionary(channel, buffer, dictionary);
+			}
+		}
+		buffer = Snapshot.putDictionary(channel, buffer, tree.class_dictionary);
+		buffer = Snapshot.room(channel, buffer, 8);
+		for(long b = meta_bytes; b < data_start; b++){
+			buffer.put((byte)0);
+		}
+
+		int[][] arrays = {tree.feature, tree.threshold, tree.first_child, tree.table_start,
+				tree.table_size, tree.prediction, tree.child_table};
+		for(int[] array : arrays){
+			for(int value : array){
+				if(buffer.remaining() < 4){
+					Snapshot.flush(channel, buffer);
+				}
+				buffer.putInt(value);
+			}
+		}
+		for(boolean numeric : tree.numeric){
+			if(!buffer.hasRemaining()){
+				Snapshot.flush(channel, buffer);
+			}
+			buffer.put((byte)(numeric ? 1 : 0));
+		}
+		Snapshot.flush(channel, buffer);
+	}
+
+	/**
+	 * Maps a model file and loads the tree in it.
+	 * @param filename (String): The file to read.
+	 * @return (CompiledTree): The tree.
+	 */
+	static CompiledTree read(String filename){
+		try {
+			FileInputStream in = new FileInputStream(filename);
+			try {
+				FileChannel channel = in.getChannel();
+				return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN));
+			} finally {
+				in.close();
+			}
+		}
+		catch (FileNotFoundException e) {
+			System.err.println("Model file not found");
+			System.exit(1);
+		}
+		catch (IOException e) {
+			System.err.println("IO Error");
+			System.exit(1);
+		}
+		return null;
+	}
+
+	private static CompiledTree read(ByteBuffer file){
+		long size = file.capacity();
+		if(size < HEADER_BYTES){
+			badModel("file is too short");
+		}
+		if(file.getInt() != MAGIC){
+			badModel("not a model file");
+		}
+		int version = file.getInt();
+		if(version != VERSION){
+			badModel("unsupported version " + version);
+		}
+		int width = file.getInt();
+		int target = file.getInt();
+		int nodes = file.getInt();
+		int table = file.getInt();
+		long data_start = file.getLong();
+		if(target < 0 || target >= width || nodes < 1 || table < 0
+				|| data_start + 4L * (INT_ARRAYS * (long)nodes + table) + nodes != size){
+			badModel("file size does not match its header");
+		}
+
+		Value[] headers = new Value[width];
+		ValueDictionary[] dictionaries = new ValueDictionary[width];
+		for(int x = 0; x < width; x++){
+			boolean numeric = (file.get() == 1);
+			headers[x] = Snapshot.getValue(file);
+			headers[x].attribute = true;
+			headers[x].attribute_is_numeric = numeric;
+			if(!numeric){
+				dictionaries[x] = Snapshot.getDictionary(file);
+			}
+		}
+		ValueDictionary class_dictionary = Snapshot.getDictionary(file);
+
+		file.position((int)data_start);
+		IntBuffer ints = file.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+		int[] feature = getInts(ints, nodes);
+		int[] threshold = getInts(ints, nodes);
+		int[] first_child = getInts(ints, nodes);
+		int[] table_start = getInts(ints, nodes);
+		int[] table_size = getInts(ints, nodes);
+		int[] prediction = getInts(ints, nodes);
+		int[] child_table = getInts(ints, table);
+
+		file.position((int)(data_start + 4L * (INT_ARRAYS * (long)nodes + table)));
+		boolean[] numeric = new boolean[nodes];
+		for(int n = 0; n < nodes; n++){
+			numeric[n] = (file.get() == 1);
+		}
+
+		//Check every link so a damaged file fails here rather than in predict
+		for(int n = 0; n < nodes; n++){
+			int x = feature[n];
+			if(x < -1 || x >= width){
+				badModel("node " + n + " tests a missing column");
+			}
+			if(prediction[n] < 0 || prediction[n] >= class_dictionary.size()){
+				badModel("node " + n + " predicts a missing class");
+			}
+			if(x < 0){
+				continue;
+			}
+			if(numeric[n]){
+				if(first_child[n] <= n || first_child[n] + 1 >= nodes){
+					badModel("node " + n + " has missing children");
+				}
+			}else if(table_start[n] < 0 || table_size[n] < 0 || (long)table_start[n] + table_size[n] > table){
+				badModel("node " + n + " has a missing child table");
+			}else{
+				for(int c = table_start[n]; c < table_start[n] + table_size[n]; c++){
+					if(child_table[c] != -1 && (child_table[c] <= n || child_table[c] >= nodes)){
+						badModel("node " + n + " has missing children");
+					}
+				}
+			}
+		}
+
+		return new CompiledTree(feature, numeric, threshold, first_child, table_start, table_size,
+				child_table, prediction, class_dictionary, headers, dictionaries, target);
+	}
+
+	private static int[] getInts(IntBuffer ints, int count){
+		int[] array = new int[count];
+		ints.get(array);
+		return array;
+	}
+
+	private static void badModel(String reason){
+		System.err.println("Bad model file: " + reason);
+		System.exit(1);
+	}
+}
@@ -0,0 +1,84 @@
+package c45;
+
+/**
+ * Class counts per quantile bucket of every bucketed column, for the
+ * rows of one node. Counts for bucket b and class c of column x are at
+ * counts[x][b * classes + c].
+ * A node's histograms are counted from its rows only for the smaller
+ * children of a split. The largest child gets its parent's histograms
+ * less those of its siblings.
+ * Used internally by TreeBuilder.
+ * @author Matthew Tetford
+ */
+final class NodeHistograms {
+	final int[][] counts;
+	final int classes;
+
+	/**
+	 * Wraps counts taken elsewhere, such as by ExternalBuilder.
+	 * @param _counts (int[][]): The counts of each column, see above, null for columns that aren't bucketed.
+	 * @param _classes (int): The number of class codes.
+	 */
+	NodeHistograms(int[][] _counts, int _classes){
+		counts = _counts;
+		classes = _classes;
+	}
+
+	/**
+	 * Counts the histograms of a node from its rows.
+	 * @param dataset (Dataset): The rows of the node.
+	 * @param bins (QuantileBins): The buckets of the training data.
+	 * @param target (int): The column of the target class.
+	 * @return (NodeHistograms): The histograms.
+	 */
+	static NodeHistograms count(Dataset dataset, QuantileBins bins, int target){
+		Column class_column = dataset.getClassColumn(target);
+		int classes = dataset.getClassCount(target);
+		int[][] counts = new int[dataset.width][];
+		for(int x = 0; x < dataset.width; x++){
+			if(x == target || !bins.isBinned(x)){
+				continue;
+			}
+			int[] histogram = new int[bins.size(x) * classes];
+			for(int y = 1; y < dataset.height; y++){
+				int row = dataset.row(y);
+				histogram[bins.bin(x, row) * classes + class_column.get(row)]++;
+			}
+			counts[x] = histogram;
+		}
+		return new NodeHistograms(counts, classes);
+	}
+
+	/**
+	 * Takes another node's counts away from these, in place.
+	 * @param other (NodeHistograms): The histograms of a sibling.
+	 */
+	void subtract(NodeHistograms other){
+		for(int x = 0; x < counts.length; x++){
+			if(counts[x] != null){
+				int[] histogram = counts[x];
+				int[] take = other.counts[x];
+				for(int i = 0; i < histogram.length; i++){
+					histogram[i] -= take[i];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Estimates the memory one node's histograms take.
+	 * @param dataset (Dataset): The training data.
+	 * @param bins (QuantileBins): The buckets of the training data.
+	 * @param target (int): The column of the target class.
+	 * @return (long): The number of counts per node.
+	 */
+	static long cells(Dataset dataset, QuantileBins bins, int target){
+		long cells = 0;
+		for(int x = 0; x < dataset.width; x++){
+			if(x != target && bins.isBinned(x)){
+				cells += (long)bins.size(x) * dataset.getClassCount(target);
+			}
+		}
+		return cells;
+	}
+}
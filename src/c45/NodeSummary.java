@@ -0,0 +1,319 @@
+package c45;
+
+import java.util.Arrays;
+
+/**
+ * What a finished node needs to remember about its rows once its Dataset
+ * has been let go: how many rows reached it, how many of those rows had
+ * each target value, the most common target value and, for numeric
+ * targets, the minimum, maximum, mean and median.
+ * Counts are kept only for the target values the node actually has, so a
+ * summary costs a few bytes per distinct value rather than per row.
+ * @author Matthew Tetford
+ */
+public final class NodeSummary {
+	private final int rows;
+	private final int[] codes;
+	private final int[] counts;
+	private final ValueDictionary classes;
+	private final int majority;
+	private final boolean numeric;
+	private int min;
+	private int max;
+	private double average;
+	private int median;
+
+	/**
+	 * Counts the target values of a node's rows.
+	 * @param dataset (Dataset): The rows of the node.
+	 * @param target_class (Value): The attribute the tree classifies by.
+	 */
+	NodeSummary(Dataset dataset, Value target_class){
+		int target = dataset.getHeaderIndex(target_class);
+		Column column = dataset.getClassColumn(target);
+		classes = dataset.getClassDictionary(target);
+		rows = dataset.height-1;
+		numeric = target_class.attribute_is_numeric;
+
+		int class_count = classes.size();
+		int distinct = 0;
+		int[] found_codes;
+		int[] found_counts;
+		if(rows * 8L >= class_count){
+			//Count into a table of every class
+			int[] table = new int[class_count];
+			for(int y = 1; y <= rows; y++){
+				if(table[column.get(dataset.row(y))]++ == 0){
+					distinct++;
+				}
+			}
+			found_codes = new int[distinct];
+			found_counts = new int[distinct];
+			int i = 0;
+			for(int c = 0; c < class_count; c++){
+				if(table[c] > 0){
+					found_codes[i] = c;
+					found_counts[i++] = table[c];
+				}
+			}
+		}else{
+			//Few rows and many classes, sort the codes instead
+			int[] sorted = new int[rows];
+			for(int y = 1; y <= rows; y++){
+				sorted[y-1] = column.get(dataset.row(y));
+			}
+			Arrays.sort(sorted);
+			for(int i = 0; i < rows; i++){
+				if(i == 0 || sorted[i] != sorted[i-1]){
+					distinct++;
+				}
+			}
+			found_codes = new int[distinct];
+			found_counts = new int[distinct];
+			int i = -1;
+			for(int r = 0; r < rows; r++){
+				if(r == 0 || sorted[r] != sorted[r-1]){
+					found_codes[++i] = sorted[r];
+				}
+				found_counts[i]++;
+			}
+		}
+		codes = found_codes;
+		counts = found_counts;
+		majority = findMajority();
+
+		if(numeric && rows > 0){
+			summarizeNumbers();
+		}
+	}
+
+	/**
+	 * Summarizes rows from their class counts, for nodes whose rows
+	 * were counted without a Dataset, as ExternalBuilder does.
+	 * @param class_counts (int[]): The number of rows of every class code.
+	 * @param _classes (ValueDictionary): The dictionary of the class codes.
+	 * @param _numeric (boolean): True if the target is numeric.
+	 */
+	NodeSummary(int[] class_counts, ValueDictionary _classes, boolean _numeric){
+		classes = _classes;
+		numeric = _numeric;
+		int total = 0;
+		int distinct = 0;
+		for(int count : class_counts){
+			total += count;
+			if(count > 0){
+				distinct++;
+			}
+		}
+		rows = total;
+		codes = new int[distinct];
+		counts = new int[distinct];
+		int i = 0;
+		for(int c = 0; c < class_counts.length; c++){
+			if(class_counts[c] > 0){
+				codes[i] = c;
+				counts[i++] = class_counts[c];
+			}
+		}
+		majority = findMajority();
+
+		if(numeric && rows > 0){
+			summarizeNumbers();
+		}
+	}
+
+	/**
+	 * Adds the class counts of more rows, such as rows appended to the
+	 * training data, to the counts of this summary.
+	 * @param class_counts (int[]): The number of added rows of every class code.
+	 * @param _classes (ValueDictionary): The dictionary of the class codes, which must hold every value counted here.
+	 * @return (NodeSummary): The summary of both sets of rows, or null if a value counted here isn't in the dictionary.
+	 */
+	NodeSummary add(int[] class_counts, ValueDictionary _classes){
+		int[] merged = Arrays.copyOf(class_counts, Math.max(class_counts.length, _classes.size()));
+		for(int i = 0; i < codes.length; i++){
+			int code = _classes.lookup(classes.decode(codes[i]));
+			if(code < 0){
+				return null;
+			}
+			merged[code] += counts[i];
+		}
+		return new NodeSummary(merged, _classes, numeric);
+	}
+
+	/**
+	 * Counts the target values with more rows here than in an earlier
+	 * summary of the same node.
+	 * @param earlier (NodeSummary): The earlier summary.
+	 * @return (int): The number of values that have gained rows.
+	 */
+	int grownCount(NodeSummary earlier){
+		int grown = 0;
+		for(int i = 0; i < codes.length; i++){
+			if(counts[i] > earlier.getCount(classes.decode(codes[i]))){
+				grown++;
+			}
+		}
+		return grown;
+	}
+
+	/**
+	 * Calculates the entropy of the target over the node's rows.
+	 * @return (double): The entropy.
+	 */
+	double entropy(){
+		return DecisionTree.entropy(counts, rows);
+	}
+
+	private int findMajority(){
+		//Ties go to the value that appears first in the training data
+		int best = -1;
+		for(int i = 0; i < codes.length; i++){
+			if(best < 0 || counts[i] > counts[best]){
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Works out the minimum, maximum, mean and median from the counts.
+	 * The median follows Dataset.getMedian.
+	 */
+	private void summarizeNumbers(){
+		long[] numbers = new long[codes.length];
+		for(int i = 0; i < codes.length; i++){
+			//Pack each number with its index so one sort orders both
+			numbers[i] = ((long)classes.decode(codes[i]).num_value << 32) | i;
+		}
+		Arrays.sort(numbers);
+
+		min = (int)(numbers[0] >> 32);
+		max = (int)(numbers[numbers.length-1] >> 32);
+		long sum = 0;
+		for(int i = 0; i < codes.length; i++){
+			sum += (long)classes.decode(codes[i]).num_value * counts[i];
+		}
+		average = (double)sum / (double)rows;
+
+		//Odd counts take the number just below the middle, as Dataset.getMedian does
+		int lower = numberAt(numbers, Math.max((rows/2) - 1, 0));
+		median = (rows % 2 == 1) ? lower : (lower + numberAt(numbers, rows/2)) / 2;
+	}
+
+	/**
+	 * Finds the number at the given position of the sorted rows.
+	 */
+	private int numberAt(long[] numbers, int position){
+		int seen = 0;
+		for(long packed : numbers){
+			seen += counts[(int)packed];
+			if(position < seen){
+				return (int)(packed >> 32);
+			}
+		}
+		return (int)(numbers[numbers.length-1] >> 32);
+	}
+
+	/**
+	 * Gets the number of rows that reached the node.
+	 * @return (int): The number of rows.
+	 */
+	public int getRows(){
+		return rows;
+	}
+
+	/**
+	 * Gets the number of distinct target values among the node's rows.
+	 * @return (int): The number of distinct values.
+	 */
+	public int getDistinctCount(){
+		return codes.length;
+	}
+
+	/**
+	 * Gets the most common target value among the node's rows.
+	 * Ties go to the value that appears first in the training data.
+	 * @return (Value): The most common value, or an empty Value if the node has no rows.
+	 */
+	public Value getMajority(){
+		return (majority >= 0) ? classes.decode(codes[majority]) : new Value();
+	}
+
+	/**
+	 * Gets the number of the node's rows with the given target value.
+	 * @param value (Value): The target value.
+	 * @return (int): The number of rows.
+	 */
+	public int getCount(Value value){
+		int code = classes.lookup(value);
+		int i = (code >= 0) ? Arrays.binarySearch(codes, code) : -1;
+		return (i >= 0) ? counts[i] : 0;
+	}
+
+	/**
+	 * Gets the fraction of the node's rows with the given target value.
+	 * @param value (Value): The target value.
+	 * @return (double): The fraction of rows.
+	 */
+	public double getAccuracy(Value value){
+		return (double)getCount(value) / (double)rows;
+	}
+
+	/**
+	 * Gets the fraction of the node's rows with the most common target
+	 * value, without looking the value up.
+	 * @return (double): The fraction of rows.
+	 */
+	public double getMajorityAccuracy(){
+		return (majority >= 0) ? (double)counts[majority] / (double)rows : Double.NaN;
+	}
+
+	/**
+	 * Gets the smallest value of a numeric target.
+	 * @return (int): The minimum.
+	 */
+	public int getMin(){
+		return min;
+	}
+
+	/**
+	 * Gets the largest value of a numeric target.
+	 * @return (int): The maximum.
+	 */
+	public int getMax(){
+		return max;
+	}
+
+	/**
+	 * Gets the mean of a numeric target.
+	 * @return (double): The mean.
+	 */
+	public double getAverage(){
+		return average;
+	}
+
+	/**
+	 * Gets the median of a numeric target, worked out as Dataset.getMedian does.
+	 * @return (int): The median.
+	 */
+	public int getMedian(){
+		return median;
+	}
+
+	/**
+	 * Gets the range of a numeric target, formatted as Dataset.getRange does.
+	 * @return (String): The range.
+	 */
+	public String getRange(){
+		return (min == max) ? (max + "") : (min + " - " + max);
+	}
+
+	/**
+	 * Determines if the target is numeric, so the numeric statistics are filled in.
+	 * @return (boolean): True if the target is numeric. False otherwise.
+	 */
+	public boolean isNumeric(){
+		return numeric;
+	}
+}
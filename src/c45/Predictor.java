@@ -0,0 +1,92 @@
+package c45;
+
+import java.util.ArrayList;
+
+/**
+ * A trained model that predicts the target class of encoded rows, such as
+ * a CompiledTree or a RandomForest. Rows are int arrays indexed by column:
+ * numbers for numeric columns and codes from the training data's
+ * dictionaries for nominal columns. BatchScorer scores testing files with
+ * any Predictor.
+ * @author Matthew Tetford
+ */
+public abstract class Predictor {
+	Predictor(){
+	}
+
+	/**
+	 * Predicts the class of an encoded row.
+	 * @param row (int[]): The row, indexed by column. The target column is ignored.
+	 * @return (int): The code of the predicted class, see getClassValue.
+	 */
+	public abstract int predict(int[] row);
+
+	/**
+	 * Predicts the class of a record of Values, in column order.
+	 * Allocates a row, so predict(int[]) should be used for bulk scoring.
+	 * @param record (ArrayList<Value>): The record.
+	 * @return (Value): The predicted value of the target class.
+	 */
+	public Value predict(ArrayList<Value> record){
+		int[] row = new int[getHeaders().length];
+		for(int x = 0; x < row.length; x++){
+			row[x] = encode(x, record.get(x));
+		}
+		return getClassValue(predict(row));
+	}
+
+	/**
+	 * Encodes a cell for predict(int[]).
+	 * Numeric columns keep their number, nominal columns get their code in the
+	 * training data, or -1 if the value wasn't in the training data.
+	 * Non numeric values in numeric columns encode to Integer.MIN_VALUE.
+	 * @param x (int): The column of the cell.
+	 * @param value (Value): The value of the cell.
+	 * @return (int): The encoded cell.
+	 */
+	public int encode(int x, Value value){
+		ValueDictionary dictionary = getDictionary(x);
+		if(dictionary == null){
+			return (!value.isEmpty() && value.isNumeric()) ? value.num_value : Integer.MIN_VALUE;
+		}
+		return dictionary.lookup(value);
+	}
+
+	/**
+	 * Gets the dictionary the given nominal column is encoded with.
+	 * @param x (int): The column.
+	 * @return (ValueDictionary): The dictionary, or null if the column is numeric.
+	 */
+	abstract ValueDictionary getDictionary(int x);
+
+	/**
+	 * Gets the dictionary of class codes returned by predict.
+	 * @return (ValueDictionary): The class dictionary.
+	 */
+	abstract ValueDictionary getClassDictionary();
+
+	/**
+	 * Gets the value of a predicted class.
+	 * @param code (int): The class code returned by predict.
+	 * @return (Value): The value, or an empty Value if the code is -1.
+	 */
+	public abstract Value getClassValue(int code);
+
+	/**
+	 * Gets the number of distinct classes the model was trained on.
+	 * @return (int): The number of classes.
+	 */
+	public abstract int getClassCount();
+
+	/**
+	 * Gets the column the model classifies by.
+	 * @return (int): The index of the target column.
+	 */
+	public abstract int getTargetIndex();
+
+	/**
+	 * Gets the headers of the training data, in column order.
+	 * @return (Value[]): The headers.
+	 */
+	public abstract Value[] getHeaders();
+}
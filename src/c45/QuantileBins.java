@@ -0,0 +1,142 @@
+package c45;
+
+import java.util.Arrays;
+
+/**
+ * Quantile buckets for the numeric attributes of a Dataset, used for
+ * approximate split finding.
+ * Each numeric column is cut into up to a set number of buckets holding
+ * about the same number of rows. A bucket starts at a value that occurs
+ * in the column, and every row records the bucket its value falls in, so
+ * a split on the start of bucket b sends exactly the rows in buckets b and
+ * up to the greater than or equal child.
+ * Used internally by TreeBuilder.
+ * @author Matthew Tetford
+ */
+final class QuantileBins {
+	/** The most buckets a column can have, the range of a char. */
+	static final int MAX_BINS = 1 << 16;
+
+	private final int[][] bounds;
+	private final char[][] bins;
+
+	private QuantileBins(int[][] _bounds, char[][] _bins){
+		bounds = _bounds;
+		bins = _bins;
+	}
+
+	/**
+	 * Buckets every numeric attribute of a Dataset.
+	 * @param dataset (Dataset): The rows to bucket, typically the whole training set.
+	 * @param count (int): The most buckets per column, up to MAX_BINS.
+	 * @return (QuantileBins): The buckets.
+	 */
+	static QuantileBins build(Dataset dataset, int count){
+		int rows = dataset.height-1;
+		int[][] bounds = new int[dataset.width][];
+		char[][] bins = new char[dataset.width][];
+		for(int x = 0; x < dataset.width; x++){
+			if(!dataset.getAttribute(x).attribute_is_numeric || rows == 0){
+				continue;
+			}
+
+			int[] sorted = new int[rows];
+			for(int y = 1; y <= rows; y++){
+				sorted[y-1] = dataset.getNumber(x, y);
+			}
+			Arrays.sort(sorted);
+
+			//Bucket starts at evenly spaced ranks, skipping repeats
+			bounds[x] = starts(sorted, count);
+
+			bins[x] = new char[dataset.getStorageRows()];
+			for(int y = 1; y <= rows; y++){
+				bins[x][dataset.row(y)] = (char)bucketOf(bounds[x], dataset.getNumber(x, y));
+			}
+		}
+		return new QuantileBins(bounds, bins);
+	}
+
+	/**
+	 * Creates buckets from starts worked out elsewhere, such as from a
+	 * sample of rows. Rows don't record their buckets, see bucket.
+	 * @param bounds (int[][]): The sorted bucket starts of each column, null for columns that aren't bucketed.
+	 * @return (QuantileBins): The buckets.
+	 */
+	static QuantileBins fromBounds(int[][] bounds){
+		return new QuantileBins(bounds, null);
+	}
+
+	/**
+	 * Finds the bucket a value falls in.
+	 * @param x (int): The column.
+	 * @param value (int): The value.
+	 * @return (int): The bucket.
+	 */
+	int bucket(int x, int value){
+		return bucketOf(bounds[x], value);
+	}
+
+	/**
+	 * Works out evenly spaced bucket starts from sorted values, skipping repeats.
+	 * @param sorted (int[]): The values, sorted.
+	 * @param count (int): The most buckets.
+	 * @return (int[]): The bucket starts.
+	 */
+	static int[] starts(int[] sorted, int count){
+		int rows = sorted.length;
+		int[] starts = new int[Math.min(count, rows)];
+		int size = 0;
+		for(int b = 0; b < starts.length; b++){
+			int value = sorted[(int)((long)b * rows / starts.length)];
+			if(size == 0 || value > starts[size-1]){
+				starts[size++] = value;
+			}
+		}
+		return Arrays.copyOf(starts, size);
+	}
+
+	private static int bucketOf(int[] starts, int value){
+		int found = Arrays.binarySearch(starts, value);
+		//Values between starts belong to the bucket below
+		return (found >= 0) ? found : Math.max(-found - 2, 0);
+	}
+
+	/**
+	 * Determines if the given column was bucketed.
+	 * @param x (int): The column.
+	 * @return (boolean): True if the column is numeric and has buckets.
+	 */
+	boolean isBinned(int x){
+		return bounds[x] != null;
+	}
+
+	/**
+	 * Gets the number of buckets of a column.
+	 * @param x (int): The column.
+	 * @return (int): The number of buckets.
+	 */
+	int size(int x){
+		return bounds[x].length;
+	}
+
+	/**
+	 * Gets the value a bucket starts at.
+	 * @param x (int): The column.
+	 * @param bin (int): The bucket.
+	 * @return (int): The smallest value in the bucket.
+	 */
+	int start(int x, int bin){
+		return bounds[x][bin];
+	}
+
+	/**
+	 * Gets the bucket of a row.
+	 * @param x (int): The column.
+	 * @param row_id (int): The storage row id.
+	 * @return (int): The bucket.
+	 */
+	int bin(int x, int row_id){
+		return bins[x][row_id];
+	}
+}
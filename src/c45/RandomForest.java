@@ -0,0 +1,206 @@
+package c45;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A random forest of C4.5 trees.
+ * Each tree is built from a bootstrap sample of the training rows, a view
+ * over the shared, read only storage of the training Dataset that copies
+ * only the sampled row ids, and each node of a tree searches a random
+ * sample of its remaining attributes. Trees are built concurrently in the
+ * pool, one task per tree, and compiled into CompiledTrees as they finish,
+ * so the nodes and samples of a tree are let go once it is built.
+ * Every tree and every node draws from its own seed, so a forest depends
+ * only on its seed, not on the number of threads. With histogram bins
+ * set, the training data is bucketed once and every tree searches those buckets.
+ * predict takes the majority vote of the trees, ties going to the lowest
+ * class code, and predictAverage averages the numbers the trees predict
+ * for a numeric target.
+ * @author Matthew Tetford
+ */
+public final class RandomForest extends Predictor {
+	private final CompiledTree[] trees;
+	private final ValueDictionary class_dictionary;
+	private final Value[] classes;
+	private final double[] class_numbers;
+	private final ThreadLocal<int[]> votes;
+
+	private RandomForest(CompiledTree[] _trees){
+		trees = _trees;
+		class_dictionary = trees[0].getClassDictionary();
+		classes = new Value[class_dictionary.size()];
+		class_numbers = new double[classes.length];
+		for(int c = 0; c < classes.length; c++){
+			classes[c] = class_dictionary.decode(c);
+			class_numbers[c] = classes[c].isNumeric() ? classes[c].num_value : Double.NaN;
+		}
+		final int class_count = classes.length;
+		votes = new ThreadLocal<int[]>(){
+			protected int[] initialValue(){
+				return new int[class_count];
+			}
+		};
+	}
+
+	/**
+	 * Builds a forest.
+	 * @param dataset (Dataset): The training data.
+	 * @param target_class (Value): The attribute to classify by.
+	 * @param tree_count (int): The number of trees.
+	 * @param attributes_per_node (int): The attributes each node searches, 0 for the square root of the attribute count.
+	 * @param min_split_gain (double): The minimum gain a split must have.
+	 * @param max_depth (int): The deepest a node may be and still be split, 0 for no limit.
+	 * @param min_node_rows (int): The fewest rows a node needs to be split.
+	 * @param histogram_bins (int): The quantile buckets per numeric attribute, 0 to search exactly.
+	 * @param seed (long): The seed of the bootstrap samples and attribute samples.
+	 * @param pool (ForkJoinPool): The pool to build trees in, or null to build them one by one.
+	 * @param metrics (BuildMetrics): Where to record the build, or null to not record it.
+	 * @return (RandomForest): The forest.
+	 */
+	static RandomForest build(final Dataset dataset, final Value target_class, int tree_count, int attributes_per_node,
+			final double min_split_gain, final int max_depth, final int min_node_rows, final int histogram_bins,
+			long seed, ForkJoinPool pool, final BuildMetrics metrics){
+		final int sample = (attributes_per_node > 0) ? attributes_per_node
+				: Math.max(1, (int)Math.round(Math.sqrt(dataset.width - 1)));
+		final CompiledTree[] trees = new CompiledTree[tree_count];
+		//Bootstrap samples are views over the training storage, so every tree shares one set of buckets
+		final QuantileBins bins = (histogram_bins > 0) ? QuantileBins.build(dataset, histogram_bins) : null;
+
+		//Draw every tree's seed up front so the forest doesn't depend on the order trees finish in
+		SplittableRandom random = new SplittableRandom(seed);
+		ArrayList<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+		for(int t = 0; t < tree_count; t++){
+			final int tree = t;
+			final long tree_seed = random.nextLong();
+			tasks.add(new RecursiveAction(){
+				private static final long serialVersionUID = 1L;
+				protected void compute(){
+					SplittableRandom tree_random = new SplittableRandom(tree_seed);
+					C45Node root = new C45Node(dataset.bootstrap(tree_random), null, target_class);
+					root.random_seed = tree_random.nextLong();
+					TreeBuilder builder = new TreeBuilder(target_class, min_split_gain, max_depth, min_node_rows,
+							null, TreeBuilder.DEFAULT_FORK_ROWS, histogram_bins, metrics);
+					builder.setQuantileBins(bins);
+					builder.setAttributeSample(sample);
+					builder.build(root);
+					trees[tree] = CompiledTree.compile(root, target_class);
+				}
+			});
+		}
+
+		if(pool == null){
+			for(RecursiveAction task : tasks){
+				task.invoke();
+			}
+		}else{
+			pool.invoke(new RecursiveAction(){
+				private static final long serialVersionUID = 1L;
+				protected void compute(){
+					ForkJoinTask.invokeAll(tasks);
+				}
+			});
+		}
+		return new RandomForest(trees);
+	}
+
+	/**
+	 * Predicts the class of an encoded row by majority vote of the trees.
+	 * Ties go to the lowest class code. Allocates nothing after a thread's first call.
+	 * @param row (int[]): The row, indexed by column. The target column is ignored.
+	 * @return (int): The code of the predicted class, see getClassValue.
+	 */
+	public int predict(int[] row){
+		int[] counts = votes.get();
+		for(CompiledTree tree : trees){
+			int code = tree.predict(row);
+			if(code >= 0){
+				counts[code]++;
+			}
+		}
+		int best = -1;
+		int best_votes = 0;
+		for(int c = 0; c < counts.length; c++){
+			if(counts[c] > best_votes){
+				best = c;
+				best_votes = counts[c];
+			}
+			counts[c] = 0;
+		}
+		return best;
+	}
+
+	/**
+	 * Predicts a numeric target for an encoded row as the mean of the numbers the trees predict.
+	 * @param row (int[]): The row, indexed by column. The target column is ignored.
+	 * @return (double): The mean prediction, NaN if the target isn't numeric.
+	 */
+	public double predictAverage(int[] row){
+		double sum = 0;
+		int count = 0;
+		for(CompiledTree tree : trees){
+			int code = tree.predict(row);
+			if(code >= 0){
+				sum += class_numbers[code];
+				count++;
+			}
+		}
+		return (count > 0) ? sum / count : Double.NaN;
+	}
+
+	/**
+	 * Gets one of the trees of the forest.
+	 * @param t (int): The index of the tree.
+	 * @return (CompiledTree): The tree.
+	 */
+	public CompiledTree getTree(int t){
+		return trees[t];
+	}
+
+	/**
+	 * Gets the number of trees in the forest.
+	 * @return (int): The number of trees.
+	 */
+	public int getTreeCount(){
+		return trees.length;
+	}
+
+	/**
+	 * Gets the number of nodes over every tree of the forest.
+	 * @return (long): The number of nodes.
+	 */
+	public long getNodeCount(){
+		long nodes = 0;
+		for(CompiledTree tree : trees){
+			nodes += tree.getNodeCount();
+		}
+		return nodes;
+	}
+
+	ValueDictionary getDictionary(int x){
+		return trees[0].getDictionary(x);
+	}
+
+	ValueDictionary getClassDictionary(){
+		return class_dictionary;
+	}
+
+	public Value getClassValue(int code){
+		return (code >= 0) ? classes[code] : new Value();
+	}
+
+	public int getClassCount(){
+		return classes.length;
+	}
+
+	public int getTargetIndex(){
+		return trees[0].getTargetIndex();
+	}
+
+	public Value[] getHeaders(){
+		return trees[0].getHeaders();
+	}
+}
@@ -0,0 +1,146 @@
+package c45;
+
+import java.io.PrintStream;
+
+/**
+ * The results of scoring a testing file with a Predictor: how many
+ * records were predicted correctly, a confusion matrix and how fast the
+ * records were scored.
+ * @author Matthew Tetford
+ */
+public final class ScoreReport {
+	/** Confusion matrices with more classes than this are left out of print. */
+	static final int MAX_PRINTED_CLASSES = 40;
+
+	private final Value[] classes;
+	private final long[][] confusion;
+	private final long rows;
+	private final long correct;
+	private final long unseen;
+	private final long nanos;
+
+	/**
+	 * Creates a report.
+	 * @param _classes (Value[]): The value of each class code.
+	 * @param _confusion (long[][]): Counts of records by actual class then predicted class.
+	 * The extra last row counts records whose actual class wasn't in the training data.
+	 * @param _nanos (long): The time scoring took in nanoseconds.
+	 */
+	ScoreReport(Value[] _classes, long[][] _confusion, long _nanos){
+		classes = _classes;
+		confusion = _confusion;
+		nanos = _nanos;
+
+		long total = 0;
+		long hits = 0;
+		for(int actual = 0; actual < confusion.length; actual++){
+			for(int predicted = 0; predicted < classes.length; predicted++){
+				total += confusion[actual][predicted];
+				if(actual == predicted){
+					hits += confusion[actual][predicted];
+				}
+			}
+		}
+		long missing = 0;
+		for(int predicted = 0; predicted < classes.length; predicted++){
+			missing += confusion[classes.length][predicted];
+		}
+		rows = total;
+		correct = hits;
+		unseen = missing;
+	}
+
+	/**
+	 * Gets the number of records scored.
+	 * @return (long): The number of records.
+	 */
+	public long getRows(){
+		return rows;
+	}
+
+	/**
+	 * Gets the number of records predicted correctly.
+	 * @return (long): The number of correct predictions.
+	 */
+	public long getCorrect(){
+		return correct;
+	}
+
+	/**
+	 * Gets the fraction of records predicted correctly.
+	 * @return (double): The accuracy, between 0 and 1.
+	 */
+	public double getAccuracy(){
+		return (rows > 0) ? (double)correct / rows : 0;
+	}
+
+	/**
+	 * Gets the number of records with the given actual and predicted class.
+	 * @param actual (int): The actual class code, or getClassCount() for classes not seen in training.
+	 * @param predicted (int): The predicted class code.
+	 * @return (long): The number of records.
+	 */
+	public long getCount(int actual, int predicted){
+		return confusion[actual][predicted];
+	}
+
+	/**
+	 * Gets the number of classes in the training data.
+	 * @return (int): The number of classes.
+	 */
+	public int getClassCount(){
+		return classes.length;
+	}
+
+	/**
+	 * Gets the number of records scored per second.
+	 * @return (double): The throughput in records per second.
+	 */
+	public double getRowsPerSecond(){
+		return (nanos > 0) ? rows * 1e9 / nanos : 0;
+	}
+
+	/**
+	 * Prints the accuracy, the confusion matrix and the throughput.
+	 * Rows of the matrix are actual classes and columns are predicted classes.
+	 * @param output (PrintStream): Where to print the report.
+	 */
+	public void print(PrintStream output){
+		output.format("The decision tree predicted the correct value"
+				+ " with %.2f%c usefulness measure.%n", getAccuracy() * 100, '%');
+		output.format("%d of %d records predicted correctly.%n", correct, rows);
+
+		if(classes.length > MAX_PRINTED_CLASSES){
+			output.format("Confusion matrix left out, there are %d classes.%n", classes.length);
+		}else{
+			printMatrix(output);
+		}
+		output.format("%nScored %d records in %d milliseconds (%.0f records/sec).%n",
+				rows, nanos / 1000000L, getRowsPerSecond());
+	}
+
+	private void printMatrix(PrintStream output){
+		int label_width = 6;
+		for(Value value : classes){
+			label_width = Math.max(label_width, value.toString().length());
+		}
+		int count_width = Math.max(label_width, Long.toString(rows).length());
+		output.format("%nConfusion matrix (rows are actual, columns are predicted):%n");
+		output.format("%" + label_width + "s", "");
+		for(Value value : classes){
+			output.format(" %" + count_width + "s", value.toString());
+		}
+		output.format("%n");
+		for(int actual = 0; actual <= classes.length; actual++){
+			if(actual == classes.length && unseen == 0){
+				break;
+			}
+			String label = (actual < classes.length) ? classes[actual].toString() : "unseen";
+			output.format("%" + label_width + "s", label);
+			for(int predicted = 0; predicted < classes.length; predicted++){
+				output.format(" %" + count_width + "d", confusion[actual][predicted]);
+			}
+			output.format("%n");
+		}
+	}
+}
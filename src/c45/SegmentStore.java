@@ -0,0 +1,286 @@
+package c45;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Loads a csv file into column segment files on disk rather than into
+ * the heap, for data sets larger than the JVM.
+ * Each column is collected in a buffer of a fixed number of cells, and
+ * a full buffer is appended to the column's segment file, so the heap
+ * only holds one buffer per column and the dictionaries of the nominal
+ * columns. As with ColumnBuilder, a column starts out numeric, and the
+ * first non numeric cell turns it nominal: the numbers already written
+ * are read back and recoded in file order, so every value gets the same
+ * code it would get from Dataset(String).
+ * Once the file has been read each segment file is memory mapped as a
+ * MappedColumn. Segment files are little endian ints, one per row, and
+ * are deleted when the JVM exits.
+ * Used internally by Dataset to load files for ExternalBuilder.
+ * @author Matthew Tetford
+ */
+final class SegmentStore implements CsvParser.Sink {
+	/** The fewest and most cells buffered per column. */
+	static final int MIN_SEGMENT_CELLS = 1 << 10;
+	static final int MAX_SEGMENT_CELLS = 1 << 20;
+
+	private final File directory;
+	private final String prefix;
+	private final long memory_budget;
+	private Value[] headers;
+	private SegmentColumn[] columns;
+	private int rows;
+
+	Value[] loaded_headers;
+	ColumnStore store;
+	LoadStatistics statistics;
+
+	private SegmentStore(File _directory, String _prefix, long _memory_budget){
+		directory = _directory;
+		prefix = _prefix;
+		memory_budget = _memory_budget;
+	}
+
+	/**
+	 * Streams a csv file into segment files.
+	 * @param filename (String): The file to load.
+	 * @param directory (File): The directory to write the segment files to.
+	 * @param memory_budget (long): The bytes the column buffers may take between them.
+	 * @return (SegmentStore): The loaded headers, storage and load statistics.
+	 */
+	static SegmentStore load(String filename, File directory, long memory_budget){
+		long begin = System.nanoTime();
+		if(!directory.isDirectory() && !directory.mkdirs()){
+			System.err.println("Could not create segment directory " + directory);
+			System.exit(1);
+		}
+		SegmentStore segments = new SegmentStore(directory, new File(filename).getName(), memory_budget);
+		long bytes = 0;
+
+		try {
+			FileInputStream in = new FileInputStream(filename);
+			try {
+				bytes = in.getChannel().size();
+				new CsvParser(segments, true).parse(in);
+			} finally {
+				in.close();
+			}
+			if(segments.headers == null){
+				System.err.println("File is empty");
+				System.exit(1);
+			}
+			segments.finish();
+		}
+		catch (FileNotFoundException e) {
+			System.err.println("File not found");
+			System.exit(1);
+		}
+		catch (IOException | UncheckedIOException e) {
+			System.err.println("IO Error");
+			System.exit(1);
+		}
+
+		segments.statistics = new LoadStatistics(segments.rows, bytes, System.nanoTime() - begin);
+		return segments;
+	}
+
+	public void header(Value[] _headers){
+		headers = _headers;
+		int cells = (int)Math.max(MIN_SEGMENT_CELLS, Math.min(MAX_SEGMENT_CELLS, memory_budget / (4L * headers.length)));
+		columns = new SegmentColumn[headers.length];
+		try {
+			for(int x = 0; x < columns.length; x++){
+				columns[x] = new SegmentColumn(new File(directory, prefix + "." + x + ".seg"), cells);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void number(int x, int number){
+		checkWidth(x+1);
+		columns[x].addNumber(number);
+	}
+
+	public void bytes(int x, byte[] buffer, int offset, int length){
+		checkWidth(x+1);
+		columns[x].addBytes(buffer, offset, length);
+	}
+
+	public void endRow(int cells){
+		if(cells != headers.length){
+			rowError(cells);
+		}
+		rows++;
+	}
+
+	/**
+	 * Writes out the last buffers and maps every column.
+	 */
+	private void finish() throws IOException{
+		Column[] mapped = new Column[headers.length];
+		ValueDictionary[] dictionaries = new ValueDictionary[headers.length];
+		for(int x = 0; x < headers.length; x++){
+			mapped[x] = columns[x].finish();
+			dictionaries[x] = columns[x].dictionary;
+			headers[x].attribute = true;
+			headers[x].attribute_is_numeric = (dictionaries[x] == null);
+		}
+		loaded_headers = headers;
+		store = new ColumnStore(mapped, dictionaries, rows);
+		columns = null;
+	}
+
+	private void checkWidth(int cells){
+		if(cells > headers.length){
+			rowError(cells);
+		}
+	}
+
+	private void rowError(int cells){
+		System.err.println("Row " + (rows+2) + " has " + cells + " values, expected " + headers.length);
+		System.exit(1);
+	}
+
+	/**
+	 * Maps a file of little endian ints, one per row, as a column.
+	 * @param file (File): The file.
+	 * @return (Column): The column.
+	 */
+	static Column map(File file) throws IOException{
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = in.getChannel();
+			return new MappedColumn(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+					.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer());
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes ints to a file through a buffer.
+	 * @param channel (FileChannel): The file.
+	 * @param cells (int[]): The ints to write.
+	 * @param count (int): The number of ints to write.
+	 * @param buffer (ByteBuffer): A little endian buffer to write through.
+	 */
+	static void writeInts(FileChannel channel, int[] cells, int count, ByteBuffer buffer) throws IOException{
+		buffer.clear();
+		IntBuffer ints = buffer.asIntBuffer();
+		int i = 0;
+		while(i < count){
+			int n = Math.min(count - i, ints.capacity());
+			buffer.clear();
+			ints.clear();
+			ints.put(cells, i, n);
+			buffer.limit(4 * n);
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+			i += n;
+		}
+	}
+
+	/**
+	 * The cells of one column not yet written, and its segment file.
+	 */
+	private static final class SegmentColumn {
+		private final File file;
+		private final RandomAccessFile out;
+		private final FileChannel channel;
+		private final int[] buffer;
+		private final ByteBuffer bytes;
+		private int size;
+		private long written;
+		ValueDictionary dictionary;
+
+		SegmentColumn(File _file, int cells) throws IOException{
+			file = _file;
+			file.deleteOnExit();
+			out = new RandomAccessFile(file, "rw");
+			out.setLength(0);
+			channel = out.getChannel();
+			buffer = new int[cells];
+			bytes = ByteBuffer.allocate(4 * Math.min(cells, 1 << 14)).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		void addNumber(int number){
+			append((dictionary == null) ? number : dictionary.encodeNumber(number));
+		}
+
+		void addBytes(byte[] cell, int offset, int length){
+			if(dictionary == null){
+				makeNominal();
+			}
+			append(dictionary.encodeBytes(cell, offset, length));
+		}
+
+		private void append(int cell){
+			if(size == buffer.length){
+				flush();
+			}
+			buffer[size++] = cell;
+		}
+
+		private void flush(){
+			try {
+				writeInts(channel, buffer, size, bytes);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			written += size;
+			size = 0;
+		}
+
+		/**
+		 * Recodes the numbers written and buffered so far as dictionary
+		 * codes, in file order, as ColumnBuilder.makeNominal does.
+		 */
+		private void makeNominal(){
+			dictionary = new ValueDictionary();
+			try {
+				bytes.clear();
+				IntBuffer ints = bytes.asIntBuffer();
+				int[] block = new int[ints.capacity()];
+				for(long done = 0; done < written; ){
+					int n = (int)Math.min(written - done, block.length);
+					bytes.clear();
+					bytes.limit(4 * n);
+					while(bytes.hasRemaining()){
+						channel.read(bytes, 4 * done + bytes.position());
+					}
+					ints.clear();
+					ints.get(block, 0, n);
+					for(int i = 0; i < n; i++){
+						block[i] = dictionary.encodeNumber(block[i]);
+					}
+					channel.position(4 * done);
+					writeInts(channel, block, n, bytes);
+					done += n;
+				}
+				channel.position(4 * written);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			for(int i = 0; i < size; i++){
+				buffer[i] = dictionary.encodeNumber(buffer[i]);
+			}
+		}
+
+		Column finish() throws IOException{
+			flush();
+			out.close();
+			return map(file);
+		}
+	}
+
+}
@@ -0,0 +1,320 @@
+package c45;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads and writes binary snapshots of a Dataset.
+ * A snapshot holds the header row, the type of every column, the
+ * dictionaries of the nominal columns and the encoded columns themselves.
+ * Everything is little endian. The file starts with a fixed header:
+ *
+ * 		int magic, int version, int width, int rows, long data_start
+ *
+ * followed by one entry per column: a type byte (1 numeric, 0 nominal),
+ * the header value and, for nominal columns, the dictionary values in
+ * code order. Values are a kind byte (0 number, 1 string, 2 empty)
+ * followed by an int for numbers or an int length and UTF-8 bytes for
+ * strings. The columns start at data_start, which is a multiple of 8,
+ * one after another with rows ints each.
+ * Reading maps each column straight from the file, so only the header
+ * and the dictionaries are copied onto the heap.
+ * Used internally by Dataset to save and reload data.
+ * @author Matthew Tetford
+ */
+final class Snapshot {
+	static final int MAGIC = 0x53353443; //"C45S" when read as little endian bytes
+	static final int VERSION = 1;
+	private static final int HEADER_BYTES = 24;
+	private static final int NUMBER = 0;
+	private static final int STRING = 1;
+	private static final int EMPTY = 2;
+
+	Value[] headers;
+	ColumnStore store;
+	LoadStatistics statistics;
+
+	private Snapshot(){
+	}
+
+	/**
+	 * Determines if the given file starts like a snapshot.
+	 * @param filename (String): The file to check.
+	 * @return (boolean): True if the file is a snapshot. False otherwise, or if it can't be read.
+	 */
+	static boolean isSnapshot(String filename){
+		try {
+			FileInputStream in = new FileInputStream(filename);
+			try {
+				ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+				return in.getChannel().read(buffer) == 4 && buffer.getInt(0) == MAGIC;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the rows of a Dataset to a snapshot file.
+	 * @param filename (String): The file to write.
+	 * @param headers (Value[]): The header row.
+	 * @param store (ColumnStore): The storage the rows are in.
+	 * @param row_ids (int[]): The row ids of the rows to write.
+	 * @param offset (int): The first row id to write.
+	 * @param count (int): The number of rows to write.
+	 */
+	static void write(String filename, Value[] headers, ColumnStore store, int[] row_ids, int offset, int count){
+		try {
+			FileOutputStream out = new FileOutputStream(filename);
+			try {
+				write(out.getChannel(), headers, store, row_ids, offset, count);
+			} finally {
+				out.close();
+			}
+		}
+		catch (FileNotFoundException e) {
+			System.err.println("Could not create snapshot file");
+			System.exit(1);
+		}
+		catch (IOException e) {
+			System.err.println("IO Error");
+			System.exit(1);
+		}
+	}
+
+	private static void write(FileChannel channel, Value[] headers, ColumnStore store, int[] row_ids, int offset, int count) throws IOException{
+		int width = headers.length;
+
+		//Work out the size of the header and dictionaries so the columns can start on an 8 byte boundary
+		long meta_bytes = HEADER_BYTES;
+		for(int x = 0; x < width; x++){
+			meta_bytes += 1 + valueBytes(headers[x]);
+			ValueDictionary dictionary = store.getDictionary(x);
+			if(dictionary != null){
+				meta_bytes += dictionaryBytes(dictionary);
+			}
+		}
+		long data_start = (meta_bytes + 7) & ~7L;
+
+		ByteBuffer buffer = ByteBuffer.allocate(CsvParser.BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(count).putLong(data_start);
+		for(int x = 0; x < width; x++){
+			ValueDictionary dictionary = store.getDictionary(x);
+			buffer = room(channel, buffer, 1);
+			buffer.put((byte)(dictionary == null ? 1 : 0));
+			buffer = putValue(channel, buffer, headers[x]);
+			if(dictionary != null){
+				buffer = putDictionary(channel, buffer, dictionary);
+			}
+		}
+		buffer = room(channel, buffer, 8);
+		for(long b = meta_bytes; b < data_start; b++){
+			buffer.put((byte)0);
+		}
+
+		for(int x = 0; x < width; x++){
+			Column column = store.getColumn(x);
+			for(int y = 0; y < count; y++){
+				if(buffer.remaining() < 4){
+					flush(channel, buffer);
+				}
+				buffer.putInt(column.get(row_ids[offset + y]));
+			}
+		}
+		flush(channel, buffer);
+	}
+
+	/**
+	 * Maps a snapshot file.
+	 * @param filename (String): The file to read.
+	 * @return (Snapshot): The headers, storage and load statistics read.
+	 */
+	static Snapshot read(String filename){
+		long begin = System.nanoTime();
+		Snapshot snapshot = new Snapshot();
+		long bytes = 0;
+
+		try {
+			FileInputStream in = new FileInputStream(filename);
+			try {
+				FileChannel channel = in.getChannel();
+				bytes = channel.size();
+				snapshot.map(channel);
+			} finally {
+				in.close();
+			}
+		}
+		catch (FileNotFoundException e) {
+			System.err.println("File not found");
+			System.exit(1);
+		}
+		catch (IOException e) {
+			System.err.println("IO Error");
+			System.exit(1);
+		}
+
+		snapshot.statistics = new LoadStatistics(snapshot.store.rows, bytes, System.nanoTime() - begin);
+		return snapshot;
+	}
+
+	private void map(FileChannel channel) throws IOException{
+		long size = channel.size();
+		if(size < HEADER_BYTES){
+			badSnapshot("file is too short");
+		}
+		ByteBuffer fixed = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		if(fixed.getInt() != MAGIC){
+			badSnapshot("not a snapshot file");
+		}
+		int version = fixed.getInt();
+		if(version != VERSION){
+			badSnapshot("unsupported version " + version);
+		}
+		int width = fixed.getInt();
+		int rows = fixed.getInt();
+		long data_start = fixed.getLong();
+		if(data_start > Integer.MAX_VALUE || data_start + 4L * rows * width != size){
+			badSnapshot("file size does not match its header");
+		}
+
+		ByteBuffer meta = channel.map(FileChannel.MapMode.READ_ONLY, 0, data_start).order(ByteOrder.LITTLE_ENDIAN);
+		meta.position(HEADER_BYTES);
+		headers = new Value[width];
+		Column[] columns = new Column[width];
+		ValueDictionary[] dictionaries = new ValueDictionary[width];
+		for(int x = 0; x < width; x++){
+			boolean numeric = (meta.get() == 1);
+			headers[x] = getValue(meta);
+			headers[x].attribute = true;
+			headers[x].attribute_is_numeric = numeric;
+			if(!numeric){
+				dictionaries[x] = getDictionary(meta);
+			}
+
+			long start = data_start + 4L * rows * x;
+			ByteBuffer cells = channel.map(FileChannel.MapMode.READ_ONLY, start, 4L * rows).order(ByteOrder.LITTLE_ENDIAN);
+			columns[x] = new MappedColumn(cells.asIntBuffer());
+		}
+		store = new ColumnStore(columns, dictionaries, rows);
+	}
+
+	/**
+	 * Gets the number of bytes putDictionary writes for a dictionary.
+	 * @param dictionary (ValueDictionary): The dictionary.
+	 * @return (long): The size of the dictionary in bytes.
+	 */
+	static long dictionaryBytes(ValueDictionary dictionary){
+		long bytes = 4;
+		for(int c = 0; c < dictionary.size(); c++){
+			bytes += valueBytes(dictionary.decode(c));
+		}
+		return bytes;
+	}
+
+	/**
+	 * Writes a dictionary as its size followed by its values in code order.
+	 * @param channel (FileChannel): The file being written.
+	 * @param buffer (ByteBuffer): The buffer in front of the file.
+	 * @param dictionary (ValueDictionary): The dictionary to write.
+	 * @return (ByteBuffer): The buffer to carry on writing with.
+	 */
+	static ByteBuffer putDictionary(FileChannel channel, ByteBuffer buffer, ValueDictionary dictionary) throws IOException{
+		buffer = room(channel, buffer, 4);
+		buffer.putInt(dictionary.size());
+		for(int c = 0; c < dictionary.size(); c++){
+			buffer = putValue(channel, buffer, dictionary.decode(c));
+		}
+		return buffer;
+	}
+
+	/**
+	 * Reads a dictionary written by putDictionary.
+	 * @param buffer (ByteBuffer): The buffer, positioned at the dictionary.
+	 * @return (ValueDictionary): The dictionary, with every value at its old code.
+	 */
+	static ValueDictionary getDictionary(ByteBuffer buffer){
+		//Adding the values in code order gives every value its old code back
+		ValueDictionary dictionary = new ValueDictionary();
+		int size = buffer.getInt();
+		for(int c = 0; c < size; c++){
+			Value value = getValue(buffer);
+			if(value.isNumeric() || value.isEmpty()){
+				dictionary.encode(value);
+			}else{
+				dictionary.encodeString(value.toString());
+			}
+		}
+		return dictionary;
+	}
+
+	static long valueBytes(Value value){
+		if(value.isEmpty()){
+			return 1;
+		}else if(value.isNumeric()){
+			return 5;
+		}
+		return 5 + value.toString().getBytes(StandardCharsets.UTF_8).length;
+	}
+
+	static ByteBuffer putValue(FileChannel channel, ByteBuffer buffer, Value value) throws IOException{
+		if(value.isEmpty()){
+			buffer = room(channel, buffer, 1);
+			buffer.put((byte)EMPTY);
+		}else if(value.isNumeric()){
+			buffer = room(channel, buffer, 5);
+			buffer.put((byte)NUMBER).putInt(value.num_value);
+		}else{
+			byte[] key = value.toString().getBytes(StandardCharsets.UTF_8);
+			buffer = room(channel, buffer, 5 + key.length);
+			buffer.put((byte)STRING).putInt(key.length).put(key);
+		}
+		return buffer;
+	}
+
+	static Value getValue(ByteBuffer buffer){
+		int kind = buffer.get();
+		if(kind == NUMBER){
+			return new Value(buffer.getInt());
+		}else if(kind == STRING){
+			byte[] key = new byte[buffer.getInt()];
+			buffer.get(key);
+			return new Value(new String(key, StandardCharsets.UTF_8));
+		}
+		return new Value();
+	}
+
+	/**
+	 * Makes sure the buffer has room for the given number of bytes,
+	 * flushing it or, for very long strings, replacing it with a larger one.
+	 */
+	static ByteBuffer room(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException{
+		if(buffer.remaining() < bytes){
+			flush(channel, buffer);
+			if(buffer.capacity() < bytes){
+				buffer = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+		return buffer;
+	}
+
+	static void flush(FileChannel channel, ByteBuffer buffer) throws IOException{
+		buffer.flip();
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private static void badSnapshot(String reason){
+		System.err.println("Bad snapshot file: " + reason);
+		System.exit(1);
+	}
+}
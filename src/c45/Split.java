@@ -0,0 +1,64 @@
+package c45;
+
+/**
+ * The best split found for a node: the attribute, its information gain,
+ * and for numeric attributes the number to split on.
+ * Searches that try every candidate exactly also note the highest gains
+ * of the other candidates, nominal and numeric, and the value just below
+ * the split number, so TreeUpdater can tell whether added rows could
+ * change the best split without searching again.
+ * Used internally by DecisionTree to implement C4.5 algorithm.
+ * @author Matthew Tetford
+ */
+final class Split {
+	final Value attribute;
+	final double gain;
+	final int number;
+	final int candidates;
+	final double nominal_runner_up;
+	final double numeric_runner_up;
+	final int floor;
+
+	/**
+	 * Creates a split on the given attribute.
+	 * @param _attribute (Value): The attribute to split on.
+	 * @param _gain (double): The information gain of the split.
+	 * @param _number (int): The number to split on, unused for nominal attributes.
+	 */
+	Split(Value _attribute, double _gain, int _number){
+		this(_attribute, _gain, _number, 1);
+	}
+
+	/**
+	 * Creates a split on the given attribute, chosen from a number of
+	 * candidates whose gains weren't noted.
+	 * @param _attribute (Value): The attribute to split on.
+	 * @param _gain (double): The information gain of the split.
+	 * @param _number (int): The number to split on, unused for nominal attributes.
+	 * @param _candidates (int): The number of splits tried to find this one.
+	 */
+	Split(Value _attribute, double _gain, int _number, int _candidates){
+		this(_attribute, _gain, _number, _candidates, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Integer.MIN_VALUE);
+	}
+
+	/**
+	 * Creates a split on the given attribute, noting how close the other candidates came.
+	 * @param _attribute (Value): The attribute to split on.
+	 * @param _gain (double): The information gain of the split.
+	 * @param _number (int): The number to split on, unused for nominal attributes.
+	 * @param _candidates (int): The number of splits tried to find this one.
+	 * @param _nominal_runner_up (double): The highest gain of the other nominal candidates, infinite if unknown.
+	 * @param _numeric_runner_up (double): The highest gain of the other numeric candidates, infinite if unknown.
+	 * @param _floor (int): The highest value below the split number, Integer.MIN_VALUE if there is none.
+	 */
+	Split(Value _attribute, double _gain, int _number, int _candidates,
+			double _nominal_runner_up, double _numeric_runner_up, int _floor){
+		attribute = _attribute;
+		gain = _gain;
+		number = _number;
+		candidates = _candidates;
+		nominal_runner_up = _nominal_runner_up;
+		numeric_runner_up = _numeric_runner_up;
+		floor = _floor;
+	}
+}
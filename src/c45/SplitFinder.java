@@ -0,0 +1,444 @@
+package c45;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds the best attribute, and for numeric attributes the best number,
+ * to split a node on.
+ * Nominal attributes are scored from a ContingencyTable. For a numeric
+ * attribute the node's rows are sorted on the attribute once, then every
+ * distinct value is tried as a split number in a single sweep that keeps
+ * running class counts for the rows below it. The gains are the same as
+ * calling DecisionTree.continuousGain for each distinct value.
+ * Given quantile buckets, numeric attributes are instead scored from the
+ * node's class histograms, trying only the start of each bucket.
+ * Given a pool, attributes are scored concurrently and large sweeps are
+ * split into chunks. Ties always go to the attribute with the lowest
+ * column index, then the lowest number, so the pool never changes the result.
+ * Used internally by DecisionTree to implement C4.5 algorithm.
+ * @author Matthew Tetford
+ */
+final class SplitFinder {
+	//Nodes with fewer cells to scan than this are searched serially
+	static final int PARALLEL_MIN_CELLS = 1 << 14;
+	//Numeric sweeps over fewer rows than this are not split into chunks
+	static final int PARALLEL_SWEEP_ROWS = 1 << 16;
+
+	private final ForkJoinPool pool;
+	private final BuildMetrics metrics;
+
+	/**
+	 * Creates a split finder.
+	 * @param _pool (ForkJoinPool): The pool to search in, or null to search serially.
+	 */
+	SplitFinder(ForkJoinPool _pool){
+		this(_pool, null);
+	}
+
+	/**
+	 * Creates a split finder that counts the candidate splits it tries.
+	 * @param _pool (ForkJoinPool): The pool to search in, or null to search serially.
+	 * @param _metrics (BuildMetrics): Where to count candidate splits, or null to not count them.
+	 */
+	SplitFinder(ForkJoinPool _pool, BuildMetrics _metrics){
+		pool = _pool;
+		metrics = _metrics;
+	}
+
+	/**
+	 * Finds the split with the highest gain over the given attributes.
+	 * If there is a tie, the attribute with the lowest column index wins.
+	 * @param dataset (Dataset): The rows of the node.
+	 * @param target_class (Value): The attribute we want to classify by.
+	 * @param attributes (Collection<Value>): The attributes we may split on.
+	 * @return (Split): The best split. Has an empty attribute and a gain of 0
+	 * if no split gains anything.
+	 */
+	Split findBestSplit(Dataset dataset, Value target_class, Collection<Value> attributes){
+		return findBestSplit(dataset, target_class, attributes, null, null);
+	}
+
+	/**
+	 * Finds the split with the highest gain over the given attributes, scoring
+	 * bucketed numeric attributes from histograms rather than sorted rows.
+	 * If there is a tie, the attribute with the lowest column index wins.
+	 * @param dataset (Dataset): The rows of the node.
+	 * @param target_class (Value): The attribute we want to classify by.
+	 * @param attributes (Collection<Value>): The attributes we may split on.
+	 * @param bins (QuantileBins): The buckets of the training data, or null to sort rows.
+	 * @param histograms (NodeHistograms): The class histograms of the node, or null to sort rows.
+	 * @return (Split): The best split. Has an empty attribute and a gain of 0
+	 * if no split gains anything.
+	 */
+	Split findBestSplit(final Dataset dataset, final Value target_class, Collection<Value> attributes,
+			final QuantileBins bins, final NodeHistograms histograms){
+		final Value[] candidates = inColumnOrder(dataset, attributes);
+		final Split[] splits = new Split[candidates.length];
+		final boolean parallel = isParallel(dataset, candidates.length);
+
+		if(parallel){
+			final ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[candidates.length];
+			for(int i = 0; i < candidates.length; i++){
+				final int index = i;
+				tasks[i] = new RecursiveAction(){
+					protected void compute(){
+						splits[index] = score(dataset, target_class, candidates[index], true, bins, histograms);
+					}
+				};
+			}
+			run(new RecursiveAction(){
+				protected void compute(){
+					ForkJoinTask.invokeAll(tasks);
+				}
+			});
+		}else{
+			for(int i = 0; i < candidates.length; i++){
+				splits[i] = score(dataset, target_class, candidates[i], false, bins, histograms);
+			}
+		}
+
+		Split best = new Split(new Value(), 0, 0);
+		int best_index = -1;
+		for(int i = 0; i < splits.length; i++){
+			Split split = splits[i];
+			if(metrics != null){
+				metrics.candidatesTried(split.attribute, split.candidates);
+			}
+			if(split.gain > best.gain){
+				best = split;
+				best_index = i;
+			}
+		}
+
+		//Note the closest the other candidates came, for TreeUpdater
+		double nominal_runner_up = 0;
+		double numeric_runner_up = 0;
+		for(int i = 0; i < splits.length; i++){
+			Split split = splits[i];
+			double other = (i == best_index) ? 0 : split.gain;
+			if(split.attribute.attribute_is_numeric){
+				numeric_runner_up = Math.max(numeric_runner_up, Math.max(other, split.numeric_runner_up));
+			}else{
+				nominal_runner_up = Math.max(nominal_runner_up, other);
+			}
+		}
+		return new Split(best.attribute, best.gain, best.number, best.candidates,
+				nominal_runner_up, numeric_runner_up, best.floor);
+	}
+
+	/**
+	 * Finds the split number with the highest gain for a numeric attribute,
+	 * serially. If there is a tie, the lowest number is returned.
+	 * @param dataset (Dataset): The rows of the node.
+	 * @param target_class (Value): The attribute we want to classify by.
+	 * @param attribute (Value): The numeric attribute to split on.
+	 * @return (Split): The best split. Has a gain of 0 if no split gains anything.
+	 */
+	static Split bestContinuousSplit(Dataset dataset, Value target_class, Value attribute){
+		return new SplitFinder(null).continuousSplit(dataset, target_class, attribute, false);
+	}
+
+	/**
+	 * Calculates information gain for a continuous split from the class
+	 * counts on either side of the split. Follows DecisionTree.continuousGain.
+	 * @param lower_counts (int[]): Class counts of the rows lower than the split number.
+	 * @param lower_total (int): The number of rows lower than the split number.
+	 * @param upper_counts (int[]): Class counts of the rows greater than or equal to the split number.
+	 * @param upper_total (int): The number of rows greater than or equal to the split number.
+	 * @return (double): The gain.
+	 */
+	static double continuousGain(int[] lower_counts, int lower_total, int[] upper_counts, int upper_total){
+		double gain = 0d;
+		double total = (double)(lower_total + upper_total);
+
+		double probability_lower = (double)lower_total / total;
+		double probability_upper = (double)upper_total / total;
+
+		double temp_gain = DecisionTree.binaryEntropy(probability_upper, probability_lower);
+
+		double lower_split_entropy = DecisionTree.entropy(lower_counts, lower_total);
+		double upper_split_entropy = DecisionTree.entropy(upper_counts, upper_total);
+
+		if((lower_split_entropy + upper_split_entropy) <= 0){
+			return gain;
+		}
+
+		temp_gain -= (probability_lower * lower_split_entropy);
+		temp_gain -= (probability_upper * upper_split_entropy);
+
+		if(temp_gain > gain){
+			gain = temp_gain;
+		}
+
+		return gain;
+	}
+
+	private Split score(Dataset dataset, Value target_class, Value attribute, boolean parallel,
+			QuantileBins bins, NodeHistograms histograms){
+		if(attribute.attribute_is_numeric){
+			int x = dataset.getHeaderIndex(attribute);
+			if(histograms != null && histograms.counts[x] != null){
+				return histogramSplit(attribute, x, bins, histograms);
+			}
+			return continuousSplit(dataset, target_class, attribute, parallel);
+		}
+		return new Split(attribute, DecisionTree.gain(dataset, target_class, attribute), 0, 1, 0, 0, Integer.MIN_VALUE);
+	}
+
+	private Split continuousSplit(Dataset dataset, Value target_class, Value attribute, boolean parallel){
+		final int total = dataset.height-1;
+		int x = dataset.getHeaderIndex(attribute);
+		int target = dataset.getHeaderIndex(target_class);
+		Column classes = dataset.getClassColumn(target);
+		final int class_count = dataset.getClassCount(target);
+
+		//Sort (value, class) pairs packed into longs, value in the high bits
+		final long[] pairs = new long[total];
+		int[] totals = new int[class_count];
+		for(int y = 1; y <= total; y++){
+			int row = dataset.row(y);
+			int code = classes.get(row);
+			pairs[y-1] = ((long)dataset.getNumberAt(x, row) << 32) | code;
+			totals[code]++;
+		}
+		if(total == 0){
+			return new Split(attribute, 0, 0, 0);
+		}
+
+		parallel = parallel && total >= PARALLEL_SWEEP_ROWS;
+		if(parallel){
+			Arrays.parallelSort(pairs);
+		}else{
+			Arrays.sort(pairs);
+		}
+
+		//Chunks start on the first row of a value so every number is tried once
+		int chunks = parallel ? Math.min(pool.getParallelism(), total / (PARALLEL_SWEEP_ROWS / 4)) : 1;
+		ArrayList<Integer> bounds = new ArrayList<Integer>();
+		bounds.add(0);
+		for(int c = 1; c < chunks; c++){
+			int bound = Math.max((int)((long)total * c / chunks), bounds.get(bounds.size()-1));
+			while(bound < total && bound > 0 && number(pairs[bound]) == number(pairs[bound-1])){
+				bound++;
+			}
+			if(bound < total && bound > bounds.get(bounds.size()-1)){
+				bounds.add(bound);
+			}
+		}
+		bounds.add(total);
+		final int chunk_count = bounds.size()-1;
+		final int[] starts = new int[chunk_count + 1];
+		for(int c = 0; c <= chunk_count; c++){
+			starts[c] = bounds.get(c);
+		}
+
+		if(chunk_count == 1){
+			return sweep(attribute, pairs, 0, total, new int[class_count], totals);
+		}
+
+		//Count classes per chunk, then sweep each chunk from the counts of the chunks below it
+		final int[][] chunk_counts = new int[chunk_count][class_count];
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[chunk_count];
+		for(int c = 0; c < chunk_count; c++){
+			final int chunk = c;
+			tasks[c] = new RecursiveAction(){
+				protected void compute(){
+					for(int i = starts[chunk]; i < starts[chunk+1]; i++){
+						chunk_counts[chunk][(int)pairs[i]]++;
+					}
+				}
+			};
+		}
+		ForkJoinTask.invokeAll(tasks);
+
+		final Split[] splits = new Split[chunk_count];
+		final Value split_attribute = attribute;
+		int[] lower_counts = new int[class_count];
+		for(int c = 0; c < chunk_count; c++){
+			final int chunk = c;
+			final int[] lower = lower_counts.clone();
+			final int[] upper = new int[class_count];
+			for(int code = 0; code < class_count; code++){
+				upper[code] = totals[code] - lower[code];
+				lower_counts[code] += chunk_counts[c][code];
+			}
+			tasks[c] = new RecursiveAction(){
+				protected void compute(){
+					splits[chunk] = sweep(split_attribute, pairs, starts[chunk], starts[chunk+1], lower, upper);
+				}
+			};
+		}
+		ForkJoinTask.invokeAll(tasks);
+
+		Split best = splits[0];
+		int candidates = 0;
+		for(Split split : splits){
+			if(split.gain > best.gain){
+				best = split;
+			}
+			candidates += split.candidates;
+		}
+		double runner_up = best.numeric_runner_up;
+		for(Split split : splits){
+			if(split != best){
+				runner_up = Math.max(runner_up, Math.max(split.gain, split.numeric_runner_up));
+			}
+		}
+		return new Split(best.attribute, best.gain, best.number, candidates, 0, runner_up, best.floor);
+	}
+
+	/**
+	 * Tries the start of every non empty bucket as a split number, using the
+	 * class counts of the node's rows in each bucket.
+	 * @param attribute (Value): The attribute being split.
+	 * @param x (int): The column of the attribute.
+	 * @param bins (QuantileBins): The buckets of the training data.
+	 * @param histograms (NodeHistograms): The class histograms of the node.
+	 * @return (Split): The best split, lowest number on ties.
+	 */
+	static Split histogramSplit(Value attribute, int x, QuantileBins bins, NodeHistograms histograms){
+		int[] histogram = histograms.counts[x];
+		int classes = histograms.classes;
+		int buckets = bins.size(x);
+
+		int[] lower_counts = new int[classes];
+		int[] upper_counts = new int[classes];
+		int total = 0;
+		for(int i = 0; i < histogram.length; i++){
+			upper_counts[i % classes] += histogram[i];
+			total += histogram[i];
+		}
+
+		double max_gain = 0;
+		int split_number = bins.start(x, 0);
+		int lower_total = 0;
+		int candidates = 0;
+		for(int b = 0; b < buckets; b++){
+			int base = b * classes;
+			int bucket_total = 0;
+			for(int c = 0; c < classes; c++){
+				bucket_total += histogram[base + c];
+			}
+			if(bucket_total == 0){
+				continue;
+			}
+
+			double gain = continuousGain(lower_counts, lower_total, upper_counts, total - lower_total);
+			candidates++;
+			if(gain > max_gain){
+				max_gain = gain;
+				split_number = bins.start(x, b);
+			}
+
+			for(int c = 0; c < classes; c++){
+				lower_counts[c] += histogram[base + c];
+				upper_counts[c] -= histogram[base + c];
+			}
+			lower_total += bucket_total;
+		}
+
+		return new Split(attribute, max_gain, split_number, candidates);
+	}
+
+	/**
+	 * Tries every distinct value in a range of sorted pairs as a split number.
+	 * @param attribute (Value): The attribute being split.
+	 * @param pairs (long[]): The sorted (value, class) pairs.
+	 * @param from (int): First pair of the range, the first of its value.
+	 * @param to (int): End of the range, exclusive.
+	 * @param lower_counts (int[]): Class counts of the pairs before the range. Changed by the sweep.
+	 * @param upper_counts (int[]): Class counts of the pairs from the range on. Changed by the sweep.
+	 * @return (Split): The best split in the range, lowest number on ties.
+	 */
+	private static Split sweep(Value attribute, long[] pairs, int from, int to, int[] lower_counts, int[] upper_counts){
+		int total = pairs.length;
+		double max_gain = 0;
+		int split_number = number(pairs[from]);
+		int floor = Integer.MIN_VALUE;
+		double runner_up = 0;
+		int candidates = 0;
+
+		int i = from;
+		while(i < to){
+			int number = number(pairs[i]);
+
+			//Pairs before i are all lower than number
+			double gain = continuousGain(lower_counts, i, upper_counts, total - i);
+			candidates++;
+			if(gain > max_gain){
+				runner_up = Math.max(runner_up, max_gain);
+				max_gain = gain;
+				split_number = number;
+				floor = (i > 0) ? number(pairs[i-1]) : Integer.MIN_VALUE;
+			}else{
+				double hidden = (gain == 0) ? pureGain(lower_counts, i, upper_counts, total - i) : gain;
+				runner_up = Math.max(runner_up, hidden);
+			}
+
+			//Move every pair with this number below the next split
+			while(i < to && number(pairs[i]) == number){
+				int code = (int)pairs[i];
+				lower_counts[code]++;
+				upper_counts[code]--;
+				i++;
+			}
+		}
+
+		return new Split(attribute, max_gain, split_number, candidates, 0, runner_up, floor);
+	}
+
+	/**
+	 * Gets the gain continuousGain would give a split whose sides each
+	 * have only one class, which it scores as 0, so TreeUpdater doesn't
+	 * take such a split as one that can't win once rows are added.
+	 * @return (double): The gain, or 0 if a side is empty or has more than one class.
+	 */
+	private static double pureGain(int[] lower_counts, int lower_total, int[] upper_counts, int upper_total){
+		if(lower_total == 0 || upper_total == 0
+				|| DecisionTree.entropy(lower_counts, lower_total) + DecisionTree.entropy(upper_counts, upper_total) > 0){
+			return 0;
+		}
+		double total = (double)(lower_total + upper_total);
+		return DecisionTree.binaryEntropy((double)upper_total / total, (double)lower_total / total);
+	}
+
+	private static int number(long pair){
+		return (int)(pair >> 32);
+	}
+
+	private boolean isParallel(Dataset dataset, int attributes){
+		return pool != null && pool.getParallelism() > 1 && attributes > 0
+				&& (long)(dataset.height-1) * attributes >= PARALLEL_MIN_CELLS;
+	}
+
+	/**
+	 * Runs a task in the pool, directly if we are already one of its threads.
+	 * @param task (RecursiveAction): The task to run.
+	 */
+	private void run(RecursiveAction task){
+		if(ForkJoinTask.getPool() == pool){
+			task.invoke();
+		}else{
+			pool.invoke(task);
+		}
+	}
+
+	private static Value[] inColumnOrder(Dataset dataset, Collection<Value> attributes){
+		Value[] ordered = new Value[dataset.width];
+		for(Value attribute : attributes){
+			ordered[dataset.getHeaderIndex(attribute)] = attribute;
+		}
+		ArrayList<Value> candidates = new ArrayList<Value>();
+		for(Value attribute : ordered){
+			if(attribute != null){
+				candidates.add(attribute);
+			}
+		}
+		return candidates.toArray(new Value[candidates.size()]);
+	}
+}
@@ -0,0 +1,248 @@
+package c45;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Trains decision trees and random forests with options held per
+ * instance, so any number of models can be trained at once in one JVM,
+ * from the same or different Datasets. A Dataset is only read while
+ * training, so one loaded Dataset can be shared by every Trainer.
+ * DecisionTree's static methods train through a Trainer set up from the
+ * options given during user input.
+ * @author Matthew Tetford
+ */
+public final class Trainer {
+	private final Value target_class;
+	private int min_node_size = 0;
+	private int max_depth = 0;
+	private double min_split_gain = 0;
+	private int histogram_bins = 0;
+	private int forest_trees = 0;
+	private int forest_attributes = 0;
+	private long forest_seed = 1;
+	private ForkJoinPool pool;
+	private int fork_rows = TreeBuilder.DEFAULT_FORK_ROWS;
+	private BuildMetrics metrics;
+	private long memory_budget = 0;
+	private String spill_directory = System.getProperty("java.io.tmpdir");
+
+	/**
+	 * Creates a trainer with no stopping rules that builds single trees serially.
+	 * @param _target_class (Value): The attribute to classify by.
+	 */
+	public Trainer(Value _target_class){
+		target_class = _target_class;
+	}
+
+	/**
+	 * Sets the fewest rows a node needs to keep children.
+	 * @param rows (int): The number of rows, 0 to ignore.
+	 */
+	public void setMinNodeSize(int rows){
+		if(rows < 0){
+			System.err.println("The minimum node size can't be negative");
+			System.exit(1);
+		}
+		min_node_size = rows;
+	}
+
+	/**
+	 * Sets the deepest a node may be and keep children.
+	 * @param depth (int): The depth, 0 to ignore.
+	 */
+	public void setMaxDepth(int depth){
+		if(depth < 0){
+			System.err.println("The maximum depth can't be negative");
+			System.exit(1);
+		}
+		max_depth = depth;
+	}
+
+	/**
+	 * Sets the minimum gain to split on.
+	 * @param gain (double): The gain, 0 or more.
+	 */
+	public void setMinSplitGain(double gain){
+		if(!(gain >= 0)){
+			System.err.println("The minimum gain must be 0 or more");
+			System.exit(1);
+		}
+		min_split_gain = gain;
+	}
+
+	/**
+	 * Sets the number of quantile buckets for approximate split finding,
+	 * see DecisionTree.setHistogramBins.
+	 * @param bins (int): The number of buckets, 0 to search exactly.
+	 */
+	public void setHistogramBins(int bins){
+		if(bins < 0 || bins > QuantileBins.MAX_BINS){
+			System.err.println("Histogram bins must be between 0 and " + QuantileBins.MAX_BINS);
+			System.exit(1);
+		}
+		histogram_bins = bins;
+	}
+
+	/**
+	 * Sets up random forests, see DecisionTree.setForestTrees.
+	 * @param trees (int): The number of trees, 0 to train single trees.
+	 * @param attributes (int): The attributes each node searches, 0 for the square root of the attribute count.
+	 * @param seed (long): The seed of the random samples.
+	 */
+	public void setForest(int trees, int attributes, long seed){
+		if(trees < 0 || attributes < 0){
+			System.err.println("Forest trees and attributes can't be negative");
+			System.exit(1);
+		}
+		forest_trees = trees;
+		forest_attributes = attributes;
+		forest_seed = seed;
+	}
+
+	/**
+	 * Sets the pool to build in. Several trainers may share one pool.
+	 * @param _pool (ForkJoinPool): The pool, or null to build on the calling thread.
+	 */
+	public void setPool(ForkJoinPool _pool){
+		pool = _pool;
+	}
+
+	/**
+	 * Sets the fewest rows a child node needs to have its subtree built as a separate task.
+	 * @param rows (int): The number of rows.
+	 */
+	public void setSubtreeForkRows(int rows){
+		fork_rows = rows;
+	}
+
+	/**
+	 * Sets where to record the metrics of training.
+	 * @param _metrics (BuildMetrics): The metrics, or null to not record them.
+	 */
+	public void setMetrics(BuildMetrics _metrics){
+		metrics = _metrics;
+	}
+
+	/**
+	 * Sets the heap budget and spill directory for building from Datasets
+	 * loaded by Dataset.loadSegments, see ExternalBuilder. Nodes with more
+	 * rows than the budget allows have their row ids spilled to the
+	 * directory. Datasets held in memory are built as usual.
+	 * @param budget (long): The bytes of heap the build may use for rows, 0 for a quarter of the maximum heap.
+	 * @param directory (String): The directory to write spill files to.
+	 */
+	public void setExternalMemory(long budget, String directory){
+		if(budget < 0){
+			System.err.println("The memory budget can't be negative");
+			System.exit(1);
+		}
+		memory_budget = budget;
+		spill_directory = directory;
+	}
+
+	/**
+	 * Gets the attribute the trainer classifies by.
+	 * @return (Value): The target attribute.
+	 */
+	public Value getTargetClass(){
+		return target_class;
+	}
+
+	/**
+	 * Determines if the trainer trains random forests rather than single trees.
+	 * @return (boolean): True if forest trees is set above 0.
+	 */
+	public boolean isForest(){
+		return forest_trees > 0;
+	}
+
+	/**
+	 * Builds a decision tree from a data set.
+	 * @param dataset (Dataset): The training data.
+	 * @return (C45Node): The root of the tree.
+	 */
+	public C45Node buildTree(Dataset dataset){
+		C45Node root = new C45Node(dataset, null, target_class);
+		build(root);
+		return root;
+	}
+
+	/**
+	 * Builds the tree below the given node.
+	 * @param root (C45Node): The node we start to build the tree from (typically the root).
+	 */
+	public void build(C45Node root){
+		if(root.getDataset().isExternal()){
+			long budget = (memory_budget > 0) ? memory_budget : Runtime.getRuntime().maxMemory() / 4;
+			new ExternalBuilder(target_class, min_split_gain, max_depth, min_node_size, histogram_bins,
+					budget, new File(spill_directory), pool, fork_rows, metrics).build(root);
+			return;
+		}
+		new TreeBuilder(target_class, min_split_gain, max_depth, min_node_size,
+				pool, fork_rows, histogram_bins, metrics).build(root);
+	}
+
+	/**
+	 * Updates a tree built by this trainer with rows appended to its
+	 * training data, searching and building again only the nodes the new
+	 * rows reach, see TreeUpdater. The trainer should have the options the
+	 * tree was built with.
+	 * @param root (C45Node): The root of the tree.
+	 * @param dataset (Dataset): The rows the tree was built from followed by the new rows.
+	 * @param old_rows (int): The number of rows the tree was built from.
+	 * @return (int): The number of nodes whose split was searched again.
+	 */
+	public int updateTree(C45Node root, Dataset dataset, int old_rows){
+		return new TreeUpdater(min_split_gain, max_depth, min_node_size, pool, fork_rows,
+				histogram_bins, metrics).update(root, dataset, old_rows);
+	}
+
+	/**
+	 * Builds a random forest from a data set, of at least one tree.
+	 * @param dataset (Dataset): The training data.
+	 * @return (RandomForest): The forest.
+	 */
+	public RandomForest buildForest(Dataset dataset){
+		if(dataset.isExternal()){
+			System.err.println("Random forests need the training data in memory");
+			System.exit(1);
+		}
+		return RandomForest.build(dataset, target_class, Math.max(forest_trees, 1), forest_attributes,
+				min_split_gain, max_depth, min_node_size, histogram_bins, forest_seed, pool, metrics);
+	}
+
+	/**
+	 * Trains a model for prediction: a random forest if forest trees is
+	 * set, otherwise a single compiled tree.
+	 * @param dataset (Dataset): The training data.
+	 * @return (Predictor): The model.
+	 */
+	public Predictor train(Dataset dataset){
+		if(isForest()){
+			return buildForest(dataset);
+		}
+		return CompiledTree.compile(buildTree(dataset), target_class);
+	}
+
+	/**
+	 * Scores a testing file with a model, in blocks on the trainer's pool.
+	 * @param model (Predictor): The tree or forest.
+	 * @param testing_filename (String): The csv file to score.
+	 * @param predictions_filename (String): The file to write one prediction per line to, or null to not write them.
+	 * @return (ScoreReport): How accurate the predictions were.
+	 */
+	public ScoreReport test(Predictor model, String testing_filename, String predictions_filename){
+		return new BatchScorer(model, pool).score(testing_filename, predictions_filename);
+	}
+
+	/**
+	 * Prints a tree built by this trainer as rules.
+	 * @param root (C45Node): The root of the tree.
+	 * @param output (PrintStream): Where to print the rules.
+	 */
+	public void printTree(C45Node root, PrintStream output){
+		DecisionTree.printTree(root, target_class, output);
+	}
+}
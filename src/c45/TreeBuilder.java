@@ -0,0 +1,368 @@
+package c45;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds a decision tree from a root node.
+ * Each node is split on the attribute with the highest gain, its rows are
+ * partitioned between its children, and the children are built in turn.
+ * Nodes other than the root are left as leaves without searching for a
+ * split when they are deeper than the maximum depth or have fewer rows
+ * than the minimum node size, which gives the same tree as building
+ * everything and then running DecisionTree.postPruneTree.
+ * Given a pool, children with at least a set number of rows are forked
+ * as separate tasks and smaller children are built inline by the thread
+ * that split their parent. Subtrees only share the read only storage of
+ * the training Dataset, and every node owns its remaining attribute set,
+ * so the tree is the same however the work is spread over threads.
+ * With histogram bins set, numeric attributes are cut into quantile buckets
+ * before building and nodes with at least as many rows as there are
+ * buckets are searched from per node class histograms, trying only bucket
+ * starts as split numbers. The largest child of a split gets its parent's
+ * histograms less those of its siblings, so only the smaller children are
+ * counted from their rows. Smaller nodes, and trees whose histograms would
+ * take more than MAX_HISTOGRAM_CELLS counts per node, are searched exactly.
+ * With an attribute sample set, as for the trees of a RandomForest, each
+ * node only searches a random subset of its remaining attributes, drawn
+ * from a seed that each child derives from its parent's, so the tree is
+ * the same however it is built.
+ * Given metrics, the split search and partitioning of every node are timed
+ * and the nodes and candidate splits are counted.
+ * Used internally by DecisionTree to implement C4.5 algorithm.
+ * @author Matthew Tetford
+ */
+final class TreeBuilder {
+	static final int DEFAULT_FORK_ROWS = 1 << 12;
+	/** The most counts a node's histograms may have, 16MB of ints. */
+	static final long MAX_HISTOGRAM_CELLS = 1L << 22;
+
+	private final Value target_class;
+	private final double min_split_gain;
+	private final int max_depth;
+	private final int min_node_rows;
+	private final ForkJoinPool pool;
+	private final SplitFinder split_finder;
+	private final int fork_rows;
+	private final int histogram_bins;
+	private final BuildMetrics metrics;
+	private int attribute_sample;
+	private QuantileBins shared_bins;
+	private QuantileBins bins;
+	private int target;
+
+	/**
+	 * Creates a tree builder.
+	 * @param _target_class (Value): The attribute we want to classify by.
+	 * @param _min_split_gain (double): The minimum gain a split must have.
+	 * @param _max_depth (int): The deepest a node may be and still be split, 0 for no limit.
+	 * @param _min_node_rows (int): The fewest rows a node needs to be split.
+	 * @param _pool (ForkJoinPool): The pool to build in, or null to build serially.
+	 * @param _fork_rows (int): The fewest rows a child needs to be built as its own task.
+	 * @param _histogram_bins (int): The most quantile buckets per numeric attribute, 0 to search exactly.
+	 * @param _metrics (BuildMetrics): Where to record the build, or null to not record it.
+	 */
+	TreeBuilder(Value _target_class, double _min_split_gain, int _max_depth, int _min_node_rows, ForkJoinPool _pool,
+			int _fork_rows, int _histogram_bins, BuildMetrics _metrics){
+		target_class = _target_class;
+		min_split_gain = _min_split_gain;
+		max_depth = _max_depth;
+		min_node_rows = _min_node_rows;
+		pool = _pool;
+		split_finder = new SplitFinder(_pool, _metrics);
+		fork_rows = _fork_rows;
+		histogram_bins = _histogram_bins;
+		metrics = _metrics;
+	}
+
+	/**
+	 * Creates a tree builder that searches numeric attributes exactly.
+	 * @param _target_class (Value): The attribute we want to classify by.
+	 * @param _min_split_gain (double): The minimum gain a split must have.
+	 * @param _max_depth (int): The deepest a node may be and still be split, 0 for no limit.
+	 * @param _min_node_rows (int): The fewest rows a node needs to be split.
+	 * @param _pool (ForkJoinPool): The pool to build in, or null to build serially.
+	 * @param _fork_rows (int): The fewest rows a child needs to be built as its own task.
+	 */
+	TreeBuilder(Value _target_class, double _min_split_gain, int _max_depth, int _min_node_rows, ForkJoinPool _pool, int _fork_rows){
+		this(_target_class, _min_split_gain, _max_depth, _min_node_rows, _pool, _fork_rows, 0, null);
+	}
+
+	/**
+	 * Limits the attributes each node searches to a random sample.
+	 * The root node's random_seed seeds the draws.
+	 * @param count (int): The number of attributes to search per node, 0 to search them all.
+	 */
+	void setAttributeSample(int count){
+		attribute_sample = count;
+	}
+
+	/**
+	 * Uses buckets that were already worked out, such as over a whole data
+	 * set that the tree is built from a part of, instead of bucketing the
+	 * root's rows. Only used with histogram bins set.
+	 * @param bins (QuantileBins): Buckets over the same storage as the root's rows.
+	 */
+	void setQuantileBins(QuantileBins bins){
+		shared_bins = bins;
+	}
+
+	/**
+	 * Builds the tree below the given node.
+	 * @param root (C45Node): The node we start to build the tree from (typically the root).
+	 */
+	void build(C45Node root){
+		if(histogram_bins > 0){
+			BuildMetrics.Span span = (metrics != null) ? metrics.begin(BuildMetrics.Phase.SPLIT_SEARCH) : null;
+			prepareHistograms(root);
+			if(span != null){
+				span.end(root.getDataset().height-1);
+			}
+		}
+		if(pool == null){
+			buildInline(root);
+		}else if(ForkJoinTask.getPool() == pool){
+			new BuildTask(root).invoke();
+		}else{
+			pool.invoke(new BuildTask(root));
+		}
+	}
+
+	/**
+	 * Buckets the numeric attributes of the node's rows and counts its
+	 * histograms, unless the histograms would be too big.
+	 * @param root (C45Node): The node the tree is built from.
+	 */
+	private void prepareHistograms(C45Node root){
+		Dataset dataset = root.getDataset();
+		target = dataset.getHeaderIndex(target_class);
+		bins = (shared_bins != null) ? shared_bins : QuantileBins.build(dataset, histogram_bins);
+		if(NodeHistograms.cells(dataset, bins, target) > MAX_HISTOGRAM_CELLS){
+			bins = null;
+			return;
+		}
+		if(usesHistograms(dataset)){
+			root.histograms = NodeHistograms.count(dataset, bins, target);
+		}
+	}
+
+	/**
+	 * Determines if a node with the given rows is searched from histograms.
+	 */
+	private boolean usesHistograms(Dataset dataset){
+		return bins != null && dataset.height-1 >= histogram_bins;
+	}
+
+	/**
+	 * Gives histograms to the children of a node that are big enough to use
+	 * them. The largest child takes its parent's histograms less those of its
+	 * siblings, which are counted from their rows whether or not they use them.
+	 * @param current (C45Node): The node that was split.
+	 */
+	private void passHistograms(C45Node current){
+		ArrayList<C45Node> children = current.getChildren();
+		NodeHistograms parent_histograms = current.histograms;
+		current.histograms = null;
+		if(parent_histograms == null || children.isEmpty()){
+			return;
+		}
+
+		int largest = 0;
+		for(int i = 1; i < children.size(); i++){
+			if(children.get(i).getDataset().height > children.get(largest).getDataset().height){
+				largest = i;
+			}
+		}
+		boolean subtract = usesHistograms(children.get(largest).getDataset());
+		for(int i = 0; i < children.size(); i++){
+			Dataset dataset = children.get(i).getDataset();
+			if(i == largest || (!subtract && !usesHistograms(dataset))){
+				continue;
+			}
+			NodeHistograms histograms = NodeHistograms.count(dataset, bins, target);
+			if(subtract){
+				parent_histograms.subtract(histograms);
+			}
+			if(usesHistograms(dataset)){
+				children.get(i).histograms = histograms;
+			}
+		}
+		if(subtract){
+			children.get(largest).histograms = parent_histograms;
+		}
+	}
+
+	/**
+	 * Splits a node on its best attribute and adds its children, then
+	 * finishes the node. The children are not built.
+	 * @param current (C45Node): The node to split.
+	 * @return (ArrayList<C45Node>): The new children. Empty if the node stays a leaf.
+	 */
+	private ArrayList<C45Node> split(C45Node current){
+		int rows = current.getDataset().height-1;
+		if(metrics != null){
+			metrics.nodeBuilt(rows);
+		}
+		if(isStopped(current)){
+			current.finish(target_class);
+			return current.getChildren();
+		}
+		
+		BuildMetrics.Span span = (metrics != null) ? metrics.begin(BuildMetrics.Phase.SPLIT_SEARCH) : null;
+		Split best = split_finder.findBestSplit(current.getDataset(), target_class, candidates(current),
+				bins, current.histograms);
+		if(span != null){
+			span.end(rows);
+		}
+		double max_gain = best.gain;
+		Value split_attribute = best.attribute;
+		int split_value = best.number;
+
+		if(max_gain > 0 && max_gain >= min_split_gain){
+			span = (metrics != null) ? metrics.begin(BuildMetrics.Phase.PARTITIONING) : null;
+			addChildren(current, split_attribute, split_value);
+			passHistograms(current);
+			seedChildren(current);
+			if(span != null){
+				span.end(rows);
+			}
+		}
+
+		//The children have their own views now, so the node can let go of its rows
+		current.finish(target_class);
+		current.best_split = best;
+		current.split_summary = current.getSummary();
+		return current.getChildren();
+	}
+
+	/**
+	 * Partitions a node's rows on a split and adds a child per subset.
+	 * Children are views over the node's rows, partitioned in place.
+	 * @param current (C45Node): The node to split, which still has its rows.
+	 * @param split_attribute (Value): The attribute to split on.
+	 * @param split_value (int): The number to split a numeric attribute on.
+	 */
+	static void addChildren(C45Node current, Value split_attribute, int split_value){
+		int split_index = current.getDataset().getHeaderIndex(split_attribute);
+		if(split_attribute.attribute_is_numeric){
+			Dataset[] halves = current.getDataset().partition(split_index, split_value);
+			current.addChild(new C45Node(halves[0], current, split_attribute, split_value, true));
+			current.addChild(new C45Node(halves[1], current, split_attribute, split_value, false));
+		}else{
+			ArrayList<Dataset> subsets = current.getDataset().partition(split_index);
+			for(Dataset subset : subsets){
+				Value value = subset.getValue(split_index, 1);
+				current.addChild(new C45Node(subset, current, split_attribute, value));
+			}
+		}
+	}
+
+	/**
+	 * Gets the attributes a node searches: all of its remaining attributes,
+	 * or a random sample of them.
+	 * @param current (C45Node): The node.
+	 * @return (Collection<Value>): The attributes to search.
+	 */
+	private Collection<Value> candidates(C45Node current){
+		HashSet<Value> remaining = current.getRemainingAttributes();
+		if(attribute_sample <= 0 || remaining.size() <= attribute_sample){
+			return remaining;
+		}
+
+		//Order the attributes by column first so the draw doesn't depend on hashing
+		Dataset dataset = current.getDataset();
+		Value[] attributes = remaining.toArray(new Value[remaining.size()]);
+		int[] columns = new int[attributes.length];
+		for(int i = 0; i < attributes.length; i++){
+			columns[i] = dataset.getHeaderIndex(attributes[i]);
+		}
+		Arrays.sort(columns);
+
+		//Partial shuffle, the first attribute_sample columns are the sample
+		SplittableRandom random = new SplittableRandom(current.random_seed);
+		ArrayList<Value> sample = new ArrayList<Value>(attribute_sample);
+		for(int i = 0; i < attribute_sample; i++){
+			int pick = i + random.nextInt(columns.length - i);
+			int temp = columns[i];
+			columns[i] = columns[pick];
+			columns[pick] = temp;
+			sample.add(dataset.getAttribute(columns[i]));
+		}
+		return sample;
+	}
+
+	/**
+	 * Gives each child of a node a seed of its own for drawing attribute samples.
+	 * @param current (C45Node): The node that was split.
+	 */
+	private void seedChildren(C45Node current){
+		if(attribute_sample <= 0){
+			return;
+		}
+		//A different stream from the one the node's own sample was drawn from
+		SplittableRandom random = new SplittableRandom(current.random_seed ^ 0x9E3779B97F4A7C15L);
+		for(C45Node child : current.getChildren()){
+			child.random_seed = random.nextLong();
+		}
+	}
+
+	/**
+	 * Determines if a node should stay a leaf whatever its best split is.
+	 * Follows the rules of DecisionTree.postPruneTree: the root is always split.
+	 * @param current (C45Node): The node.
+	 * @return (boolean): True if the node is too deep or too small to split.
+	 */
+	private boolean isStopped(C45Node current){
+		if(current.isRoot()){
+			return false;
+		}
+		return (current.getDataset().height-1) < min_node_rows
+				|| (max_depth != 0 && current.getDepth() > max_depth);
+	}
+
+	private void buildInline(C45Node current){
+		for(C45Node child : split(current)){
+			buildInline(child);
+		}
+	}
+
+	/**
+	 * Builds the subtree below one node, forking the larger children.
+	 */
+	private final class BuildTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final C45Node node;
+
+		BuildTask(C45Node _node){
+			node = _node;
+		}
+
+		protected void compute(){
+			ArrayList<BuildTask> forked = new ArrayList<BuildTask>();
+			ArrayList<C45Node> inline = new ArrayList<C45Node>();
+			for(C45Node child : split(node)){
+				if(child.getDataset().height-1 >= fork_rows){
+					forked.add(new BuildTask(child));
+				}else{
+					inline.add(child);
+				}
+			}
+
+			for(BuildTask task : forked){
+				task.fork();
+			}
+			for(C45Node child : inline){
+				buildInline(child);
+			}
+			for(BuildTask task : forked){
+				task.join();
+			}
+		}
+	}
+}
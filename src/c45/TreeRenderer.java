@@ -0,0 +1,336 @@
+package c45;
+
+import java.io.IOException;
+import java.util.Formatter;
+
+/**
+ * Renders a tree as rules in a single pass over its nodes, writing the
+ * same output to any number of sinks at once, such as the console and
+ * the rules file.
+ * Rules are rendered into one buffer, which is handed to every sink
+ * whenever it fills, so a huge tree is never held as text in full and
+ * each sink gets a few large writes rather than one per line.
+ * Each leaf's figures come from its NodeSummary, so rendering costs one
+ * walk of the tree however many sinks there are.
+ * 	TEXT	The rules as DecisionTree has always printed them.
+ * 	JSON	The tree as nested objects, one per node, with the split, row
+ * 			count and, at leaves, the prediction and its figures.
+ * 	CSV		A rule table with a row per leaf: the rule number, its
+ * 			conditions joined by "and", the prediction and its figures.
+ * A renderer keeps its buffer between renders and isn't thread safe.
+ * @author Matthew Tetford
+ */
+public final class TreeRenderer {
+	/**
+	 * The formats rules can be rendered in.
+	 */
+	public enum Format {
+		TEXT(".txt"),
+		JSON(".json"),
+		CSV(".csv");
+
+		private final String extension;
+
+		Format(String _extension){
+			extension = _extension;
+		}
+
+		/**
+		 * Gets the file extension of the format.
+		 * @return (String): The extension, with its dot.
+		 */
+		public String getExtension(){
+			return extension;
+		}
+
+		/**
+		 * Finds a format by name, ignoring case.
+		 * @param name (String): The name, such as text, json or csv.
+		 * @return (Format): The format, or null if there is none by that name.
+		 */
+		public static Format parse(String name){
+			for(Format format : values()){
+				if(format.name().equalsIgnoreCase(name)){
+					return format;
+				}
+			}
+			return null;
+		}
+	}
+
+	//The buffer is handed to the sinks once it holds this many characters
+	private static final int CHUNK_SIZE = 1 << 16;
+	private static final String NEWLINE = System.lineSeparator();
+
+	private final Value target_class;
+	private final Format format;
+	private final Appendable[] sinks;
+	private final StringBuilder buffer;
+	private final Formatter formatter;
+	private final StringBuilder conditions;
+	private int rule;
+
+	/**
+	 * Creates a renderer writing to the given sinks.
+	 * The sinks are written to but never flushed or closed.
+	 * @param _target_class (Value): The attribute the tree classifies by.
+	 * @param _format (Format): The format to render in.
+	 * @param _sinks (Appendable...): Where to write the rules, such as PrintStreams or Writers.
+	 */
+	public TreeRenderer(Value _target_class, Format _format, Appendable... _sinks){
+		target_class = _target_class;
+		format = _format;
+		sinks = _sinks;
+		buffer = new StringBuilder(CHUNK_SIZE + 1024);
+		//Formats numbers straight into the buffer, with the locale PrintStream.format uses
+		formatter = new Formatter(buffer);
+		conditions = new StringBuilder();
+	}
+
+	/**
+	 * Renders the tree below the given node to every sink.
+	 * @param root (C45Node): The node to start at (typically the root).
+	 */
+	public void render(C45Node root){
+		rule = 0;
+		conditions.setLength(0);
+		switch(format){
+			case JSON:
+				buffer.append("{\"target\":");
+				appendJsonString(target_class.toString());
+				buffer.append(",\"tree\":");
+				renderJson(root);
+				buffer.append('}').append(NEWLINE);
+				break;
+			case CSV:
+				if(target_class.attribute_is_numeric){
+					buffer.append("rule,conditions,prediction,rows,min,max,average,median");
+				}else{
+					buffer.append("rule,conditions,prediction,rows,accuracy");
+				}
+				buffer.append(NEWLINE);
+				renderCsv(root);
+				break;
+			default:
+				renderText(root);
+		}
+		drain();
+	}
+
+	private void renderText(C45Node current){
+		int indent = Math.max(current.getDepth() - 1, 0);
+		if(current.hasChild()){
+			if(!current.isRoot()){
+				appendSpaces(indent);
+				buffer.append("If ");
+				appendCondition(current, buffer);
+				buffer.append(',').append(NEWLINE);
+			}
+			for(C45Node child : current.getChildren()){
+				renderText(child);
+			}
+			return;
+		}
+
+		appendSpaces(indent);
+		buffer.append("If ");
+		appendCondition(current, buffer);
+		buffer.append(',').append(NEWLINE);
+
+		NodeSummary summary = current.getSummary(target_class);
+		appendSpaces(indent + 1);
+		buffer.append("Then ").append(target_class.toString()).append(" is ");
+		if(target_class.attribute_is_numeric){
+			if(summary.getDistinctCount() > 1){
+				buffer.append(summary.getRange()).append(", with average ");
+				formatter.format("%.2f", summary.getAverage());
+				buffer.append(", median ").append(summary.getMedian())
+						.append(", and ").append(summary.getRows()).append(" values.");
+			}else{
+				buffer.append(summary.getMajority().toString()).append('.');
+			}
+		}else{
+			buffer.append(summary.getMajority().toString()).append(", with usefulness measure ");
+			formatter.format("%.2f", summary.getMajorityAccuracy() * 100);
+			buffer.append("%.");
+		}
+		buffer.append(NEWLINE);
+		drainIfFull();
+	}
+
+	private void renderJson(C45Node current){
+		buffer.append('{');
+		if(!current.isRoot()){
+			buffer.append("\"attribute\":");
+			appendJsonString(current.getSplitAttribute().toString());
+			if(current.isContinuousSplit()){
+				buffer.append(",\"operator\":\"").append(current.isGTE() ? ">=" : "<")
+						.append("\",\"number\":").append(current.getSplitNumber());
+			}else{
+				buffer.append(",\"value\":");
+				appendJsonString(current.getSplitValue().toString());
+			}
+			buffer.append(',');
+		}
+
+		NodeSummary summary = current.getSummary(target_class);
+		buffer.append("\"rows\":").append(summary.getRows());
+		if(current.hasChild()){
+			buffer.append(",\"children\":[");
+			boolean first = true;
+			for(C45Node child : current.getChildren()){
+				if(!first){
+					buffer.append(',');
+				}
+				first = false;
+				renderJson(child);
+			}
+			buffer.append(']');
+		}else{
+			buffer.append(",\"prediction\":");
+			Value prediction = summary.getMajority();
+			if(prediction.isEmpty()){
+				buffer.append("null");
+			}else if(prediction.isNumeric()){
+				buffer.append(prediction.getNumValue());
+			}else{
+				appendJsonString(prediction.toString());
+			}
+			if(target_class.attribute_is_numeric){
+				buffer.append(",\"min\":").append(summary.getMin())
+						.append(",\"max\":").append(summary.getMax())
+						.append(",\"average\":");
+				appendJsonNumber(summary.getAverage());
+				buffer.append(",\"median\":").append(summary.getMedian());
+			}else{
+				buffer.append(",\"accuracy\":");
+				appendJsonNumber(summary.getMajorityAccuracy());
+			}
+		}
+		buffer.append('}');
+		drainIfFull();
+	}
+
+	private void renderCsv(C45Node current){
+		//The conditions of the path so far are kept in one builder and cut back on the way up
+		int length = conditions.length();
+		if(!current.isRoot()){
+			if(length > 0){
+				conditions.append(" and ");
+			}
+			appendCondition(current, conditions);
+		}
+
+		if(current.hasChild()){
+			for(C45Node child : current.getChildren()){
+				renderCsv(child);
+			}
+		}else{
+			NodeSummary summary = current.getSummary(target_class);
+			buffer.append(++rule).append(',');
+			appendCsvField(conditions);
+			buffer.append(',');
+			appendCsvField(summary.getMajority().toString());
+			buffer.append(',').append(summary.getRows()).append(',');
+			if(target_class.attribute_is_numeric){
+				buffer.append(summary.getMin()).append(',')
+						.append(summary.getMax()).append(',')
+						.append(summary.getAverage()).append(',')
+						.append(summary.getMedian());
+			}else{
+				buffer.append(summary.getMajorityAccuracy());
+			}
+			buffer.append(NEWLINE);
+			drainIfFull();
+		}
+		conditions.setLength(length);
+	}
+
+	/**
+	 * Appends the condition a node's rows met, such as "age is >= 30".
+	 */
+	private static void appendCondition(C45Node node, StringBuilder builder){
+		builder.append(node.getSplitAttribute().toString()).append(" is ");
+		if(node.isContinuousSplit()){
+			builder.append(node.isGTE() ? ">=" : "<").append(' ').append(node.getSplitNumber());
+		}else{
+			builder.append(node.getSplitValue().toString());
+		}
+	}
+
+	private void appendSpaces(int count){
+		for(int i = 0; i < count; i++){
+			buffer.append(' ');
+		}
+	}
+
+	private void appendJsonString(String s){
+		buffer.append('"');
+		for(int i = 0; i < s.length(); i++){
+			char c = s.charAt(i);
+			if(c == '"' || c == '\\'){
+				buffer.append('\\').append(c);
+			}else if(c < 0x20){
+				formatter.format("\\u%04x", (int)c);
+			}else{
+				buffer.append(c);
+			}
+		}
+		buffer.append('"');
+	}
+
+	private void appendJsonNumber(double number){
+		//JSON has no NaN, which an empty leaf's figures are
+		if(Double.isNaN(number) || Double.isInfinite(number)){
+			buffer.append("null");
+		}else{
+			buffer.append(number);
+		}
+	}
+
+	private void appendCsvField(CharSequence field){
+		boolean quote = false;
+		for(int i = 0; i < field.length() && !quote; i++){
+			char c = field.charAt(i);
+			quote = (c == ',' || c == '"' || c == '\n' || c == '\r');
+		}
+		if(!quote){
+			buffer.append(field);
+			return;
+		}
+		buffer.append('"');
+		for(int i = 0; i < field.length(); i++){
+			char c = field.charAt(i);
+			if(c == '"'){
+				buffer.append('"');
+			}
+			buffer.append(c);
+		}
+		buffer.append('"');
+	}
+
+	private void drainIfFull(){
+		if(buffer.length() >= CHUNK_SIZE){
+			drain();
+		}
+	}
+
+	/**
+	 * Hands the buffer to every sink and empties it.
+	 */
+	private void drain(){
+		if(buffer.length() == 0){
+			return;
+		}
+		String chunk = buffer.toString();
+		try {
+			for(Appendable sink : sinks){
+				sink.append(chunk);
+			}
+		} catch (IOException e) {
+			System.err.println("Couldn't write the rules.");
+			System.exit(1);
+		}
+		buffer.setLength(0);
+	}
+}
@@ -0,0 +1,534 @@
+package c45;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Updates a built tree with rows appended to its training data, rather
+ * than building it again.
+ * Only the new rows are routed down the tree, adding their classes to the
+ * counts of every node they pass through. A node no new row reaches has
+ * the same rows as before, so its subtree is kept as it is.
+ * For a node the new rows do reach, TreeBuilder noted the gain of its best
+ * split, the highest gains of the other nominal and numeric candidates
+ * and its class counts when it was searched. Adding k rows to the n rows
+ * a node was searched with can only move n times the gain of a candidate
+ * so far: the class entropy term moves by the change in the node's own
+ * class entropy for nominal candidates, or by at most k plus the mixing
+ * term for numeric ones, and the weighted entropy of the parts moves by
+ * at most k times log2 of the number of classes the new rows have plus
+ * N times the binary entropy of k/N, where N is n plus k. If the best
+ * split stays ahead of every other candidate across those bounds, and
+ * still passes the minimum gain, it can't have changed and the node is
+ * kept without a search. Likewise a leaf stays a leaf if no candidate can
+ * reach the minimum gain. A new row between the split number and the value
+ * below it, or with a nominal value the node has no child for, always
+ * has the node searched again.
+ * Nodes that can't be settled from their counts are searched again over
+ * all their rows, which are partitioned down from the root only along the
+ * paths to those nodes. A node whose best split is the one it already has
+ * is kept and its children updated in turn, and any other has its subtree
+ * built again by TreeBuilder. Leaves that are too deep or too small to
+ * split, or whose rows still all have one class, only have their counts
+ * updated.
+ * Searching exactly, the updated tree is the same as a tree built from
+ * all the rows. With histogram bins set the buckets are worked out again
+ * over all the rows, nodes searched from histograms are always searched
+ * again, and subtrees no new row reaches keep the splits found with the
+ * old buckets.
+ * The Dataset must hold the rows the tree was built from first, in the
+ * same order, followed by the new rows, as when a training file only
+ * gains rows at its end.
+ * Used internally by Trainer to update trees.
+ * @author Matthew Tetford
+ */
+final class TreeUpdater {
+	private static final int UNDECIDED = 0;
+	private static final int FINISH = 1;
+	private static final int KEEP = 2;
+	private static final int SEARCH = 3;
+	//Slack for rounding when comparing gains worked out from different counts
+	private static final double GAIN_SLACK = 1e-9;
+
+	private final double min_split_gain;
+	private final int max_depth;
+	private final int min_node_rows;
+	private final ForkJoinPool pool;
+	private final int fork_rows;
+	private final int histogram_bins;
+	private final BuildMetrics metrics;
+	private final SplitFinder split_finder;
+	private final IdentityHashMap<C45Node, NodeUpdate> updates = new IdentityHashMap<C45Node, NodeUpdate>();
+	private Dataset dataset;
+	private Value target_class;
+	private int target;
+	private ValueDictionary class_dictionary;
+	private QuantileBins bins;
+	private TreeBuilder builder;
+	private int searched;
+
+	/**
+	 * Creates a tree updater with the stopping rules the tree was built with.
+	 * @param _min_split_gain (double): The minimum gain a split must have.
+	 * @param _max_depth (int): The deepest a node may be and still be split, 0 for no limit.
+	 * @param _min_node_rows (int): The fewest rows a node needs to be split.
+	 * @param _pool (ForkJoinPool): The pool to search and build in, or null to work serially.
+	 * @param _fork_rows (int): The fewest rows a child needs to be built as its own task.
+	 * @param _histogram_bins (int): The most quantile buckets per numeric attribute, 0 to search exactly.
+	 * @param _metrics (BuildMetrics): Where to record the update, or null to not record it.
+	 */
+	TreeUpdater(double _min_split_gain, int _max_depth, int _min_node_rows, ForkJoinPool _pool,
+			int _fork_rows, int _histogram_bins, BuildMetrics _metrics){
+		min_split_gain = _min_split_gain;
+		max_depth = _max_depth;
+		min_node_rows = _min_node_rows;
+		pool = _pool;
+		fork_rows = _fork_rows;
+		histogram_bins = _histogram_bins;
+		metrics = _metrics;
+		split_finder = new SplitFinder(_pool, _metrics);
+	}
+
+	/**
+	 * Updates a tree with the rows of a Dataset after the ones it was built from.
+	 * The root is given the Dataset in place of the one it was built from.
+	 * @param root (C45Node): The root of the built tree.
+	 * @param _dataset (Dataset): The rows the tree was built from followed by the new rows.
+	 * @param old_rows (int): The number of rows the tree was built from.
+	 * @return (int): The number of nodes whose split was searched again.
+	 */
+	int update(C45Node root, Dataset _dataset, int old_rows){
+		dataset = _dataset;
+		if(!root.isRoot() || root.getSummary() == null){
+			System.err.println("Only the root of a built tree can be updated");
+			System.exit(1);
+		}
+		if(dataset.isExternal()){
+			System.err.println("Updating a tree needs the training data in memory");
+			System.exit(1);
+		}
+		if(old_rows < 0 || old_rows > dataset.height-1){
+			System.err.println("The tree was built from " + old_rows + " rows, but the Dataset has " + (dataset.height-1));
+			System.exit(1);
+		}
+		if(old_rows == dataset.height-1){
+			return 0;
+		}
+
+		target = dataset.getHeaderIndex(root.getSplitAttribute());
+		if(target < 0){
+			System.err.println("The Dataset has no " + root.getSplitAttribute() + " column");
+			System.exit(1);
+		}
+		target_class = dataset.getAttribute(target);
+		Column classes = dataset.getClassColumn(target);
+		class_dictionary = dataset.getClassDictionary(target);
+
+		int bucket_count = histogram_bins;
+		if(histogram_bins > 0){
+			bins = QuantileBins.build(dataset, histogram_bins);
+			if(NodeHistograms.cells(dataset, bins, target) > TreeBuilder.MAX_HISTOGRAM_CELLS){
+				bins = null;
+				bucket_count = 0;
+			}
+		}
+		builder = new TreeBuilder(target_class, min_split_gain, max_depth, min_node_rows,
+				pool, fork_rows, bucket_count, metrics);
+		builder.setQuantileBins(bins);
+
+		route(root, classes, old_rows);
+
+		HashSet<Value> remaining = dataset.getAttributeSet();
+		remaining.remove(target_class);
+		root.setDataset(dataset);
+		update(root, dataset, remaining);
+		updates.clear();
+		return searched;
+	}
+
+	/**
+	 * Counts the classes of the new rows at every node they reach.
+	 * A row stops at a leaf, or at a node with no child for its value.
+	 */
+	private void route(C45Node root, Column classes, int old_rows){
+		IdentityHashMap<C45Node, Route> routes = new IdentityHashMap<C45Node, Route>();
+		int class_count = class_dictionary.size();
+		for(int y = old_rows + 1; y < dataset.height; y++){
+			int row = dataset.row(y);
+			int code = classes.get(row);
+			C45Node node = root;
+			while(node != null){
+				NodeUpdate update = updates.get(node);
+				if(update == null){
+					update = new NodeUpdate(class_count);
+					updates.put(node, update);
+				}
+				update.added[code]++;
+
+				if(node.isLeaf()){
+					break;
+				}
+				Route route = routes.get(node);
+				if(route == null){
+					route = new Route(node, dataset);
+					routes.put(node, route);
+				}
+				C45Node next = route.next(row);
+				if(next == null || route.isTie(row)){
+					update.must_search = true;
+				}
+				node = next;
+			}
+		}
+	}
+
+	/**
+	 * Works out what to do with a node the new rows reached, from its counts.
+	 * @param node (C45Node): The node.
+	 * @param update (NodeUpdate): The counts of the new rows at the node.
+	 * @return (int): FINISH to only update the node's counts, KEEP to keep its split
+	 * without a search, or SEARCH to search it again.
+	 */
+	private int decide(C45Node node, NodeUpdate update){
+		if(update.action != UNDECIDED){
+			return update.action;
+		}
+		update.summary = node.getSummary().add(update.added, class_dictionary);
+		if(update.summary == null){
+			System.err.println("The tree wasn't built from the first rows of the Dataset");
+			System.exit(1);
+		}
+
+		if(isStopped(node, update.summary.getRows()) || (node.isLeaf() && update.summary.getDistinctCount() < 2)){
+			update.action = FINISH;
+		}else if(!update.must_search && isSettled(node, update.summary)){
+			update.action = node.isLeaf() ? FINISH : KEEP;
+		}else{
+			update.action = SEARCH;
+		}
+		return update.action;
+	}
+
+	/**
+	 * Determines from the bounds described above if the best split of a
+	 * node can't have changed since it was searched.
+	 * @param node (C45Node): The node.
+	 * @param summary (NodeSummary): The counts of the node's rows, old and new.
+	 * @return (boolean): True if the node keeps its split, or stays a leaf, without a search.
+	 */
+	private boolean isSettled(C45Node node, NodeSummary summary){
+		Split best = node.best_split;
+		NodeSummary searched_summary = node.split_summary;
+		if(best == null || searched_summary == null){
+			return false;
+		}
+		int n = searched_summary.getRows();
+		int total = summary.getRows();
+		int k = total - n;
+		if(n == 0 || (bins != null && total >= histogram_bins)){
+			return false;
+		}
+
+		double mixing = total * DecisionTree.binaryEntropy((double)k / total, (double)n / total);
+		double spread = k * (Math.log(summary.grownCount(searched_summary)) / Math.log(2)) + mixing;
+		double shift = total * summary.entropy() - n * searched_summary.entropy();
+		double slack = GAIN_SLACK * total;
+
+		//Bounds on total times the new gain of each candidate
+		boolean numeric = best.attribute.attribute_is_numeric;
+		double best_low = n * best.gain - spread + (numeric ? 0 : shift) - slack;
+		double best_high = n * best.gain + (numeric ? k + mixing : shift) + slack;
+		double nominal_high = n * best.nominal_runner_up + shift + slack;
+		double numeric_high = n * best.numeric_runner_up + k + mixing + slack;
+
+		if(node.isLeaf()){
+			double high = Math.max(best_high, Math.max(nominal_high, numeric_high));
+			return high <= 0 || high < min_split_gain * total;
+		}
+		return best_low > Math.max(nominal_high, numeric_high) && best_low > 0
+				&& best_low >= min_split_gain * total;
+	}
+
+	/**
+	 * Determines if a node's rows have to be gathered: if it is searched
+	 * again, or it keeps its split and a node below it needs its rows.
+	 * @param node (C45Node): The node.
+	 * @return (boolean): True if the node needs its rows.
+	 */
+	private boolean needsRows(C45Node node){
+		NodeUpdate update = updates.get(node);
+		if(update == null){
+			return false;
+		}
+		if(update.needs_rows == null){
+			int action = decide(node, update);
+			boolean needs = (action == SEARCH);
+			if(action == KEEP){
+				for(C45Node child : node.getChildren()){
+					if(needsRows(child)){
+						needs = true;
+						break;
+					}
+				}
+			}
+			update.needs_rows = needs;
+		}
+		return update.needs_rows;
+	}
+
+	/**
+	 * Updates a node the new rows reached, and the children they reached below it.
+	 * @param node (C45Node): The node.
+	 * @param rows (Dataset): All of the node's rows, old and new, or null if needsRows is false.
+	 * @param remaining (HashSet<Value>): The attributes the node may split on.
+	 */
+	private void update(C45Node node, Dataset rows, HashSet<Value> remaining){
+		NodeUpdate update = updates.get(node);
+		int action = decide(node, update);
+		NodeSummary summary = update.summary;
+		if(action == FINISH){
+			if(!node.isLeaf()){
+				node.clearChildren();
+			}
+			node.finish(summary, target_class);
+			return;
+		}
+		if(action == KEEP){
+			ArrayList<Dataset> subsets = needsRows(node) ? childRows(node, rows) : null;
+			updateChildren(node, subsets, remaining);
+			node.finish(summary, target_class);
+			return;
+		}
+
+		if(summary.getRows() != rows.height-1){
+			System.err.println("The tree wasn't built from the first rows of the Dataset");
+			System.exit(1);
+		}
+		searched++;
+		BuildMetrics.Span span = (metrics != null) ? metrics.begin(BuildMetrics.Phase.SPLIT_SEARCH) : null;
+		NodeHistograms histograms = (bins != null && rows.height-1 >= histogram_bins)
+				? NodeHistograms.count(rows, bins, target) : null;
+		Split best = split_finder.findBestSplit(rows, target_class, remaining, bins, histograms);
+		if(span != null){
+			span.end(rows.height-1);
+		}
+
+		if(!(best.gain > 0 && best.gain >= min_split_gain)){
+			node.clearChildren();
+		}else{
+			ArrayList<Dataset> subsets = node.isLeaf() ? null : sameSplit(node, rows, best);
+			if(subsets != null){
+				updateChildren(node, subsets, remaining);
+			}else{
+				//The split has changed, so build the subtree again from the node's rows
+				node.reopen(rows, remaining);
+				TreeBuilder.addChildren(node, best.attribute, best.number);
+				for(C45Node child : node.getChildren()){
+					builder.build(child);
+				}
+			}
+		}
+		node.finish(summary, target_class);
+		node.best_split = best;
+		node.split_summary = summary;
+	}
+
+	/**
+	 * Updates the children of a node that keeps its split which the new rows reached.
+	 * @param node (C45Node): The node.
+	 * @param subsets (ArrayList<Dataset>): The rows of each child, or null if none of them need their rows.
+	 * @param remaining (HashSet<Value>): The attributes the node may split on.
+	 */
+	private void updateChildren(C45Node node, ArrayList<Dataset> subsets, HashSet<Value> remaining){
+		ArrayList<C45Node> children = node.getChildren();
+		HashSet<Value> child_remaining = remaining;
+		if(!children.get(0).isContinuousSplit()){
+			child_remaining = new HashSet<Value>(remaining);
+			child_remaining.remove(dataset.getAttribute(dataset.getHeaderIndex(children.get(0).getSplitAttribute())));
+		}
+		for(int i = 0; i < children.size(); i++){
+			C45Node child = children.get(i);
+			if(updates.containsKey(child)){
+				update(child, (subsets != null) ? subsets.get(i) : null, child_remaining);
+			}
+		}
+	}
+
+	/**
+	 * Partitions a node's rows between its children, if the node is
+	 * already split the way the search found.
+	 * @param node (C45Node): The node, which has children.
+	 * @param rows (Dataset): The node's rows.
+	 * @param best (Split): The best split of the rows.
+	 * @return (ArrayList<Dataset>): The rows of each child, in the order of the children, or null if the split has changed.
+	 */
+	private ArrayList<Dataset> sameSplit(C45Node node, Dataset rows, Split best){
+		C45Node first = node.getChildren().get(0);
+		if(!first.getSplitAttribute().equals(best.attribute)
+				|| first.isContinuousSplit() != best.attribute.attribute_is_numeric){
+			return null;
+		}
+		if(first.isContinuousSplit() && first.getSplitNumber() != best.number){
+			return null;
+		}
+		return childRows(node, rows);
+	}
+
+	/**
+	 * Partitions a node's rows on the split it already has.
+	 * @param node (C45Node): The node, which has children.
+	 * @param rows (Dataset): The node's rows.
+	 * @return (ArrayList<Dataset>): The rows of each child, in the order of the children,
+	 * or null if the rows have a value the node has no child for.
+	 */
+	private ArrayList<Dataset> childRows(C45Node node, Dataset rows){
+		BuildMetrics.Span span = (metrics != null) ? metrics.begin(BuildMetrics.Phase.PARTITIONING) : null;
+		ArrayList<C45Node> children = node.getChildren();
+		C45Node first = children.get(0);
+		int x = rows.getHeaderIndex(first.getSplitAttribute());
+		ArrayList<Dataset> subsets = new ArrayList<Dataset>(children.size());
+		if(first.isContinuousSplit()){
+			Dataset[] halves = rows.partition(x, first.getSplitNumber());
+			for(C45Node child : children){
+				subsets.add(child.isGTE() ? halves[0] : halves[1]);
+			}
+		}else{
+			ArrayList<Dataset> values = rows.partition(x);
+			if(values.size() != children.size()){
+				//A value the node had no rows of has turned up
+				subsets = null;
+			}else{
+				for(C45Node child : children){
+					Dataset match = null;
+					for(Dataset subset : values){
+						if(subset.getValue(x, 1).equals(child.getSplitValue())){
+							match = subset;
+							break;
+						}
+					}
+					if(match == null){
+						subsets = null;
+						break;
+					}
+					subsets.add(match);
+				}
+			}
+		}
+		if(span != null){
+			span.end(rows.height-1);
+		}
+		return subsets;
+	}
+
+	/**
+	 * Determines if a node is too deep or too small to split, as TreeBuilder does.
+	 */
+	private boolean isStopped(C45Node node, int rows){
+		if(node.isRoot()){
+			return false;
+		}
+		return rows < min_node_rows || (max_depth != 0 && node.getDepth() > max_depth);
+	}
+
+	/**
+	 * The class counts of the new rows that reached a node, and what is
+	 * to be done with it.
+	 */
+	private static final class NodeUpdate {
+		final int[] added;
+		boolean must_search;
+		int action = UNDECIDED;
+		NodeSummary summary;
+		Boolean needs_rows;
+
+		NodeUpdate(int classes){
+			added = new int[classes];
+		}
+	}
+
+	/**
+	 * Which child of a split node a row goes to, worked out from the
+	 * storage of the split column.
+	 */
+	private static final class Route {
+		private final Column column;
+		private final boolean numeric;
+		private final boolean changed;
+		private int threshold;
+		private int floor = Integer.MIN_VALUE;
+		private C45Node upper;
+		private C45Node lower;
+		private C45Node[] by_code;
+
+		Route(C45Node node, Dataset dataset){
+			C45Node first = node.getChildren().get(0);
+			int x = dataset.getHeaderIndex(first.getSplitAttribute());
+			if(x < 0){
+				System.err.println("The Dataset has no " + first.getSplitAttribute() + " column");
+				System.exit(1);
+			}
+			column = dataset.getColumn(x);
+			numeric = first.isContinuousSplit();
+			//A column whose type has changed can't be routed, so rows stop here and the node is searched again
+			changed = (numeric != dataset.getAttribute(x).attribute_is_numeric);
+			if(changed){
+				return;
+			}
+
+			if(numeric){
+				threshold = first.getSplitNumber();
+				if(node.best_split != null){
+					floor = node.best_split.floor;
+				}
+				for(C45Node child : node.getChildren()){
+					if(child.isGTE()){
+						upper = child;
+					}else{
+						lower = child;
+					}
+				}
+			}else{
+				ValueDictionary dictionary = dataset.getDictionary(x);
+				by_code = new C45Node[dictionary.size()];
+				for(C45Node child : node.getChildren()){
+					int code = dictionary.lookup(child.getSplitValue());
+					if(code >= 0){
+						by_code[code] = child;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Gets the child a row goes to.
+		 * @param row (int): The storage row id.
+		 * @return (C45Node): The child, or null if there is none for the row's value.
+		 */
+		C45Node next(int row){
+			if(changed){
+				return null;
+			}
+			int cell = column.get(row);
+			if(numeric){
+				return (cell >= threshold) ? upper : lower;
+			}
+			return (cell >= 0 && cell < by_code.length) ? by_code[cell] : null;
+		}
+
+		/**
+		 * Determines if a row falls between the split number and the value
+		 * below it, where it would make a new candidate as good as the split.
+		 * @param row (int): The storage row id.
+		 * @return (boolean): True if the row is in that gap.
+		 */
+		boolean isTie(int row){
+			if(!numeric || changed){
+				return false;
+			}
+			int cell = column.get(row);
+			return cell < threshold && cell > floor;
+		}
+	}
+}
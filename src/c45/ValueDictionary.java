@@ -0,0 +1,285 @@
+package c45;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Maps the distinct values of a nominal column to integer codes.
+ * Codes are given out in order of first appearance, starting at 0.
+ * Numbers are keyed by value and strings by their lower case UTF-8 bytes,
+ * so two values get the same code exactly when Dataset.getValueSet would
+ * treat them as the same value. Strings can be looked up straight from a
+ * byte buffer, which lets the file reader avoid creating a String per cell.
+ * A Value is only created when a new value is added.
+ * Used internally by Dataset for columnar storage.
+ * @author Matthew Tetford
+ */
+final class ValueDictionary {
+	private ArrayList<Value> values;
+	private byte[][] keys;
+	private int[] string_slots;
+	private int[] number_slots;
+	private int strings;
+	private int numbers;
+	private int empty_code;
+
+	ValueDictionary(){
+		values = new ArrayList<Value>();
+		keys = new byte[16][];
+		string_slots = newSlots(16);
+		number_slots = newSlots(16);
+		empty_code = -1;
+	}
+
+	/**
+	 * Gets the code for the given value, adding it to the dictionary
+	 * if it hasn't been seen before.
+	 * @param value (Value): The value to encode.
+	 * @return (int): The code of the value.
+	 */
+	int encode(Value value){
+		if(value.isEmpty()){
+			if(empty_code < 0){
+				empty_code = add(value, null);
+			}
+			return empty_code;
+		}
+		if(value.isNumeric()){
+			int code = findNumber(value.num_value);
+			if(code < 0){
+				code = add(value, null);
+				insert(number_slots, code, value.num_value);
+			}
+			return code;
+		}
+		byte[] key = value.toString().getBytes(StandardCharsets.UTF_8);
+		int hash = hash(key, 0, key.length);
+		int code = findString(key, 0, key.length, hash);
+		if(code < 0){
+			code = add(value, key);
+			insert(string_slots, code, hash);
+		}
+		return code;
+	}
+
+	/**
+	 * Gets the code for the given number, adding it to the dictionary
+	 * if it hasn't been seen before. Only allocates a Value for new entries.
+	 * @param number (int): The number to encode.
+	 * @return (int): The code of the number.
+	 */
+	int encodeNumber(int number){
+		int code = findNumber(number);
+		if(code < 0){
+			code = add(new Value(number), null);
+			insert(number_slots, code, number);
+		}
+		return code;
+	}
+
+	/**
+	 * Gets the code for the given lower case string, adding it to the
+	 * dictionary if it hasn't been seen before. Only allocates a Value for new entries.
+	 * @param string (String): The string to encode.
+	 * @return (int): The code of the string.
+	 */
+	int encodeString(String string){
+		byte[] key = string.getBytes(StandardCharsets.UTF_8);
+		return encodeBytes(key, 0, key.length);
+	}
+
+	/**
+	 * Gets the code for the lower case UTF-8 string held in the given bytes,
+	 * adding it to the dictionary if it hasn't been seen before.
+	 * Only allocates when a new entry is added.
+	 * @param buffer (byte[]): The buffer holding the string.
+	 * @param offset (int): The start of the string in the buffer.
+	 * @param length (int): The number of bytes in the string.
+	 * @return (int): The code of the string.
+	 */
+	int encodeBytes(byte[] buffer, int offset, int length){
+		int hash = hash(buffer, offset, length);
+		int code = findString(buffer, offset, length, hash);
+		if(code < 0){
+			byte[] key = Arrays.copyOfRange(buffer, offset, offset + length);
+			code = add(new Value(new String(key, StandardCharsets.UTF_8)), key);
+			insert(string_slots, code, hash);
+		}
+		return code;
+	}
+
+	/**
+	 * Adds every value of another dictionary, in the other dictionary's code order.
+	 * @param other (ValueDictionary): The dictionary to add.
+	 * @return (int[]): The code in this dictionary of each code in the other.
+	 */
+	int[] encodeAll(ValueDictionary other){
+		int[] codes = new int[other.size()];
+		for(int c = 0; c < codes.length; c++){
+			byte[] key = other.keys[c];
+			codes[c] = (key != null) ? encodeBytes(key, 0, key.length) : encode(other.values.get(c));
+		}
+		return codes;
+	}
+
+	/**
+	 * Gets the code of the given value without adding it.
+	 * Returns -1 if the value isn't in the dictionary.
+	 * @param value (Value): The value to look up.
+	 * @return (int): The code of the value.
+	 */
+	int lookup(Value value){
+		if(value.isEmpty()){
+			return -1;
+		}
+		if(value.isNumeric()){
+			return findNumber(value.num_value);
+		}
+		byte[] key = value.toString().getBytes(StandardCharsets.UTF_8);
+		return findString(key, 0, key.length, hash(key, 0, key.length));
+	}
+
+	/**
+	 * Gets the code of the given number without adding it.
+	 * @param number (int): The number to look up.
+	 * @return (int): The code of the number, or -1 if it isn't in the dictionary.
+	 */
+	int lookupNumber(int number){
+		return findNumber(number);
+	}
+
+	/**
+	 * Gets the code of the lower case UTF-8 string held in the given bytes without adding it.
+	 * @param buffer (byte[]): The buffer holding the string.
+	 * @param offset (int): The start of the string in the buffer.
+	 * @param length (int): The number of bytes in the string.
+	 * @return (int): The code of the string, or -1 if it isn't in the dictionary.
+	 */
+	int lookupBytes(byte[] buffer, int offset, int length){
+		return findString(buffer, offset, length, hash(buffer, offset, length));
+	}
+
+	/**
+	 * Gets the value with the given code.
+	 * @param code (int): The code of the value.
+	 * @return (Value): The value.
+	 */
+	Value decode(int code){
+		return values.get(code);
+	}
+
+	/**
+	 * Gets the lower case UTF-8 bytes the string with the given code is keyed by.
+	 * @param code (int): The code of the value.
+	 * @return (byte[]): The key, or null if the value isn't a string.
+	 */
+	byte[] getKey(int code){
+		return keys[code];
+	}
+
+	/**
+	 * Gets the number of distinct values in the dictionary.
+	 * @return (int): The number of codes given out.
+	 */
+	int size(){
+		return values.size();
+	}
+
+	private int add(Value value, byte[] key){
+		int code = values.size();
+		values.add(value);
+		if(code == keys.length){
+			keys = Arrays.copyOf(keys, code * 2);
+		}
+		keys[code] = key;
+		return code;
+	}
+
+	private int findNumber(int number){
+		int mask = number_slots.length - 1;
+		for(int slot = mix(number) & mask; ; slot = (slot + 1) & mask){
+			int code = number_slots[slot];
+			if(code < 0 || values.get(code).num_value == number){
+				return code;
+			}
+		}
+	}
+
+	private int findString(byte[] buffer, int offset, int length, int hash){
+		int mask = string_slots.length - 1;
+		for(int slot = mix(hash) & mask; ; slot = (slot + 1) & mask){
+			int code = string_slots[slot];
+			if(code < 0 || sameBytes(keys[code], buffer, offset, length)){
+				return code;
+			}
+		}
+	}
+
+	/**
+	 * Puts a code into a slot table, growing the table once it is half full.
+	 * @param slots (int[]): The table, string_slots or number_slots.
+	 * @param code (int): The code to insert.
+	 * @param hash (int): The hash of the code's key.
+	 */
+	private void insert(int[] slots, int code, int hash){
+		boolean string = (slots == string_slots);
+		int used = string ? ++strings : ++numbers;
+		if(used * 2 > slots.length){
+			slots = newSlots(slots.length * 2);
+			for(int c = 0; c < code; c++){
+				if(string && keys[c] != null){
+					place(slots, c, hash(keys[c], 0, keys[c].length));
+				}else if(!string && keys[c] == null && values.get(c).isNumeric()){
+					place(slots, c, values.get(c).num_value);
+				}
+			}
+			if(string){
+				string_slots = slots;
+			}else{
+				number_slots = slots;
+			}
+		}
+		place(slots, code, hash);
+	}
+
+	private static void place(int[] slots, int code, int hash){
+		int mask = slots.length - 1;
+		int slot = mix(hash) & mask;
+		while(slots[slot] >= 0){
+			slot = (slot + 1) & mask;
+		}
+		slots[slot] = code;
+	}
+
+	private static boolean sameBytes(byte[] key, byte[] buffer, int offset, int length){
+		if(key == null || key.length != length){
+			return false;
+		}
+		for(int i = 0; i < length; i++){
+			if(key[i] != buffer[offset + i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int hash(byte[] buffer, int offset, int length){
+		int hash = 1;
+		for(int i = offset; i < offset + length; i++){
+			hash = 31 * hash + buffer[i];
+		}
+		return hash;
+	}
+
+	private static int mix(int hash){
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	private static int[] newSlots(int size){
+		int[] slots = new int[size];
+		Arrays.fill(slots, -1);
+		return slots;
+	}
+}